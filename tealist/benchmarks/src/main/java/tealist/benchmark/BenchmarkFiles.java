@@ -0,0 +1,69 @@
+package tealist.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+
+import converter.FileFormats;
+
+/**
+ * BenchmarkFiles keeps the generated input files of the benchmarks. A file
+ * is generated the first time it is asked for and reused by later runs, so
+ * large inputs are only generated once.
+ *
+ * The files are kept in the directory given by the system property
+ * tealist.benchmark.dir, or in tealist-benchmark in the temporary directory.
+ *
+ * @author Mats Palm
+ */
+public abstract class BenchmarkFiles {
+
+	/**
+	 * Gets the directory of the benchmark files and creates it if needed.
+	 *
+	 * @return The directory
+	 * @throws IOException If the directory could not be created
+	 */
+	public static File directory() throws IOException {
+		File dir = new File(System.getProperty("tealist.benchmark.dir",
+				new File(System.getProperty("java.io.tmpdir"), "tealist-benchmark").getPath()));
+		if(!dir.isDirectory() && !dir.mkdirs())
+		{
+			throw new IOException("Could not create " + dir);
+		}
+		return dir;
+	}
+
+	/**
+	 * Gets a generated input file, generating it if it does not exist.
+	 *
+	 * @param records Number of tea in the file
+	 * @param fileFormat Format of the file
+	 * @return Name of the file
+	 * @throws IOException If the file could not be generated
+	 */
+	public static synchronized String input(long records, String fileFormat) throws IOException {
+		File file = new File(directory(), "tea-" + records + "-" + fileFormat + "." + FileFormats.getExtension(fileFormat));
+		if(!file.isFile())
+		{
+			// Generate next to the file and rename, so an interrupted run leaves no half file
+			File part = new File(file.getPath() + ".part");
+			new TeaGenerator().write(records, fileFormat, part.getPath());
+			if(!part.renameTo(file))
+			{
+				throw new IOException("Could not create " + file);
+			}
+		}
+		return file.getPath();
+	}
+
+	/**
+	 * Gets a file name for output of a benchmark.
+	 *
+	 * @param fileFormat Format of the output
+	 * @return Name of the file
+	 * @throws IOException If the directory could not be created
+	 */
+	public static String output(String fileFormat) throws IOException {
+		return new File(directory(), "out-" + Thread.currentThread().getId() + "." + FileFormats.getExtension(fileFormat)).getPath();
+	}
+}
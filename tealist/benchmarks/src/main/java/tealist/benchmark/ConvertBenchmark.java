@@ -0,0 +1,78 @@
+package tealist.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import converter.ConversionSettings;
+import converter.TeaFileConverter;
+
+/**
+ * Converts a generated file between every pair of formats, the way the
+ * command line does it.
+ *
+ * @author Mats Palm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ConvertBenchmark {
+
+	@Param({"text", "xml", "xmldom", "bin"})
+	public String from;
+
+	@Param({"text", "xml", "xmldom", "bin"})
+	public String to;
+
+	@Param({"1000", "100000"})
+	public long records;
+
+	private String inFileName;
+	private String outFileName;
+	private ConversionSettings settings = new ConversionSettings();
+
+	/**
+	 * Generates the input file if needed.
+	 *
+	 * @throws IOException If the file could not be generated
+	 */
+	@Setup
+	public void setup() throws IOException {
+		inFileName = BenchmarkFiles.input(records, from);
+		outFileName = BenchmarkFiles.output(to);
+	}
+
+	/**
+	 * Removes the output file.
+	 */
+	@TearDown
+	public void tearDown() {
+		new File(outFileName).delete();
+	}
+
+	/**
+	 * Converts the file.
+	 *
+	 * @throws IOException If the file could not be converted
+	 */
+	@Benchmark
+	public void convert() throws IOException {
+		TeaFileConverter.convertOrThrow(inFileName, from, to, outFileName, settings);
+	}
+}
@@ -0,0 +1,91 @@
+package tealist.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import converter.FileFormats;
+import converter.readers.TeaCursor;
+import converter.readers.TeaFileReader;
+import tealist.Tea;
+
+/**
+ * Reads a generated file with the reader of each format, both tea by tea
+ * from a cursor and as a whole list.
+ *
+ * @author Mats Palm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ReaderBenchmark {
+
+	@Param({"text", "xml", "xmldom", "bin"})
+	public String format;
+
+	@Param({"1000", "100000"})
+	public long records;
+
+	private TeaFileReader reader;
+	private String fileName;
+
+	/**
+	 * Generates the input file if needed.
+	 *
+	 * @throws IOException If the file could not be generated
+	 */
+	@Setup
+	public void setup() throws IOException {
+		reader = FileFormats.getReader(format);
+		fileName = BenchmarkFiles.input(records, format);
+	}
+
+	/**
+	 * Reads all tea from a cursor.
+	 *
+	 * @param blackhole Consumes the tea
+	 * @throws IOException If the file could not be read
+	 */
+	@Benchmark
+	public void cursor(Blackhole blackhole) throws IOException {
+		TeaCursor cursor = reader.openCursor(fileName);
+		try
+		{
+			Tea tea;
+			while((tea = cursor.next()) != null)
+			{
+				blackhole.consume(tea);
+			}
+		}
+		finally
+		{
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Reads the file into a list.
+	 *
+	 * @return The number of tea, so the list is not optimized away
+	 * @throws IOException If the file could not be read
+	 */
+	@Benchmark
+	public int readFile() throws IOException {
+		return reader.readFile(fileName).size();
+	}
+}
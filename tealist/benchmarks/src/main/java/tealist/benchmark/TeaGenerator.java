@@ -0,0 +1,208 @@
+package tealist.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+
+import converter.FileFormats;
+import converter.writers.TeaSink;
+import tealist.Tea;
+
+/**
+ * TeaGenerator makes synthetic tea lists for benchmarks. The same seed and
+ * number of records always give the same list.
+ *
+ * The distributions are modelled on tesorter-UTF-8.txt: categories and
+ * prices are drawn with the weights they have in that file, names are one
+ * to four words and descriptions are sentences whose lengths follow the
+ * deciles of the descriptions in the file, including a few long ones.
+ * The words are taken from the file, so the text has the same mix of
+ * ASCII and Swedish letters.
+ *
+ * @author Mats Palm
+ */
+public class TeaGenerator {
+	public static final long DEFAULT_SEED = 20130101L;
+
+	private static final String[] CATEGORIES = {"Kränkus blandningar", "Smaksatt svart", "Blandningar",
+		"Rent svart", "Smaksatt grönt", "Rött", "Örtte", "Rent grönt"};
+	private static final int[] CATEGORY_WEIGHTS = {24, 24, 17, 14, 10, 8, 7, 6};
+
+	private static final int[] PRICES = {16, 18, 20, 22, 24, 25, 26, 28, 30, 35, 36, 40, 46, 50};
+	private static final int[] PRICE_WEIGHTS = {1, 1, 31, 36, 9, 6, 10, 2, 6, 1, 2, 2, 2, 1};
+
+	/* Share of names with one, two, three and four words */
+	private static final int[] NAME_WORD_WEIGHTS = {59, 39, 11, 1};
+	private static final String[] NAME_WORDS = {"Rooibos", "Earl", "Grey", "blandning", "Darjeeling",
+		"Japansk", "TGFOP", "Grön", "te", "Bora", "Lapsang", "Formosa", "Svart", "pepparmint",
+		"Jordgubbsgrädde", "BOP", "Assam", "Ceylon", "Cream", "Svinhusblandning", "Honungste", "S:ta",
+		"Maria", "Tjelvarblandning", "Te-Jaken", "Sylves", "lilla", "gröna", "Idas", "Stenhuggarblandning",
+		"Gotländskt", "äppelkakste", "Farmor", "Huldas", "Hansablandning", "Guteblandning", "Munkte",
+		"Källingblandning", "Vikingablandning", "Kärlekste", "från", "Gotland", "sommarblandning",
+		"Kalkstensdrömmar", "Höstglöd", "Samurai", "Lyckliga", "stunder", "Rabarbergrädde", "Österns"};
+
+	/* Deciles of the description lengths, the last is the longest description */
+	private static final int[] DESCRIPTION_DECILES = {1, 18, 25, 34, 43, 53, 58, 66, 77, 88, 113, 318};
+	private static final String[] DESCRIPTION_WORDS = {"och", "med", "av", "te", "smak", "innehåller",
+		"en", "som", "i", "smaksatt", "från", "ett", "till", "är", "den", "kanel", "blommor", "blad",
+		"lite", "mustig", "på", "bär", "apelsinskal", "kryddnejlika", "skalolja", "kallpressad",
+		"kvalité", "citrus", "smaken", "vår", "fruktbitar", "frisk", "för", "hela", "malva", "bergamott",
+		"smakrikt", "kraftig", "kinesiskt", "klassiskt", "kryddor", "fruktig", "Visby", "utpräglad",
+		"mild", "söt", "rökt", "frukter", "vanilj", "grädde", "kardemumma", "mycket", "Sri", "Lanka",
+		"Kina", "Indien", "sencha", "doft", "sommar", "exotisk", "god", "påminner", "Gotland"};
+
+	private Random random;
+	private StringBuilder text = new StringBuilder();
+
+	/**
+	 * Constructs a generator with the default seed
+	 */
+	public TeaGenerator() {
+		this(DEFAULT_SEED);
+	}
+
+	/**
+	 * Constructs a generator
+	 *
+	 * @param seed The seed, the same seed gives the same tea
+	 */
+	public TeaGenerator(long seed) {
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Generates the next tea.
+	 *
+	 * @return A new tea
+	 */
+	public Tea next() {
+		return new Tea(CATEGORIES[pick(CATEGORY_WEIGHTS)], name(), PRICES[pick(PRICE_WEIGHTS)], description());
+	}
+
+	/**
+	 * Writes generated tea to a file.
+	 *
+	 * @param records Number of tea
+	 * @param fileFormat Format of the file
+	 * @param fileName Name of the file
+	 * @throws IOException If the file could not be written
+	 */
+	public void write(long records, String fileFormat, String fileName) throws IOException {
+		TeaSink sink = FileFormats.getWriter(fileFormat).openSink(fileName);
+		try
+		{
+			for(long i = 0; i < records; i++)
+			{
+				sink.write(next());
+			}
+		}
+		finally
+		{
+			sink.close();
+		}
+	}
+
+	/**
+	 * Makes a name of one or more words.
+	 *
+	 * @return The name
+	 */
+	private String name() {
+		text.setLength(0);
+		int words = pick(NAME_WORD_WEIGHTS) + 1;
+		for(int i = 0; i < words; i++)
+		{
+			if(i > 0)
+			{
+				text.append(' ');
+			}
+			text.append(NAME_WORDS[random.nextInt(NAME_WORDS.length)]);
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Makes a description of sentences with a length drawn between two deciles.
+	 *
+	 * @return The description
+	 */
+	private String description() {
+		int decile = random.nextInt(DESCRIPTION_DECILES.length - 1);
+		int low = DESCRIPTION_DECILES[decile];
+		int length = low + random.nextInt(DESCRIPTION_DECILES[decile + 1] - low + 1);
+
+		text.setLength(0);
+		boolean sentenceStart = true;
+		while(text.length() < length)
+		{
+			String word = DESCRIPTION_WORDS[random.nextInt(DESCRIPTION_WORDS.length)];
+			if(sentenceStart)
+			{
+				text.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+			}
+			else
+			{
+				text.append(' ').append(word);
+			}
+			sentenceStart = random.nextInt(8) == 0;
+			if(sentenceStart || text.length() >= length)
+			{
+				text.append(sentenceStart ? ". " : ".");
+			}
+		}
+		int end = text.length();
+		while(end > 0 && text.charAt(end - 1) == ' ')
+		{
+			end--;
+		}
+		return text.substring(0, end);
+	}
+
+	/**
+	 * Picks an index with a probability given by its weight.
+	 *
+	 * @param weights The weights
+	 * @return The index
+	 */
+	private int pick(int[] weights) {
+		int total = 0;
+		for(int weight : weights)
+		{
+			total += weight;
+		}
+		int value = random.nextInt(total);
+		for(int i = 0; i < weights.length; i++)
+		{
+			value -= weights[i];
+			if(value < 0)
+			{
+				return i;
+			}
+		}
+		return weights.length - 1;
+	}
+
+	/**
+	 * Writes a generated tea list.
+	 *
+	 * Usage: TeaGenerator records file [format [seed]]
+	 *
+	 * @param args Number of records (1000 to 10000000 are typical), output file,
+	 *        file format (text if left out) and seed
+	 * @throws IOException If the file could not be written
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2)
+		{
+			System.err.println("Usage: TeaGenerator records file [format [seed]]");
+			System.exit(1);
+		}
+		String fileFormat = args.length > 2 ? args[2] : FileFormats.TEXT.toString();
+		if(!FileFormats.isValid(fileFormat))
+		{
+			System.err.println("Unknown file format: " + fileFormat);
+			System.exit(1);
+		}
+		long seed = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_SEED;
+		new TeaGenerator(seed).write(Long.parseLong(args[0]), fileFormat, args[1]);
+	}
+}
@@ -0,0 +1,106 @@
+package tealist.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import converter.FileFormats;
+import converter.writers.TeaFileWriter;
+import converter.writers.TeaSink;
+import tealist.Tea;
+
+/**
+ * Writes generated tea held in memory with the writer of each format, both
+ * tea by tea to a sink and as a whole list.
+ *
+ * @author Mats Palm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class WriterBenchmark {
+
+	@Param({"text", "xml", "xmldom", "bin"})
+	public String format;
+
+	@Param({"1000", "100000"})
+	public long records;
+
+	private TeaFileWriter writer;
+	private List<Tea> teaList;
+	private String fileName;
+
+	/**
+	 * Generates the tea to write.
+	 *
+	 * @throws IOException If the output directory could not be created
+	 */
+	@Setup
+	public void setup() throws IOException {
+		writer = FileFormats.getWriter(format);
+		fileName = BenchmarkFiles.output(format);
+		TeaGenerator generator = new TeaGenerator();
+		teaList = new ArrayList<Tea>();
+		for(long i = 0; i < records; i++)
+		{
+			teaList.add(generator.next());
+		}
+	}
+
+	/**
+	 * Removes the output file.
+	 */
+	@TearDown
+	public void tearDown() {
+		new File(fileName).delete();
+	}
+
+	/**
+	 * Writes all tea to a sink.
+	 *
+	 * @throws IOException If the file could not be written
+	 */
+	@Benchmark
+	public void sink() throws IOException {
+		TeaSink sink = writer.openSink(fileName);
+		try
+		{
+			for(Tea tea : teaList)
+			{
+				sink.write(tea);
+			}
+		}
+		finally
+		{
+			sink.close();
+		}
+	}
+
+	/**
+	 * Writes the list.
+	 *
+	 * @throws Exception If the file could not be written
+	 */
+	@Benchmark
+	public void writeFile() throws Exception {
+		writer.writeFile(teaList, fileName);
+	}
+}
@@ -0,0 +1,301 @@
+package converter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A BatchConverter converts many files in one go. The files are converted
+ * concurrently by a fixed number of threads and the outcome of each
+ * conversion is collected, so one bad file does not stop the others.
+ *
+ * Input files with the same name in different directories, or with and
+ * without a compression extension, get the same output file. Only the
+ * first of them is converted, the others fail without being started.
+ *
+ * @author Mats Palm
+ */
+public class BatchConverter {
+
+	private int concurrency;
+
+	/**
+	 * Constructs a batch converter
+	 *
+	 * @param concurrency The highest number of files converted at the same time
+	 */
+	public BatchConverter(int concurrency) {
+		if(concurrency < 1) {
+			throw new IllegalArgumentException("Concurrency must be at least 1");
+		}
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Turns input names into the files to convert. A name can be a file, a
+	 * directory, meaning all files in it, or a glob such as tea/*.txt where
+	 * the wildcards are in the last part of the name.
+	 *
+	 * @param inputs The input names
+	 * @return The files to convert in the order they were given, the files
+	 *         of a directory or glob sorted by name
+	 * @throws IOException If a name does not match any file
+	 */
+	public static List<File> expandInputs(List<String> inputs) throws IOException {
+		List<File> files = new ArrayList<File>();
+		for(String input : inputs) {
+			File file = new File(input);
+			List<File> matches = new ArrayList<File>();
+
+			if(file.isFile()) {
+				matches.add(file);
+			}
+			else if(file.isDirectory()) {
+				addFiles(file.toPath(), "*", matches);
+			}
+			else if(isGlob(file.getName())) {
+				File parent = file.getAbsoluteFile().getParentFile();
+				if(parent.isDirectory()) {
+					addFiles(parent.toPath(), file.getName(), matches);
+				}
+			}
+			if(matches.isEmpty()) {
+				throw new IOException("No input files found for " + input);
+			}
+			files.addAll(matches);
+		}
+		return files;
+	}
+
+	/**
+	 * Adds the regular files of a directory that match a glob.
+	 *
+	 * @param directory The directory
+	 * @param glob The glob the file names must match
+	 * @param files The list to add the files to
+	 * @throws IOException If the directory could not be read
+	 */
+	private static void addFiles(Path directory, String glob, List<File> files) throws IOException {
+		List<File> found = new ArrayList<File>();
+		DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob);
+		try {
+			for(Path path : stream) {
+				if(Files.isRegularFile(path)) {
+					found.add(path.toFile());
+				}
+			}
+		}
+		finally {
+			stream.close();
+		}
+		Collections.sort(found);
+		files.addAll(found);
+	}
+
+	/**
+	 * Checks if a file name contains glob wildcards.
+	 *
+	 * @param name The file name
+	 * @return true if the name is a glob
+	 */
+	private static boolean isGlob(String name) {
+		return name.indexOf('*') >= 0 || name.indexOf('?') >= 0 || name.indexOf('[') >= 0 || name.indexOf('{') >= 0;
+	}
+
+	/**
+	 * Gets the name of the output file for an input file. The output file gets
+	 * the name of the input file with the extension of the output format, the
+	 * extension of a compressed input file is removed first.
+	 *
+	 * @param input The input file
+	 * @param outFileFormat The output file format
+	 * @param outDirectory The directory of the output file
+	 * @return The output file
+	 */
+	public static File outputFile(File input, String outFileFormat, File outDirectory) {
+		String name = Compression.stripExtension(input.getName());
+		int dot = name.lastIndexOf('.');
+		if(dot > 0) {
+			name = name.substring(0, dot);
+		}
+		return new File(outDirectory, name + "." + FileFormats.getExtension(outFileFormat));
+	}
+
+	/**
+	 * Finds the input files whose output file is the output file of an
+	 * earlier input file. A file that is given twice is found as well.
+	 *
+	 * @param inputs The input files
+	 * @param outFileFormat The output file format
+	 * @param outDirectory The directory of the output files
+	 * @return For each input file, in the same order, the earlier input file with the same output file or null
+	 */
+	public static List<File> earlierInputs(List<File> inputs, String outFileFormat, File outDirectory) {
+		Map<Path, File> owners = new HashMap<Path, File>();
+		List<File> earlier = new ArrayList<File>();
+		for(File input : inputs) {
+			Path output = outputFile(input, outFileFormat, outDirectory).toPath().toAbsolutePath().normalize();
+			File owner = owners.get(output);
+			if(owner == null) {
+				owners.put(output, input);
+			}
+			earlier.add(owner);
+		}
+		return earlier;
+	}
+
+	/**
+	 * Converts all the files and waits until they are done.
+	 *
+	 * @param inputs The input files
+	 * @param inFileFormat Input file format
+	 * @param outFileFormat Output file format
+	 * @param outDirectory The directory the output files are written to, it
+	 *                     is created if it does not exist
+	 * @param settings Settings for each conversion
+	 * @return The result of each conversion in the same order as the inputs
+	 * @throws IOException If the output directory could not be created
+	 * @throws InterruptedException If the thread was interrupted while waiting
+	 */
+	public List<Result> convert(List<File> inputs, String inFileFormat, String outFileFormat,
+			File outDirectory, ConversionSettings settings) throws IOException, InterruptedException {
+		return convert(inputs, earlierInputs(inputs, outFileFormat, outDirectory), inFileFormat, outFileFormat,
+				outDirectory, settings);
+	}
+
+	/**
+	 * Converts the files that do not have the output file of an earlier
+	 * file and waits until they are done.
+	 *
+	 * @param inputs The input files
+	 * @param earlier For each input file the earlier input file with the same output file or null,
+	 *                see {@link #earlierInputs(List, String, File)}
+	 * @param inFileFormat Input file format
+	 * @param outFileFormat Output file format
+	 * @param outDirectory The directory the output files are written to, it
+	 *                     is created if it does not exist
+	 * @param settings Settings for each conversion
+	 * @return The result of each conversion in the same order as the inputs
+	 * @throws IOException If the output directory could not be created
+	 * @throws InterruptedException If the thread was interrupted while waiting
+	 */
+	List<Result> convert(List<File> inputs, List<File> earlier, final String inFileFormat, final String outFileFormat,
+			File outDirectory, final ConversionSettings settings) throws IOException, InterruptedException {
+		Files.createDirectories(outDirectory.toPath());
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, Math.max(1, inputs.size())));
+		try {
+			List<Future<Result>> futures = new ArrayList<Future<Result>>();
+			for(int i = 0; i < inputs.size(); i++) {
+				final File input = inputs.get(i);
+				final File output = outputFile(input, outFileFormat, outDirectory);
+				final File owner = earlier.get(i);
+				futures.add(executor.submit(new Callable<Result>() {
+					@Override
+					public Result call() {
+						if(owner != null) {
+							return new Result(input, output, "The output file " + output.getPath()
+									+ " is the output file of " + owner.getPath() + " as well", 0);
+						}
+						long start = System.nanoTime();
+						try {
+							TeaFileConverter.convertOrThrow(input.getPath(), inFileFormat, outFileFormat,
+									output.getPath(), settings);
+							return new Result(input, output, null, System.nanoTime() - start);
+						}
+						catch(Exception e) {
+							return new Result(input, output, e.toString(), System.nanoTime() - start);
+						}
+					}
+				}));
+			}
+
+			List<Result> results = new ArrayList<Result>();
+			for(Future<Result> future : futures) {
+				try {
+					results.add(future.get());
+				}
+				catch(ExecutionException e) {
+					// call() catches everything it can
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+			return results;
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * The outcome of converting one file.
+	 */
+	public static class Result {
+		private File input;
+		private File output;
+		private String fault;
+		private long nanos;
+
+		/**
+		 * Constructs a result
+		 *
+		 * @param input The input file
+		 * @param output The output file
+		 * @param fault Description of what went wrong, null if the conversion succeeded
+		 * @param nanos How long the conversion took in nanoseconds
+		 */
+		private Result(File input, File output, String fault, long nanos) {
+			this.input = input;
+			this.output = output;
+			this.fault = fault;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * @return The input file
+		 */
+		public File getInput() {
+			return input;
+		}
+
+		/**
+		 * @return The output file
+		 */
+		public File getOutput() {
+			return output;
+		}
+
+		/**
+		 * @return true if the file was converted
+		 */
+		public boolean isSuccess() {
+			return fault == null;
+		}
+
+		/**
+		 * @return Description of what went wrong, null if the conversion succeeded
+		 */
+		public String getFault() {
+			return fault;
+		}
+
+		/**
+		 * @return How long the conversion took in milliseconds
+		 */
+		public long getMillis() {
+			return nanos / 1000000;
+		}
+	}
+}
@@ -0,0 +1,315 @@
+package converter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A BatchWatcher keeps the output files of a batch in step with its input
+ * files. All the inputs are converted when the watch starts, and after that
+ * only the inputs that change.
+ *
+ * The directories of the inputs are watched with a {@link WatchService}.
+ * Events are collected until the directories have been quiet for a while,
+ * so a file that is written in many steps, or many files that are copied
+ * at once, give one round of conversions. An input is only converted again
+ * when its content has changed: a file with the same size and time of last
+ * change as when it was converted is not read at all, and otherwise its
+ * content hash decides. The same goes for inputs that could not be
+ * converted. New inputs matching a directory or glob are converted as
+ * they appear, the outputs of deleted inputs are kept.
+ *
+ * @author Mats Palm
+ */
+public class BatchWatcher {
+
+	/* Events that keep coming do not hold back the conversions longer than this many quiet periods */
+	private static final int MAX_QUIET_PERIODS = 20;
+
+	private BatchConverter converter;
+	private List<String> inputs;
+	private String inFileFormat;
+	private String outFileFormat;
+	private File outDirectory;
+	private ConversionSettings settings;
+	private long quietMillis = 500;
+	private Map<Path, Fingerprint> converted = new HashMap<Path, Fingerprint>();
+
+	/**
+	 * Constructs a watcher
+	 *
+	 * @param converter The converter used for each round of conversions
+	 * @param inputs The input names, files, directories or globs as for
+	 *               {@link BatchConverter#expandInputs(List)}
+	 * @param inFileFormat Input file format
+	 * @param outFileFormat Output file format
+	 * @param outDirectory The directory the output files are written to
+	 * @param settings Settings for each conversion
+	 */
+	public BatchWatcher(BatchConverter converter, List<String> inputs, String inFileFormat, String outFileFormat,
+			File outDirectory, ConversionSettings settings) {
+		this.converter = converter;
+		this.inputs = new ArrayList<String>(inputs);
+		this.inFileFormat = inFileFormat;
+		this.outFileFormat = outFileFormat;
+		this.outDirectory = outDirectory;
+		this.settings = settings;
+	}
+
+	/**
+	 * Sets how long the directories must be quiet before changed files are
+	 * converted.
+	 *
+	 * @param quietMillis The time in milliseconds, 500 if it is not set
+	 */
+	public void setQuietMillis(long quietMillis) {
+		if(quietMillis < 0) {
+			throw new IllegalArgumentException("Quiet time can not be negative");
+		}
+		this.quietMillis = quietMillis;
+	}
+
+	/**
+	 * Converts all the inputs and then converts changed inputs until the
+	 * thread is interrupted.
+	 *
+	 * @param listener Told the results of each round of conversions
+	 * @throws IOException If the directories could not be watched
+	 * @throws InterruptedException If the thread was interrupted, which is how the watch is stopped
+	 */
+	public void watch(Listener listener) throws IOException, InterruptedException {
+		WatchService service = FileSystems.getDefault().newWatchService();
+		try {
+			for(Path directory : directories()) {
+				directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+			}
+			convertChanged(null, listener);
+			while(true) {
+				convertChanged(awaitChanges(service), listener);
+			}
+		}
+		finally {
+			service.close();
+		}
+	}
+
+	/**
+	 * Converts the inputs that have changed.
+	 *
+	 * @param touched The files that events were given for, null if any file may have changed
+	 * @param listener Told the results if anything was converted
+	 * @throws IOException If the output directory could not be created
+	 * @throws InterruptedException If the thread was interrupted
+	 */
+	private void convertChanged(Set<Path> touched, Listener listener) throws IOException, InterruptedException {
+		List<File> files = currentInputs();
+		List<File> earlier = BatchConverter.earlierInputs(files, outFileFormat, outDirectory);
+		Set<Path> current = new HashSet<Path>();
+		Set<Path> outputs = new HashSet<Path>();
+		for(File file : files) {
+			current.add(normalize(file));
+			outputs.add(normalize(BatchConverter.outputFile(file, outFileFormat, outDirectory)));
+		}
+		// Deleted inputs are converted again if they come back
+		converted.keySet().retainAll(current);
+
+		List<File> changed = new ArrayList<File>();
+		List<File> changedEarlier = new ArrayList<File>();
+		Map<File, Fingerprint> fingerprints = new HashMap<File, Fingerprint>();
+		for(int i = 0; i < files.size(); i++) {
+			File file = files.get(i);
+			Path path = normalize(file);
+			Fingerprint last = converted.get(path);
+			if(outputs.contains(path) || last != null && touched != null && !touched.contains(path)) {
+				continue;
+			}
+			if(last != null && last.isSameSizeAndTime(file)) {
+				continue;
+			}
+			Fingerprint fingerprint;
+			try {
+				fingerprint = new Fingerprint(file);
+			}
+			catch(IOException e) {
+				// Deleted or not readable, the next event tells what happened
+				continue;
+			}
+			if(last != null && Arrays.equals(last.hash, fingerprint.hash)) {
+				converted.put(path, fingerprint);
+				continue;
+			}
+			changed.add(file);
+			changedEarlier.add(earlier.get(i));
+			fingerprints.put(file, fingerprint);
+		}
+		if(changed.isEmpty()) {
+			return;
+		}
+
+		// The other inputs are not converted, but they may still have the output file
+		List<BatchConverter.Result> results = converter.convert(changed, changedEarlier, inFileFormat, outFileFormat,
+				outDirectory, settings);
+		for(BatchConverter.Result result : results) {
+			// A file that failed is tried again when its content changes
+			converted.put(normalize(result.getInput()), fingerprints.get(result.getInput()));
+		}
+		listener.converted(results);
+	}
+
+	/**
+	 * Waits for events and collects them until the directories have been
+	 * quiet for the quiet time.
+	 *
+	 * @param service The watch service
+	 * @return The files events were given for, null if events were lost and any file may have changed
+	 * @throws InterruptedException If the thread was interrupted
+	 */
+	private Set<Path> awaitChanges(WatchService service) throws InterruptedException {
+		Set<Path> touched = new HashSet<Path>();
+		boolean lost = false;
+		WatchKey key = service.take();
+		for(int periods = 0; key != null; periods++) {
+			Path directory = (Path) key.watchable();
+			for(WatchEvent<?> event : key.pollEvents()) {
+				if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					lost = true;
+				}
+				else {
+					touched.add(normalize(directory.resolve((Path) event.context()).toFile()));
+				}
+			}
+			key.reset();
+			key = periods < MAX_QUIET_PERIODS ? service.poll(quietMillis, TimeUnit.MILLISECONDS) : null;
+		}
+		return lost ? null : touched;
+	}
+
+	/**
+	 * Gets the files the input names stand for right now. A directory or
+	 * glob without any files is not an error while watching, files may
+	 * be added to it later.
+	 *
+	 * @return The input files
+	 */
+	private List<File> currentInputs() {
+		List<File> files = new ArrayList<File>();
+		for(String input : inputs) {
+			try {
+				files.addAll(BatchConverter.expandInputs(Arrays.asList(input)));
+			}
+			catch(IOException e) {
+				// Nothing to convert for this name yet
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * Gets the directories to watch, the directories given as inputs and
+	 * the directories of the files and globs.
+	 *
+	 * @return The directories
+	 * @throws IOException If an input is not in an existing directory
+	 */
+	private Set<Path> directories() throws IOException {
+		Set<Path> directories = new HashSet<Path>();
+		for(String input : inputs) {
+			File file = new File(input).getAbsoluteFile();
+			File directory = file.isDirectory() ? file : file.getParentFile();
+			if(directory == null || !directory.isDirectory()) {
+				throw new IOException("No directory to watch for " + input);
+			}
+			directories.add(normalize(directory));
+		}
+		return directories;
+	}
+
+	/**
+	 * Gets the absolute path of a file without . and .. so that names of the
+	 * same file can be compared.
+	 *
+	 * @param file The file
+	 * @return The path
+	 */
+	private static Path normalize(File file) {
+		return file.toPath().toAbsolutePath().normalize();
+	}
+
+	/**
+	 * Told the results of each round of conversions.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called after the files that had changed have been converted.
+		 *
+		 * @param results The result of each conversion
+		 */
+		public void converted(List<BatchConverter.Result> results);
+	}
+
+	/**
+	 * What an input file was like when it was converted.
+	 */
+	private static class Fingerprint {
+		private long length;
+		private long lastModified;
+		private byte[] hash;
+
+		/**
+		 * Constructs the fingerprint of a file as it is now. The size and time
+		 * are taken before the content is read, so a change while reading is
+		 * seen the next time.
+		 *
+		 * @param file The file
+		 * @throws IOException If the file could not be read
+		 */
+		private Fingerprint(File file) throws IOException {
+			this.length = file.length();
+			this.lastModified = lastModified(file);
+			this.hash = ContentHash.of(file);
+		}
+
+		/**
+		 * Checks if a file has the same size and time of last change as when
+		 * the fingerprint was taken.
+		 *
+		 * @param file The file
+		 * @return true if neither has changed
+		 */
+		private boolean isSameSizeAndTime(File file) {
+			try {
+				return length == file.length() && lastModified == lastModified(file);
+			}
+			catch(IOException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * Gets the time of last change of a file as precisely as the file system keeps it.
+		 *
+		 * @param file The file
+		 * @return The time in nanoseconds
+		 * @throws IOException If the time could not be read
+		 */
+		private static long lastModified(File file) throws IOException {
+			return Files.getLastModifiedTime(file.toPath()).to(TimeUnit.NANOSECONDS);
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package converter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Constants and helpers for the binary tea file format, shared by the binary
+ * reader and writer.
+ *
+ * A file starts with a header followed by blocks of up to
+ * {@link #BLOCK_SIZE} tea and ends with a block length of 0. All numbers are
+ * big endian.
+ *
+ * <pre>
+ * header:  magic "TEAB" | short version | short flags (0) | long tea count (-1 if unknown)
+ * block:   int length of the rest of the block
+ *          int tea count | int min price | int max price
+ *          int new categories, for each: int length | UTF-8 bytes
+ *          byte code width | category codes
+ *          byte price width | prices minus min price
+ *          int name lengths[tea count] | UTF-8 names
+ *          int description lengths[tea count] | UTF-8 descriptions
+ * </pre>
+ *
+ * Categories are dictionary encoded. Each block only adds the categories
+ * that have not been seen in an earlier block, codes are given in the order
+ * the categories are added. Codes and prices are stored with the smallest
+ * width of 1, 2 or 4 bytes that fits the block.
+ *
+ * @author Mats Palm
+ */
+public final class BinaryFormat {
+
+	/** Magic bytes at the start of a file */
+	public static final int MAGIC = 0x54454142;
+	/** Version of the format */
+	public static final short VERSION = 1;
+	/** Size of the header in bytes */
+	public static final int HEADER_SIZE = 16;
+	/** Position of the tea count in the header */
+	public static final int COUNT_POSITION = 8;
+	/** Highest number of tea in a block */
+	public static final int BLOCK_SIZE = 8192;
+
+	/**
+	 * Only static members
+	 */
+	private BinaryFormat() {
+	}
+
+	/**
+	 * Gets the smallest width that can hold an unsigned value.
+	 *
+	 * @param maxValue The largest value to store
+	 * @return 1, 2 or 4 bytes
+	 */
+	public static int width(long maxValue) {
+		if(maxValue <= 0xFF) {
+			return 1;
+		}
+		if(maxValue <= 0xFFFF) {
+			return 2;
+		}
+		return 4;
+	}
+
+	/**
+	 * Writes an unsigned value with a width of 1, 2 or 4 bytes.
+	 *
+	 * @param buf The buffer to write to
+	 * @param width The width
+	 * @param value The value
+	 */
+	public static void putUnsigned(ByteBuffer buf, int width, int value) {
+		switch(width) {
+		case 1: buf.put((byte) value); break;
+		case 2: buf.putShort((short) value); break;
+		default: buf.putInt(value);
+		}
+	}
+
+	/**
+	 * Reads an unsigned value with a width of 1, 2 or 4 bytes.
+	 *
+	 * @param buf The buffer to read from
+	 * @param width The width
+	 * @return The value
+	 */
+	public static int getUnsigned(ByteBuffer buf, int width) {
+		switch(width) {
+		case 1: return buf.get() & 0xFF;
+		case 2: return buf.getShort() & 0xFFFF;
+		default: return buf.getInt();
+		}
+	}
+}
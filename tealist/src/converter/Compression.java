@@ -0,0 +1,227 @@
+package converter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Enumeration for the compressions a tea file may have, in any file format.
+ *
+ * A compressed input file is recognized by its first bytes: gzip files
+ * start with 1f 8b, and deflate files (zlib) start with a two byte header
+ * that is only trusted when the name also has the extension .zz, since a
+ * text file could start with the same bytes. An output file is compressed
+ * when its name has the extension of a compression.
+ *
+ * Gzip files with several members after each other, such as those written
+ * by {@link #createParallelGzip(String, ExecutorService, int)}, are read as
+ * one file.
+ *
+ * @author Mats Palm
+ */
+public enum Compression {
+	NONE(null), GZIP(".gz"), DEFLATE(".zz");
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private String extension;
+
+	/**
+	 * Private constructor only for the enumeration itself
+	 *
+	 * @param extension The file name extension of compressed files, with the dot
+	 */
+	private Compression(String extension) {
+		this.extension = extension;
+	}
+
+	/**
+	 * Gets the file name extension of files with this compression.
+	 *
+	 * @return The extension with the dot, or null for no compression
+	 */
+	public String getExtension() {
+		return extension;
+	}
+
+	/**
+	 * Gets the compression given by the extension of a file name.
+	 *
+	 * @param fileName Name of the file, may be null
+	 * @return The compression, NONE if the name has no compression extension
+	 */
+	public static Compression forName(String fileName) {
+		if(fileName != null) {
+			for(Compression compression : values()) {
+				if(compression.extension != null && fileName.toLowerCase(Locale.ROOT).endsWith(compression.extension)) {
+					return compression;
+				}
+			}
+		}
+		return NONE;
+	}
+
+	/**
+	 * Removes the compression extension from a file name.
+	 *
+	 * @param fileName Name of the file
+	 * @return The name without the extension of its compression
+	 */
+	public static String stripExtension(String fileName) {
+		Compression compression = forName(fileName);
+		if(compression == NONE) {
+			return fileName;
+		}
+		return fileName.substring(0, fileName.length() - compression.extension.length());
+	}
+
+	/**
+	 * Finds the compression of an existing file from its first bytes.
+	 *
+	 * @param file The file
+	 * @return The compression, NONE if the file is not compressed
+	 * @throws IOException If the file could not be read
+	 */
+	public static Compression detect(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			return detect(in, file.getName());
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Finds the compression of a stream from its first bytes, without
+	 * consuming them. A stream has no name, so only gzip is recognized.
+	 *
+	 * @param in The stream, which must support mark
+	 * @return The compression, NONE if the stream is not compressed
+	 * @throws IOException If the stream could not be read
+	 */
+	public static Compression detect(InputStream in) throws IOException {
+		in.mark(2);
+		try {
+			return detect(in, null);
+		}
+		finally {
+			in.reset();
+		}
+	}
+
+	/**
+	 * Finds the compression from the first bytes read from a stream.
+	 *
+	 * @param in The stream positioned at the start of the file
+	 * @param fileName Name of the file, or null if it has none
+	 * @return The compression, NONE if the bytes are not compressed
+	 * @throws IOException If the stream could not be read
+	 */
+	private static Compression detect(InputStream in, String fileName) throws IOException {
+		byte[] magic = new byte[2];
+		int read = 0;
+		int count;
+		while(read < magic.length && (count = in.read(magic, read, magic.length - read)) > 0) {
+			read += count;
+		}
+		if(read < magic.length) {
+			return NONE;
+		}
+		int first = magic[0] & 0xff;
+		int second = magic[1] & 0xff;
+		if(first == 0x1f && second == 0x8b) {
+			return GZIP;
+		}
+		// Deflate method with a window of at most 32 kB and a correct header check
+		if((first & 0x0f) == 8 && (first >> 4) <= 7 && ((first << 8) | second) % 31 == 0
+				&& forName(fileName) == DEFLATE) {
+			return DEFLATE;
+		}
+		return NONE;
+	}
+
+	/**
+	 * Opens a file and decompresses it while it is read.
+	 *
+	 * @param file The file
+	 * @return A stream of the decompressed bytes
+	 * @throws IOException If the file could not be opened or is not correctly compressed
+	 */
+	public InputStream open(File file) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+		try {
+			return open(in);
+		}
+		catch(IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Decompresses a stream while it is read.
+	 *
+	 * @param in The compressed stream
+	 * @return A stream of the decompressed bytes
+	 * @throws IOException If the stream is not correctly compressed
+	 */
+	public InputStream open(InputStream in) throws IOException {
+		switch(this) {
+		case GZIP:
+			return new GZIPInputStream(in, BUFFER_SIZE);
+		case DEFLATE:
+			return new InflaterInputStream(in);
+		default:
+			return in;
+		}
+	}
+
+	/**
+	 * Creates a file and compresses the bytes written to it on the
+	 * calling thread.
+	 *
+	 * @param fileName Name of the file
+	 * @return A stream that compresses into the file, it must be closed to complete the file
+	 * @throws IOException If the file could not be created
+	 */
+	public OutputStream create(String fileName) throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(fileName), BUFFER_SIZE);
+		switch(this) {
+		case GZIP:
+			return new BufferedOutputStream(new GZIPOutputStream(out, BUFFER_SIZE), BUFFER_SIZE);
+		case DEFLATE:
+			return new BufferedOutputStream(new DeflaterOutputStream(out), BUFFER_SIZE);
+		default:
+			return out;
+		}
+	}
+
+	/**
+	 * Creates a gzip file whose blocks are compressed by several threads at
+	 * the same time. Each block becomes a gzip member of its own, and the
+	 * members are written in order, which gives a valid gzip file that any
+	 * gzip reader decompresses to the bytes written.
+	 *
+	 * @param fileName Name of the file
+	 * @param executor The threads compressing the blocks
+	 * @param threads Number of threads the executor has, decides how many blocks are
+	 *                compressed ahead of the file
+	 * @return A stream that compresses into the file, it must be closed to complete the file
+	 * @throws IOException If the file could not be created
+	 */
+	public static OutputStream createParallelGzip(String fileName, ExecutorService executor, int threads) throws IOException {
+		return new ParallelGzipOutputStream(new FileOutputStream(fileName), executor, threads);
+	}
+}
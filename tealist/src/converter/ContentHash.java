@@ -0,0 +1,70 @@
+package converter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hashes the content of files, so that files can be told apart by what
+ * they hold rather than by their names and times.
+ *
+ * @author Mats Palm
+ */
+final class ContentHash {
+	private static final String ALGORITHM = "SHA-256";
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/**
+	 * Only static methods
+	 */
+	private ContentHash() {
+	}
+
+	/**
+	 * Hashes the content of a file.
+	 *
+	 * @param file The file
+	 * @return The SHA-256 hash
+	 * @throws IOException If the file could not be read
+	 */
+	static byte[] of(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(ALGORITHM);
+		}
+		catch(NoSuchAlgorithmException e) {
+			// Every Java platform has SHA-256
+			throw new IllegalStateException(e);
+		}
+		byte[] buffer = new byte[64 * 1024];
+		InputStream in = new FileInputStream(file);
+		try {
+			int read;
+			while((read = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		finally {
+			in.close();
+		}
+		return digest.digest();
+	}
+
+	/**
+	 * Writes a hash as hexadecimal digits.
+	 *
+	 * @param hash The hash
+	 * @return Two lower case digits per byte
+	 */
+	static String toHex(byte[] hash) {
+		char[] digits = new char[hash.length * 2];
+		for(int i = 0; i < hash.length; i++) {
+			digits[2 * i] = HEX[(hash[i] >> 4) & 0xf];
+			digits[2 * i + 1] = HEX[hash[i] & 0xf];
+		}
+		return new String(digits);
+	}
+}
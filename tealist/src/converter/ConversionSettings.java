@@ -0,0 +1,147 @@
+package converter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import converter.query.TeaQuery;
+import converter.stats.ConversionListener;
+
+/**
+ * Settings for a conversion. The query selects which tea is written, the
+ * other settings only tune how the tea is read and written. Listeners are
+ * told the metrics of each conversion.
+ *
+ * @author Mats Palm
+ */
+public class ConversionSettings {
+
+	private int parallelism = 1;
+	private boolean pipelined;
+	private int compressionThreads = 1;
+	private ParseCache parseCache;
+	private TeaQuery query;
+	private List<ConversionListener> listeners = new ArrayList<ConversionListener>();
+
+	/**
+	 * Gets the number of threads used to parse the input file.
+	 *
+	 * @return Number of threads, 1 if the file is parsed by the calling thread
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the number of threads used to parse the input file. Only
+	 * the text format can be parsed by more than one thread.
+	 *
+	 * @param parallelism Number of threads, at least 1
+	 */
+	public void setParallelism(int parallelism) {
+		if(parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Checks if the input is read on a thread of its own while the output
+	 * is written.
+	 *
+	 * @return true if reading and writing overlap
+	 */
+	public boolean isPipelined() {
+		return pipelined;
+	}
+
+	/**
+	 * Sets if the input is read on a thread of its own while the output is
+	 * written. It helps when both reading and writing take time and there
+	 * is more than one processor.
+	 *
+	 * @param pipelined true to overlap reading and writing
+	 */
+	public void setPipelined(boolean pipelined) {
+		this.pipelined = pipelined;
+	}
+
+	/**
+	 * Gets the number of threads compressing a gzip output file.
+	 *
+	 * @return Number of threads, 1 if the file is compressed by the writing thread
+	 */
+	public int getCompressionThreads() {
+		return compressionThreads;
+	}
+
+	/**
+	 * Sets the number of threads compressing a gzip output file. With
+	 * more than one thread the file is compressed in independent blocks
+	 * that are written as the members of a multi-member gzip file.
+	 *
+	 * @param compressionThreads Number of threads, at least 1
+	 */
+	public void setCompressionThreads(int compressionThreads) {
+		if(compressionThreads < 1) {
+			throw new IllegalArgumentException("Compression threads must be at least 1");
+		}
+		this.compressionThreads = compressionThreads;
+	}
+
+	/**
+	 * Gets the cache the input file is read from when it has been parsed before.
+	 *
+	 * @return The cache or null if the input is always parsed
+	 */
+	public ParseCache getParseCache() {
+		return parseCache;
+	}
+
+	/**
+	 * Sets the cache the input file is read from when it has been parsed
+	 * before. A file that is not in the cache is added to it when it is
+	 * parsed.
+	 *
+	 * @param parseCache The cache or null to always parse the input
+	 */
+	public void setParseCache(ParseCache parseCache) {
+		this.parseCache = parseCache;
+	}
+
+	/**
+	 * Gets the query run between reading and writing.
+	 *
+	 * @return The query or null if all tea is converted as it is
+	 */
+	public TeaQuery getQuery() {
+		return query;
+	}
+
+	/**
+	 * Sets the query run between reading and writing.
+	 *
+	 * @param query The query or null to convert all tea as it is
+	 */
+	public void setQuery(TeaQuery query) {
+		this.query = query;
+	}
+
+	/**
+	 * Adds a listener that is told the metrics of each conversion.
+	 *
+	 * @param listener The listener
+	 */
+	public void addListener(ConversionListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Gets the listeners that are told the metrics of each conversion.
+	 *
+	 * @return The listeners, an empty list if there are none
+	 */
+	public List<ConversionListener> getListeners() {
+		return Collections.unmodifiableList(listeners);
+	}
+}
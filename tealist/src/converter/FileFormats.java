@@ -1,8 +1,12 @@
 package converter;
 
+import converter.readers.BinaryReader;
+import converter.readers.StaxXmlReader;
 import converter.readers.TeaFileReader;
 import converter.readers.TextReader;
 import converter.readers.XmlReader;
+import converter.writers.BinaryWriter;
+import converter.writers.StreamingXmlWriter;
 import converter.writers.TeaFileWriter;
 import converter.writers.TextWriter;
 import converter.writers.XmlWriter;
@@ -15,10 +19,13 @@ import converter.writers.XmlWriter;
  * @author Thomas Ejnefjäll updated by Mats Palm
  */
 public enum FileFormats {
-	TEXT("text", new TextReader(), new TextWriter(), "text - Text (txt) file where fields are separated with ;"), 
-	XML("xml", new XmlReader(), new XmlWriter(), "xml - Xml (xml) file");
+	TEXT("text", "txt", new TextReader(), new TextWriter(), "text - Text (txt) file where fields are separated with ;"), 
+	XML("xml", "xml", new StaxXmlReader(), new StreamingXmlWriter(), "xml - Xml (xml) file"),
+	XML_DOM("xmldom", "xml", new XmlReader(), new XmlWriter(), "xmldom - Xml (xml) file handled as a DOM document"),
+	BINARY("bin", "bin", new BinaryReader(), new BinaryWriter(), "bin - Binary (bin) file where the fields are stored in compact columns");
 	
 	private String fileFormat;
+	private String extension;
 	private TeaFileReader reader;
 	private TeaFileWriter writer;
 	private String description;
@@ -27,12 +34,14 @@ public enum FileFormats {
 	 * Private constructor only for the enumeration itself
 	 * 
 	 * @param fileFormat Name of the file format
+	 * @param extension The file name extension used for files in the format
 	 * @param reader A Writer object associated with the file format
 	 * @param writer A Writer object associated with the file format
 	 * @param description The description associated with the file format
 	 */
-	private FileFormats(String fileFormat, TeaFileReader reader, TeaFileWriter writer, String description) {
+	private FileFormats(String fileFormat, String extension, TeaFileReader reader, TeaFileWriter writer, String description) {
 		this.fileFormat = fileFormat;
+		this.extension = extension;
 		this.reader = reader;
 		this.writer = writer;
 		this.description = description;
@@ -75,6 +84,24 @@ public enum FileFormats {
 		return new TextWriter();
 	}
 	
+	/**
+	 * Iterate through the file formats that matches the 
+	 * file format. Return the file name extension used 
+	 * for files in the format
+	 * 
+	 * @param fileFormat Name of the file format
+	 * @return The extension without a leading dot
+	 */
+	public static String getExtension(String fileFormat) {
+		for(FileFormats ff : FileFormats.values()) {
+			if(ff.equals(fileFormat)) {
+				return ff.extension;
+			}
+		}
+		// Default. Should never happen :)
+		return TEXT.extension;
+	}
+	
 	/**
 	 * Iterate through the file formats and build a 
 	 * string to show a complete description for all
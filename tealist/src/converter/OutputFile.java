@@ -0,0 +1,180 @@
+package converter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+
+/**
+ * An OutputFile is where a conversion writes a named output.
+ *
+ * A regular file, or a file that does not exist yet, is written under a
+ * temporary name in the same directory and renamed to its name when it is
+ * complete, so a conversion that fails leaves no file and a file that is
+ * being replaced as it was. A symbolic link is followed and the file it
+ * points to is replaced, and a replaced file keeps its permissions, owner
+ * and group.
+ *
+ * Everything else is written directly: devices, pipes and other files
+ * that are not regular files, files in a directory the user can not write
+ * to, and files whose owner or group can not be given to the temporary
+ * file. Such a file is not left as it was when a conversion fails.
+ *
+ * @author Mats Palm
+ */
+final class OutputFile {
+	private File file;
+	private File part;
+
+	/**
+	 * Constructs an output file
+	 *
+	 * @param file The file
+	 * @param part The temporary file, null if the file is written directly
+	 */
+	private OutputFile(File file, File part) {
+		this.file = file;
+		this.part = part;
+	}
+
+	/**
+	 * Opens an output file.
+	 *
+	 * @param fileName Name of the file
+	 * @return The output file
+	 * @throws IOException If a temporary file was created and could not be prepared
+	 */
+	static OutputFile open(String fileName) throws IOException {
+		// A file that is written directly keeps the name it was given, so its compression is found from that name
+		File given = new File(fileName).getAbsoluteFile();
+		Path target = given.toPath();
+		if(Files.exists(target)) {
+			target = target.toRealPath();
+		}
+		boolean replaceable = Files.notExists(target, LinkOption.NOFOLLOW_LINKS)
+				|| Files.isRegularFile(target, LinkOption.NOFOLLOW_LINKS);
+		Path directory = target.getParent();
+		if(!replaceable || directory == null || !Files.isWritable(directory)) {
+			return new OutputFile(given, null);
+		}
+
+		File part;
+		try {
+			part = File.createTempFile(target.getFileName() + "-", ".part", directory.toFile());
+		}
+		catch(IOException e) {
+			return new OutputFile(given, null);
+		}
+		boolean prepared = false;
+		try {
+			if(Files.exists(target) && !copyAttributes(target, part.toPath())) {
+				return new OutputFile(given, null);
+			}
+			prepared = true;
+			return new OutputFile(target.toFile(), part);
+		}
+		finally {
+			if(!prepared) {
+				delete(part);
+			}
+		}
+	}
+
+	/**
+	 * Gets the file to write to.
+	 *
+	 * @return The temporary file, or the file itself if it is written directly
+	 */
+	File getWriteFile() {
+		return part == null ? file : part;
+	}
+
+	/**
+	 * Gives the written file its name, replacing the file if it exists. If
+	 * that fails the temporary file is removed.
+	 *
+	 * @throws IOException If the file could not be renamed
+	 */
+	void complete() throws IOException {
+		if(part == null) {
+			return;
+		}
+		boolean succeeded = false;
+		try {
+			try {
+				Files.move(part.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch(AtomicMoveNotSupportedException e) {
+				Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			part = null;
+			succeeded = true;
+		}
+		finally {
+			if(!succeeded) {
+				discard();
+			}
+		}
+	}
+
+	/**
+	 * Removes the temporary file, the file keeps what it had. A file that
+	 * is written directly is left as it is.
+	 */
+	void discard() {
+		if(part != null) {
+			delete(part);
+			part = null;
+		}
+	}
+
+	/**
+	 * Gives the temporary file the owner, group and permissions of the
+	 * file it replaces.
+	 *
+	 * @param target The file that is replaced
+	 * @param part The temporary file
+	 * @return false if the owner or group could not be given, true otherwise
+	 * @throws IOException If the attributes could not be read or the permissions could not be set
+	 */
+	private static boolean copyAttributes(Path target, Path part) throws IOException {
+		PosixFileAttributeView targetView = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+		PosixFileAttributeView partView = Files.getFileAttributeView(part, PosixFileAttributeView.class);
+		if(targetView == null || partView == null) {
+			return true;
+		}
+		PosixFileAttributes attributes = targetView.readAttributes();
+		PosixFileAttributes partAttributes = partView.readAttributes();
+		try {
+			if(!attributes.owner().equals(partAttributes.owner())) {
+				partView.setOwner(attributes.owner());
+			}
+			if(!attributes.group().equals(partAttributes.group())) {
+				partView.setGroup(attributes.group());
+			}
+		}
+		catch(IOException e) {
+			return false;
+		}
+		// The permissions are set last since changing the owner may clear some of them
+		partView.setPermissions(attributes.permissions());
+		return true;
+	}
+
+	/**
+	 * Deletes a file, or deletes it when the program ends if it can not be
+	 * deleted now.
+	 *
+	 * @param file The file
+	 */
+	private static void delete(File file) {
+		if(!file.delete() && file.exists()) {
+			file.deleteOnExit();
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package converter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * ParallelGzipOutputStream compresses blocks of the bytes written to it on
+ * several threads and writes them as a gzip file with one member per block.
+ *
+ * The blocks are independent, so they can be compressed in any order, but
+ * they are written in the order they were filled. Only a couple of blocks
+ * per thread are compressed ahead of the file, so memory use does not grow
+ * with the size of the file, and the blocks are reused once they have been
+ * compressed. A file compressed this way is a few percent larger than one
+ * compressed as a single member, since no block can refer back to the
+ * bytes of the block before it.
+ *
+ * @author Mats Palm
+ */
+class ParallelGzipOutputStream extends OutputStream {
+	private static final int BLOCK_SIZE = 1024 * 1024;
+	private static final int BLOCKS_AHEAD_PER_THREAD = 2;
+
+	private OutputStream out;
+	private ExecutorService executor;
+	private int maxAhead;
+	private Deque<Future<byte[]>> compressing = new ArrayDeque<Future<byte[]>>();
+	private Deque<byte[]> compressingBlocks = new ArrayDeque<byte[]>();
+	private Deque<byte[]> freeBlocks = new ArrayDeque<byte[]>();
+	private byte[] block = new byte[BLOCK_SIZE];
+	private int size;
+	private boolean empty = true;
+
+	/**
+	 * Constructs a stream
+	 *
+	 * @param out The stream the members are written to, it is closed with this stream
+	 * @param executor The threads compressing the blocks, they are not shut down by the stream
+	 * @param threads Number of threads the executor has
+	 */
+	ParallelGzipOutputStream(OutputStream out, ExecutorService executor, int threads) {
+		this.out = out;
+		this.executor = executor;
+		this.maxAhead = Math.max(1, threads) * BLOCKS_AHEAD_PER_THREAD;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(int b) throws IOException {
+		if(size == BLOCK_SIZE) {
+			submit();
+		}
+		block[size++] = (byte) b;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		while(length > 0) {
+			if(size == BLOCK_SIZE) {
+				submit();
+			}
+			int count = Math.min(length, BLOCK_SIZE - size);
+			System.arraycopy(bytes, offset, block, size, count);
+			size += count;
+			offset += count;
+			length -= count;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The bytes written so far are compressed as a member of their own,
+	 * so flushing often makes the file larger.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if(size > 0) {
+			submit();
+		}
+		while(!compressing.isEmpty()) {
+			writeMember();
+		}
+		out.flush();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException {
+		if(out == null) {
+			return;
+		}
+		try {
+			if(empty) {
+				// A gzip file has at least one member, even when it is empty
+				submit();
+			}
+			flush();
+		}
+		finally {
+			for(Future<byte[]> member : compressing) {
+				member.cancel(true);
+			}
+			compressing.clear();
+			compressingBlocks.clear();
+			freeBlocks.clear();
+			out.close();
+			out = null;
+		}
+	}
+
+	/**
+	 * Hands the current block to the threads and writes members until
+	 * no more than the allowed number of blocks are compressed ahead.
+	 *
+	 * @throws IOException If a member could not be compressed or written
+	 */
+	private void submit() throws IOException {
+		final byte[] bytes = block;
+		final int length = size;
+		compressing.addLast(executor.submit(new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws IOException {
+				ByteArrayOutputStream member = new ByteArrayOutputStream(length / 2 + 64);
+				GZIPOutputStream gzip = new GZIPOutputStream(member, 64 * 1024);
+				gzip.write(bytes, 0, length);
+				gzip.close();
+				return member.toByteArray();
+			}
+		}));
+		compressingBlocks.addLast(bytes);
+		block = freeBlocks.isEmpty() ? new byte[BLOCK_SIZE] : freeBlocks.pollFirst();
+		size = 0;
+		empty = false;
+		while(compressing.size() > maxAhead) {
+			writeMember();
+		}
+	}
+
+	/**
+	 * Waits for the oldest block to be compressed and writes it.
+	 *
+	 * @throws IOException If the block could not be compressed or written
+	 */
+	private void writeMember() throws IOException {
+		Future<byte[]> member = compressing.pollFirst();
+		try {
+			byte[] compressed = member.get();
+			freeBlocks.addLast(compressingBlocks.pollFirst());
+			out.write(compressed);
+		}
+		catch(ExecutionException e) {
+			if(e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Could not compress: " + e.getCause());
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Compressing was interrupted");
+		}
+	}
+}
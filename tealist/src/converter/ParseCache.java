@@ -0,0 +1,440 @@
+package converter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import converter.readers.TeaCursor;
+import converter.readers.TeaFileReader;
+import converter.readers.TeaFilter;
+import converter.writers.TeaSink;
+import tealist.Tea;
+
+/**
+ * A ParseCache keeps the tea of parsed input files in a directory, so that
+ * a file that is converted again, for instance to another format, is not
+ * parsed again.
+ *
+ * Each parsed file is kept as an entry in the binary format, which is read
+ * by memory mapping its blocks (see {@link converter.readers.BinaryReader}).
+ * An entry is found from the path, size and time of last change of the
+ * input file. When those do not match, because the file was touched,
+ * copied or the index was lost, the content hash of the file is the name
+ * of the entry, so the entry is still found if the content is the same.
+ *
+ * The entry is written while the input is parsed for a conversion, and is
+ * only kept when the whole file was read. The entries together are kept
+ * below a size by removing the least recently used entries. Files in the
+ * binary format are not cached, they are read the same way as entries.
+ *
+ * A cache may be used by many threads and conversions at the same time.
+ * Several processes may share a directory: an entry is written under a
+ * temporary name and renamed when it is complete, and at worst an index
+ * update is lost, which only costs the hashing of the file the next time.
+ *
+ * @author Mats Palm
+ */
+public class ParseCache {
+	public static final long DEFAULT_MAX_BYTES = 512L * 1024 * 1024;
+
+	private static final String INDEX = "index.properties";
+	private static final String ENTRY_EXTENSION = ".bin";
+	private static final String KEY_SEPARATOR = "|";
+
+	/* The caches used through shared(), one per directory */
+	private static final ConcurrentMap<File, ParseCache> SHARED = new ConcurrentHashMap<File, ParseCache>();
+
+	private File directory;
+	private long maxBytes;
+	/* format|canonical path of input -> size|time of last change|entry name */
+	private Properties index = new Properties();
+	private AtomicLong hits = new AtomicLong();
+	private AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Constructs a cache
+	 *
+	 * @param directory The directory of the cache, it is created readable only by the user if it does not exist
+	 * @param maxBytes The most bytes the entries may use together
+	 * @throws IOException If the directory could not be created or its index could not be read
+	 */
+	public ParseCache(File directory, long maxBytes) throws IOException {
+		if(maxBytes < 0) {
+			throw new IllegalArgumentException("The size of the cache can not be negative");
+		}
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		UserDirectories.create(directory);
+
+		File indexFile = new File(directory, INDEX);
+		if(indexFile.isFile()) {
+			InputStream in = new FileInputStream(indexFile);
+			try {
+				index.load(in);
+			}
+			finally {
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * Gets the cache of a directory that is shared by everything in this
+	 * process using the directory, with the default size.
+	 *
+	 * @param directory The directory of the cache
+	 * @return The cache
+	 * @throws IOException If the directory could not be created or its index could not be read
+	 */
+	public static ParseCache shared(File directory) throws IOException {
+		File key = directory.getCanonicalFile();
+		ParseCache cache = SHARED.get(key);
+		if(cache == null) {
+			ParseCache created = new ParseCache(key, DEFAULT_MAX_BYTES);
+			cache = SHARED.putIfAbsent(key, created);
+			if(cache == null) {
+				cache = created;
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * Gets the directory used when no directory is given. It belongs to the
+	 * user, since an entry is trusted by its name.
+	 *
+	 * @return parse in the cache directory of the user, see {@link UserDirectories}
+	 */
+	public static File defaultDirectory() {
+		return UserDirectories.cache("parse");
+	}
+
+	/**
+	 * Gets the number of files that were read from the cache instead of
+	 * being parsed.
+	 *
+	 * @return Number of hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the number of files that were not in the cache and were parsed.
+	 *
+	 * @return Number of misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Opens a cursor over the tea of a file. If the file is in the cache
+	 * the tea is read from its entry, otherwise the file is parsed by the
+	 * reader and the tea is added to the cache as it is read.
+	 *
+	 * @param fileName Name of the file
+	 * @param fileFormat Format of the file
+	 * @param reader The reader that parses the file when it is not in the cache
+	 * @param filter The filter or null to return all tea
+	 * @return A cursor positioned before the first accepted tea in the file
+	 * @throws IOException If the file could not be opened
+	 */
+	public TeaCursor openCursor(String fileName, String fileFormat, TeaFileReader reader, TeaFilter filter) throws IOException {
+		File file = new File(fileName);
+		if(FileFormats.BINARY.equals(fileFormat) || !file.isFile()) {
+			// Nothing to gain, or the reader reports what is wrong
+			return reader.openCursor(fileName, filter);
+		}
+		String format = fileFormat.toLowerCase();
+		String key = format + KEY_SEPARATOR + file.getCanonicalPath();
+		String stamp = file.length() + KEY_SEPARATOR + lastModified(file) + KEY_SEPARATOR;
+
+		String entryName = find(key, stamp);
+		if(entryName == null) {
+			entryName = ContentHash.toHex(ContentHash.of(file)) + "-" + format + ENTRY_EXTENSION;
+		}
+		File entry = new File(directory, entryName);
+		TeaCursor cursor = null;
+		if(entry.isFile()) {
+			try {
+				cursor = FileFormats.getReader(FileFormats.BINARY.toString()).openCursor(entry.getPath(), filter);
+			}
+			catch(IOException e) {
+				// Evicted meanwhile or damaged, the file is parsed again
+			}
+		}
+		if(cursor != null) {
+			hits.incrementAndGet();
+			// The time of last change orders the entries for eviction
+			entry.setLastModified(System.currentTimeMillis());
+			try {
+				remember(key, stamp + entryName);
+			}
+			catch(IOException e) {
+				// The index only saves hashing the file the next time
+			}
+			return cursor;
+		}
+		misses.incrementAndGet();
+		cursor = reader.openCursor(fileName, null);
+		return new CachingCursor(cursor, filter, entry, key, stamp);
+	}
+
+	/**
+	 * Looks up the entry of a file in the index.
+	 *
+	 * @param key Format and path of the file
+	 * @param stamp Size and time of last change of the file, ending with the separator
+	 * @return Name of the entry, null if the file is not in the index as it is now
+	 */
+	private synchronized String find(String key, String stamp) {
+		String value = index.getProperty(key);
+		if(value == null || !value.startsWith(stamp)) {
+			return null;
+		}
+		return value.substring(stamp.length());
+	}
+
+	/**
+	 * Records the entry of a file in the index.
+	 *
+	 * @param key Format and path of the file
+	 * @param value Size and time of last change of the file and name of the entry
+	 * @throws IOException If the index could not be written
+	 */
+	private synchronized void remember(String key, String value) throws IOException {
+		if(!value.equals(index.getProperty(key))) {
+			index.setProperty(key, value);
+			saveIndex();
+		}
+	}
+
+	/**
+	 * Makes a completely written entry available and removes the least
+	 * recently used entries until the cache is below its size.
+	 *
+	 * @param part The written entry
+	 * @param entry The name it gets
+	 * @param key Format and path of the input file
+	 * @param value Size and time of last change of the input file and name of the entry
+	 * @throws IOException If the entry or the index could not be written
+	 */
+	private synchronized void store(File part, File entry, String key, String value) throws IOException {
+		try {
+			Files.move(part.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(AtomicMoveNotSupportedException e) {
+			Files.move(part.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		index.setProperty(key, value);
+
+		File[] entries = directory.listFiles();
+		List<File> used = new ArrayList<File>();
+		long bytes = 0;
+		for(File file : entries == null ? new File[0] : entries) {
+			if(file.getName().endsWith(ENTRY_EXTENSION)) {
+				used.add(file);
+				bytes += file.length();
+			}
+		}
+		if(bytes > maxBytes) {
+			Collections.sort(used, new Comparator<File>() {
+				@Override
+				public int compare(File a, File b) {
+					return Long.compare(a.lastModified(), b.lastModified());
+				}
+			});
+			for(Iterator<File> it = used.iterator(); it.hasNext() && bytes > maxBytes;) {
+				File oldest = it.next();
+				long length = oldest.length();
+				if(oldest.delete()) {
+					bytes -= length;
+				}
+			}
+			// Forget the files whose entries are gone
+			for(Iterator<Map.Entry<Object, Object>> it = index.entrySet().iterator(); it.hasNext();) {
+				String indexed = (String) it.next().getValue();
+				if(!new File(directory, indexed.substring(indexed.lastIndexOf(KEY_SEPARATOR) + 1)).isFile()) {
+					it.remove();
+				}
+			}
+		}
+		saveIndex();
+	}
+
+	/**
+	 * Writes the index under a temporary name and renames it, so a reader
+	 * never sees half an index.
+	 *
+	 * @throws IOException If the index could not be written
+	 */
+	private void saveIndex() throws IOException {
+		File part = File.createTempFile("index", ".part", directory);
+		try {
+			OutputStream out = new FileOutputStream(part);
+			try {
+				index.store(out, "TeaList parse cache");
+			}
+			finally {
+				out.close();
+			}
+			Files.move(part.toPath(), new File(directory, INDEX).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		finally {
+			part.delete();
+		}
+	}
+
+	/**
+	 * Gets the time of last change of a file as precisely as the file system keeps it.
+	 *
+	 * @param file The file
+	 * @return The time in nanoseconds
+	 * @throws IOException If the time could not be read
+	 */
+	private static long lastModified(File file) throws IOException {
+		return Files.getLastModifiedTime(file.toPath()).to(TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns the tea of a parsed file and writes all of it to a new entry.
+	 * The entry is stored when the last tea has been read, if the cursor is
+	 * closed before that or the entry could not be written the cache is
+	 * left as it was.
+	 *
+	 * The entry holds every field, the tea that is returned has only the
+	 * fields the filter needs, the same as when it is read from the entry.
+	 */
+	private class CachingCursor implements TeaCursor {
+		private TeaCursor cursor;
+		private TeaFilter filter;
+		private File entry;
+		private String key;
+		private String stamp;
+		private File part;
+		private TeaSink sink;
+		private boolean complete;
+
+		/**
+		 * Constructs a cursor and starts writing the entry
+		 *
+		 * @param cursor The cursor over the parsed file, returning all its tea
+		 * @param filter The filter the returned tea must pass and the fields they get, or null
+		 * @param entry The entry to write
+		 * @param key Format and path of the file
+		 * @param stamp Size and time of last change of the file, ending with the separator
+		 */
+		private CachingCursor(TeaCursor cursor, TeaFilter filter, File entry, String key, String stamp) {
+			this.cursor = cursor;
+			this.filter = filter;
+			this.entry = entry;
+			this.key = key;
+			this.stamp = stamp;
+			try {
+				part = File.createTempFile("entry", ".part", directory);
+				sink = FileFormats.getWriter(FileFormats.BINARY.toString()).openSink(part.getPath());
+			}
+			catch(IOException e) {
+				// The conversion does not depend on the cache
+				abandon();
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Tea next() throws IOException {
+			Tea tea;
+			while((tea = cursor.next()) != null) {
+				if(sink != null) {
+					try {
+						sink.write(tea);
+					}
+					catch(IOException e) {
+						abandon();
+					}
+				}
+				if(filter == null) {
+					return tea;
+				}
+				if(filter.accepts(tea)) {
+					return project(tea);
+				}
+			}
+			complete = true;
+			return null;
+		}
+
+		/**
+		 * Leaves out the fields the filter does not need.
+		 *
+		 * @param tea A tea with every field, it has been written to the entry
+		 * @return The tea, or a copy without the fields that are not needed
+		 */
+		private Tea project(Tea tea) {
+			boolean nameNeeded = filter.needsField(Tea.NAME);
+			boolean descriptionNeeded = filter.needsField(Tea.DESCRIPTION);
+			if(nameNeeded && descriptionNeeded) {
+				return tea;
+			}
+			return new Tea(tea.getCategory(), nameNeeded ? tea.getName() : "", tea.getPrice(),
+					descriptionNeeded ? tea.getDescription() : "");
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void close() throws IOException {
+			try {
+				cursor.close();
+			}
+			finally {
+				if(sink != null && complete) {
+					try {
+						sink.close();
+						sink = null;
+						store(part, entry, key, stamp + entry.getName());
+					}
+					catch(IOException e) {
+						// The conversion succeeded, only the entry is lost
+					}
+				}
+				abandon();
+			}
+		}
+
+		/**
+		 * Stops writing the entry and removes what was written.
+		 */
+		private void abandon() {
+			if(sink != null) {
+				sink.abort();
+				sink = null;
+			}
+			if(part != null) {
+				part.delete();
+				part = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package converter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * StandardStreams lets a conversion read from standard input and write to
+ * standard output, so the converter can sit in the middle of a pipeline
+ * without any temporary files.
+ *
+ * Both streams are buffered in large blocks. Standard output is never
+ * flushed before a block is full or the sink is closed, and closing a
+ * stream leaves the standard stream itself open. Standard input is
+ * decompressed when it starts with the bytes of a gzip file.
+ *
+ * The streams are looked up when they are opened, so output that has been
+ * redirected with {@link System#setOut(PrintStream)} goes where it was
+ * redirected.
+ *
+ * @author Mats Palm
+ */
+public final class StandardStreams {
+	/** The file name that stands for standard input */
+	public static final String NAME = "-";
+
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+	/**
+	 * Private constructor, only static methods
+	 */
+	private StandardStreams() {
+	}
+
+	/**
+	 * Checks if a file name stands for standard input.
+	 *
+	 * @param fileName Name of the file, may be null
+	 * @return true if standard input should be read
+	 */
+	public static boolean isStandardInput(String fileName) {
+		return NAME.equals(fileName);
+	}
+
+	/**
+	 * Opens standard input.
+	 *
+	 * @return A stream of the bytes of standard input, decompressed if it is gzip
+	 * @throws IOException If standard input could not be read
+	 */
+	public static InputStream openInput() throws IOException {
+		InputStream in = new BufferedInputStream(new FilterInputStream(System.in) {
+			@Override
+			public void close() {
+				// Standard input is left open
+			}
+		}, BUFFER_SIZE);
+		return Compression.detect(in).open(in);
+	}
+
+	/**
+	 * Opens standard output.
+	 *
+	 * @return A stream to standard output that must be closed to flush it
+	 */
+	public static OutputStream openOutput() {
+		return new BufferedOutputStream(new StandardOutput(System.out), BUFFER_SIZE);
+	}
+
+	/**
+	 * Writes to a print stream and reports its errors, which a print stream
+	 * only remembers. A closed pipe therefore stops the conversion instead
+	 * of the rest of the tea being written to nowhere.
+	 */
+	private static class StandardOutput extends OutputStream {
+		private PrintStream out;
+
+		/**
+		 * Constructs a standard output
+		 *
+		 * @param out The print stream to write to
+		 */
+		private StandardOutput(PrintStream out) {
+			this.out = out;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			check();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			check();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void flush() throws IOException {
+			check();
+		}
+
+		/**
+		 * Flushes, the print stream is left open.
+		 */
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+
+		/**
+		 * Flushes the print stream and throws if it has failed.
+		 *
+		 * @throws IOException If writing to the print stream has failed
+		 */
+		private void check() throws IOException {
+			if(out.checkError()) {
+				throw new IOException("Could not write to standard output");
+			}
+		}
+	}
+}
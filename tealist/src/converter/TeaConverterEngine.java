@@ -0,0 +1,512 @@
+package converter;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import converter.query.CategorySummary;
+import converter.query.TeaQuery;
+import converter.readers.ParallelTextReader;
+import converter.readers.PipelinedCursor;
+import converter.readers.TeaCursor;
+import converter.readers.TeaFileReader;
+import converter.readers.TeaFilter;
+import converter.stats.ConversionStage;
+import converter.stats.Instrumentation;
+import converter.writers.FanOutSink;
+import converter.writers.TeaFileWriter;
+import converter.writers.TeaSink;
+import tealist.Tea;
+
+/**
+ * A TeaConverterEngine converts tea files and is meant to be kept and
+ * reused by programs that embed the converter.
+ *
+ * An engine is thread safe: any number of threads may convert with the
+ * same engine at the same time, and should share one engine so that set up
+ * is only done once. The readers and writers are shared, the XML factories
+ * are created once and each thread reuses its own DOM parser and
+ * transformer (see {@link XmlParsers}), and the threads that parse text in
+ * parallel, compress output in parallel or read ahead in a pipeline are
+ * kept in pools that live as long as the engine.
+ *
+ * Cursors and sinks opened by an engine are not thread safe and must only
+ * be used by one thread at a time. Settings may be shared by conversions
+ * as long as they are not changed meanwhile.
+ *
+ * @author Mats Palm
+ */
+public class TeaConverterEngine implements Closeable {
+
+	/* One pool per number of parsing or compressing threads asked for, shared by all conversions */
+	private ConcurrentMap<Integer, ForkJoinPool> parsePools = new ConcurrentHashMap<Integer, ForkJoinPool>();
+	private ExecutorService pipelineThreads = Executors.newCachedThreadPool(new ThreadFactory() {
+		private AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable task) {
+			Thread thread = new Thread(task, "tealist-pipeline-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	private volatile boolean closed;
+
+	/**
+	 * Do the conversion with the default settings
+	 *
+	 * @param inFileName Input file name
+	 * @param inFileFormat Input file format
+	 * @param outFileFormat Output file format
+	 * @param outFileName Output file name, null for standard output
+	 * @throws IOException If the conversion failed
+	 */
+	public void convert(String inFileName, String inFileFormat, String outFileFormat, String outFileName) throws IOException {
+		convert(inFileName, inFileFormat, outFileFormat, outFileName, new ConversionSettings());
+	}
+
+	/**
+	 * Do the conversion. The tea is piped one record at a time from the
+	 * reader to the writer, so the whole file is never held in memory
+	 * unless the query sorts it. In a pipelined conversion the reader runs
+	 * on a thread of its own. The stages of the conversion are measured
+	 * if the settings have listeners or a flight recording takes the events.
+	 *
+	 * @param inFileName Input file name
+	 * @param inFileFormat Input file format
+	 * @param outFileFormat Output file format
+	 * @param outFileName Output file name, null for standard output
+	 * @param settings Settings for the conversion
+	 * @throws IOException If the conversion failed
+	 */
+	public void convert(String inFileName, String inFileFormat, String outFileFormat, String outFileName,
+			ConversionSettings settings) throws IOException {
+		TeaFileWriter writer = FileFormats.getWriter(outFileFormat);
+
+		TeaQuery query = settings.getQuery();
+		Instrumentation instrumentation = Instrumentation.start(inFileName, inFileFormat, outFileFormat,
+				outFileName, settings.getListeners());
+		boolean succeeded = false;
+		TeaCursor cursor = null;
+		TeaSink sink = null;
+		try {
+			cursor = instrumentation.cursor(openCursor(inFileName, inFileFormat, settings));
+			if(query != null && query.isGroupByCategory()) {
+				instrumentation.enter(ConversionStage.TRANSFORM);
+				List<CategorySummary> summaries = query.summarize(cursor);
+				instrumentation.enter(ConversionStage.WRITE);
+				writeSummaries(summaries, outFileName);
+				succeeded = true;
+				return;
+			}
+			sink = instrumentation.sink(openSink(outFileName, writer, settings));
+
+			instrumentation.enter(ConversionStage.TRANSFORM);
+			if(query != null) {
+				query.run(cursor, sink);
+			}
+			else {
+				Tea tea;
+				while((tea = cursor.next()) != null) {
+					sink.write(tea);
+				}
+			}
+			sink.close();
+			sink = null;
+			succeeded = true;
+		} finally {
+			abort(sink);
+			closeQuietly(cursor);
+			instrumentation.finish(succeeded);
+		}
+	}
+
+	/**
+	 * Do a conversion to several output files at once. The input is read
+	 * and queried once, and each output is written by a thread of its own
+	 * from the same tea, so the conversion takes about as long as reading
+	 * and writing the slowest output rather than the time of all of them.
+	 * Grouping by category is not supported, the summaries only have one
+	 * format.
+	 *
+	 * @param inFileName Input file name
+	 * @param inFileFormat Input file format
+	 * @param outFileFormats Output file formats
+	 * @param outFileNames Output file names in the same order as the formats, null for standard output
+	 * @param settings Settings for the conversion
+	 * @throws IOException If the conversion failed
+	 */
+	public void convert(String inFileName, String inFileFormat, List<String> outFileFormats, List<String> outFileNames,
+			ConversionSettings settings) throws IOException {
+		if(outFileFormats.size() != outFileNames.size()) {
+			throw new IllegalArgumentException("One output file name is needed per output file format");
+		}
+		if(outFileFormats.size() == 1) {
+			convert(inFileName, inFileFormat, outFileFormats.get(0), outFileNames.get(0), settings);
+			return;
+		}
+		if(outFileFormats.isEmpty()) {
+			throw new IllegalArgumentException("No output file format");
+		}
+		if(outFileNames.indexOf(null) != outFileNames.lastIndexOf(null)) {
+			throw new IllegalArgumentException("Only one output can be written to standard output");
+		}
+		TeaQuery query = settings.getQuery();
+		if(query != null && query.isGroupByCategory()) {
+			throw new IllegalArgumentException("Grouping by category can only be written to one output");
+		}
+		List<TeaFileWriter> writers = new ArrayList<TeaFileWriter>();
+		for(String outFileFormat : outFileFormats) {
+			writers.add(FileFormats.getWriter(outFileFormat));
+		}
+
+		Instrumentation instrumentation = Instrumentation.start(inFileName, inFileFormat, outFileFormats,
+				outFileNames, settings.getListeners());
+		boolean succeeded = false;
+		TeaCursor cursor = null;
+		List<TeaSink> sinks = new ArrayList<TeaSink>();
+		TeaSink sink = null;
+		try {
+			cursor = instrumentation.cursor(openCursor(inFileName, inFileFormat, settings));
+			for(int i = 0; i < writers.size(); i++) {
+				sinks.add(openSink(outFileNames.get(i), writers.get(i), settings));
+			}
+			sink = instrumentation.sink(new FanOutSink(sinks, pipelineThreads));
+			sinks.clear();
+
+			instrumentation.enter(ConversionStage.TRANSFORM);
+			if(query != null) {
+				query.run(cursor, sink);
+			}
+			else {
+				Tea tea;
+				while((tea = cursor.next()) != null) {
+					sink.write(tea);
+				}
+			}
+			sink.close();
+			sink = null;
+			succeeded = true;
+		} finally {
+			abort(sink);
+			for(TeaSink opened : sinks) {
+				abort(opened);
+			}
+			closeQuietly(cursor);
+			instrumentation.finish(succeeded);
+		}
+	}
+
+	/**
+	 * Opens a cursor over a file. The filter of the query in the settings
+	 * is applied, a text file is parsed by as many threads as the settings
+	 * ask for and a pipelined cursor reads ahead on a thread of its own.
+	 * With a parse cache in the settings, a file that is in the cache is
+	 * not parsed at all.
+	 *
+	 * Standard input is read as it arrives, by one thread and never from
+	 * the cache, when the name of the file is {@link StandardStreams#NAME}.
+	 *
+	 * @param fileName Name of the file
+	 * @param fileFormat Format of the file
+	 * @param settings Settings for the reading
+	 * @return The cursor, which must be closed
+	 * @throws IOException If the file could not be opened
+	 */
+	public TeaCursor openCursor(String fileName, String fileFormat, ConversionSettings settings) throws IOException {
+		TeaQuery query = settings.getQuery();
+		TeaFilter filter = query == null ? null : query.getFilter();
+		TeaFileReader reader = getReader(fileFormat, settings);
+		ParseCache cache = settings.getParseCache();
+		TeaCursor cursor;
+		if(StandardStreams.isStandardInput(fileName)) {
+			cursor = reader.openCursor(StandardStreams.openInput(), "standard input", filter);
+		}
+		else if(cache == null) {
+			cursor = reader.openCursor(fileName, filter);
+		}
+		else {
+			cursor = cache.openCursor(fileName, fileFormat, reader, filter);
+		}
+		if(settings.isPipelined()) {
+			cursor = new PipelinedCursor(cursor, pipelineThreads);
+		}
+		return cursor;
+	}
+
+	/**
+	 * Opens a sink to a file. A regular file is written under a temporary
+	 * name and gets its name when the sink is closed, a sink that is
+	 * aborted leaves no file and a file that is being replaced as it was.
+	 * Devices, pipes and files that can not be replaced are written
+	 * directly, see {@link OutputFile}.
+	 *
+	 * @param fileName Name of the file, null for standard output
+	 * @param fileFormat Format of the file
+	 * @return The sink, which must be closed to complete the file
+	 * @throws IOException If the file could not be opened
+	 */
+	public TeaSink openSink(String fileName, String fileFormat) throws IOException {
+		return openSink(fileName, fileFormat, new ConversionSettings());
+	}
+
+	/**
+	 * Opens a sink to a file. A gzip file is compressed by as many threads
+	 * as the settings ask for. The file is written as by
+	 * {@link #openSink(String, String)}.
+	 *
+	 * @param fileName Name of the file, null for standard output
+	 * @param fileFormat Format of the file
+	 * @param settings Settings for the writing
+	 * @return The sink, which must be closed to complete the file
+	 * @throws IOException If the file could not be opened
+	 */
+	public TeaSink openSink(String fileName, String fileFormat, ConversionSettings settings) throws IOException {
+		return openSink(fileName, FileFormats.getWriter(fileFormat), settings);
+	}
+
+	/**
+	 * Stops the threads of the engine. Conversions that are running may
+	 * fail, and the engine can not be used afterwards.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		pipelineThreads.shutdownNow();
+		for(ForkJoinPool pool : parsePools.values()) {
+			pool.shutdownNow();
+		}
+		parsePools.clear();
+	}
+
+	/**
+	 * Opens a sink with a writer.
+	 *
+	 * @param fileName Name of the file, null for standard output
+	 * @param writer The writer of the format
+	 * @param settings Settings for the writing
+	 * @return The sink
+	 * @throws IOException If the file could not be opened
+	 */
+	private TeaSink openSink(String fileName, TeaFileWriter writer, ConversionSettings settings) throws IOException {
+		checkOpen();
+		if(fileName == null) {
+			return writer.openSink((String) null);
+		}
+		OutputFile output = OutputFile.open(fileName);
+		String path = output.getWriteFile().getPath();
+		boolean opened = false;
+		try {
+			Compression compression = Compression.forName(fileName);
+			int threads = settings.getCompressionThreads();
+			TeaSink sink;
+			if(threads > 1 && compression == Compression.GZIP) {
+				sink = writer.openSink(Compression.createParallelGzip(path, pool(threads), threads));
+			}
+			else if(compression != Compression.NONE) {
+				sink = writer.openSink(compression.create(path));
+			}
+			else {
+				sink = writer.openSink(path);
+			}
+			opened = true;
+			return new ReplacingSink(sink, output);
+		}
+		finally {
+			if(!opened) {
+				output.discard();
+			}
+		}
+	}
+
+	/**
+	 * Gets the reader of a format.
+	 *
+	 * @param fileFormat The file format
+	 * @param settings Settings for the reading
+	 * @return The reader
+	 */
+	private TeaFileReader getReader(String fileFormat, ConversionSettings settings) {
+		checkOpen();
+		int parallelism = settings.getParallelism();
+		if(parallelism > 1 && FileFormats.TEXT.equals(fileFormat)) {
+			return new ParallelTextReader(pool(parallelism));
+		}
+		return FileFormats.getReader(fileFormat);
+	}
+
+	/**
+	 * Gets the shared pool with a number of threads, it is created the
+	 * first time it is asked for.
+	 *
+	 * @param parallelism Number of threads
+	 * @return The pool
+	 */
+	private ForkJoinPool pool(int parallelism) {
+		ForkJoinPool pool = parsePools.get(parallelism);
+		if(pool == null) {
+			ForkJoinPool created = new ForkJoinPool(parallelism);
+			pool = parsePools.putIfAbsent(parallelism, created);
+			if(pool == null) {
+				pool = created;
+			}
+			else {
+				created.shutdown();
+			}
+		}
+		return pool;
+	}
+
+	/**
+	 * Checks that the engine has not been closed.
+	 */
+	private void checkOpen() {
+		if(closed) {
+			throw new IllegalStateException("The converter engine is closed");
+		}
+	}
+
+	/**
+	 * Writes category summaries as lines of text with the fields separated with ;
+	 * The file is written the same way as by a sink, see {@link OutputFile}.
+	 *
+	 * @param summaries The summaries
+	 * @param outFileName Output file name, if it is null the summaries are written to
+	 *                    standard output
+	 * @throws IOException If there was an I/O error
+	 */
+	private static void writeSummaries(List<CategorySummary> summaries, String outFileName) throws IOException {
+		OutputFile output = outFileName == null ? null : OutputFile.open(outFileName);
+		boolean succeeded = false;
+		try {
+			OutputStream out = output == null ? StandardStreams.openOutput()
+					: Compression.forName(outFileName).create(output.getWriteFile().getPath());
+			Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+			try {
+				for(CategorySummary summary : summaries) {
+					writer.write(summary.toString());
+					writer.write(System.lineSeparator());
+				}
+			}
+			finally {
+				writer.close();
+			}
+			if(output != null) {
+				output.complete();
+			}
+			succeeded = true;
+		}
+		finally {
+			if(!succeeded && output != null) {
+				output.discard();
+			}
+		}
+	}
+
+	/**
+	 * Aborts a sink, used when a conversion has already failed.
+	 *
+	 * @param sink The sink to abort, may be null
+	 */
+	private static void abort(TeaSink sink) {
+		if(sink != null) {
+			sink.abort();
+		}
+	}
+
+	/**
+	 * Closes a cursor without reporting errors, used when
+	 * a conversion has already failed.
+	 *
+	 * @param closeable The cursor to close, may be null
+	 */
+	private static void closeQuietly(Closeable closeable) {
+		if(closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				// The original fault is reported to the caller
+			}
+		}
+	}
+
+	/**
+	 * Writes an output file, see {@link OutputFile}, and gives it its name
+	 * when it is complete.
+	 */
+	private static class ReplacingSink implements TeaSink {
+		private TeaSink sink;
+		private OutputFile output;
+
+		/**
+		 * Constructs a sink
+		 *
+		 * @param sink The sink writing the file
+		 * @param output The output file
+		 */
+		private ReplacingSink(TeaSink sink, OutputFile output) {
+			this.sink = sink;
+			this.output = output;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(Tea tea) throws IOException {
+			sink.write(tea);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 *
+		 * Completes the file and gives it its name, replacing the file if
+		 * it exists. If that fails the sink is aborted.
+		 */
+		@Override
+		public void close() throws IOException {
+			if(output == null) {
+				return;
+			}
+			boolean succeeded = false;
+			try {
+				sink.close();
+				output.complete();
+				output = null;
+				succeeded = true;
+			}
+			finally {
+				if(!succeeded) {
+					abort();
+				}
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 *
+		 * The temporary file is removed.
+		 */
+		@Override
+		public void abort() {
+			if(output == null) {
+				return;
+			}
+			sink.abort();
+			output.discard();
+			output = null;
+		}
+	}
+}
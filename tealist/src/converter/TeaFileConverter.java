@@ -1,8 +1,10 @@
 package converter;
 
-import converter.readers.TeaFileReader;
-import converter.writers.TeaFileWriter;
-import converter.FileFormats;
+import java.io.IOException;
+import java.util.List;
+
+import converter.writers.TeaSink;
+import tealist.Tea;
 
 /**
  * A TeaFileConverter can convert between different tea file formats
@@ -11,26 +13,141 @@ import converter.FileFormats;
  */
 public abstract class TeaFileConverter  {
 	
+	private static final TeaConverterEngine ENGINE = new TeaConverterEngine();
+	
 	/**
-	 * Do the conversion
+	 * Do the conversion with the default settings
 	 * 
 	 * @param inFileName Input file name
 	 * @param inFileName Input file format
 	 * @param outFileFormat Output file format
 	 * @param outFileName Output file name
 	 * @return If the conversion was succesfull or not
-	 */ 	 
+	 */
 	public static boolean convert(String inFileName, String inFileFormat, String outFileFormat, String outFileName) {
-		
-		TeaFileReader reader = FileFormats.getReader(inFileFormat);
-		TeaFileWriter writer = FileFormats.getWriter(outFileFormat);
-			
+		return convert(inFileName, inFileFormat, outFileFormat, outFileName, new ConversionSettings());
+	}
+
+	/**
+	 * Do the conversion. The tea is piped one record at a time from the 
+	 * reader to the writer, so the whole file is never held in memory.
+	 * 
+	 * @param inFileName Input file name
+	 * @param inFileName Input file format
+	 * @param outFileFormat Output file format
+	 * @param outFileName Output file name
+	 * @param settings Settings for the conversion
+	 * @return If the conversion was succesfull or not
+	 */ 	 
+	public static boolean convert(String inFileName, String inFileFormat, String outFileFormat, String outFileName,
+			ConversionSettings settings) {
+		try {
+			convertOrThrow(inFileName, inFileFormat, outFileFormat, outFileName, settings);
+		} catch (Exception e) {
+			System.err.println("A fault occured during conversion: " + e);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Do the conversion and report any fault to the caller instead of 
+	 * printing it. The conversion is done by an engine shared by all 
+	 * callers, see {@link TeaConverterEngine}.
+	 * 
+	 * @param inFileName Input file name
+	 * @param inFileName Input file format
+	 * @param outFileFormat Output file format
+	 * @param outFileName Output file name
+	 * @param settings Settings for the conversion
+	 * @throws IOException If the conversion failed
+	 */
+	public static void convertOrThrow(String inFileName, String inFileFormat, String outFileFormat, String outFileName,
+			ConversionSettings settings) throws IOException {
+		ENGINE.convert(inFileName, inFileFormat, outFileFormat, outFileName, settings);
+	}
+
+	/**
+	 * Do a conversion to several output files, each in its own format. The
+	 * input is only read once and the outputs are written at the same time.
+	 * 
+	 * @param inFileName Input file name
+	 * @param inFileName Input file format
+	 * @param outFileFormats Output file formats
+	 * @param outFileNames Output file names in the same order as the formats
+	 * @param settings Settings for the conversion
+	 * @return If the conversion was succesfull or not
+	 */
+	public static boolean convert(String inFileName, String inFileFormat, List<String> outFileFormats,
+			List<String> outFileNames, ConversionSettings settings) {
 		try {
-			writer.writeFile(reader.readFile(inFileName), outFileName);
+			convertOrThrow(inFileName, inFileFormat, outFileFormats, outFileNames, settings);
 		} catch (Exception e) {
 			System.err.println("A fault occured during conversion: " + e);
 			return false;
 		}
 		return true;
 	}
+
+	/**
+	 * Do a conversion to several output files and report any fault to the
+	 * caller instead of printing it.
+	 * 
+	 * @param inFileName Input file name
+	 * @param inFileName Input file format
+	 * @param outFileFormats Output file formats
+	 * @param outFileNames Output file names in the same order as the formats
+	 * @param settings Settings for the conversion
+	 * @throws IOException If the conversion failed
+	 */
+	public static void convertOrThrow(String inFileName, String inFileFormat, List<String> outFileFormats,
+			List<String> outFileNames, ConversionSettings settings) throws IOException {
+		ENGINE.convert(inFileName, inFileFormat, outFileFormats, outFileNames, settings);
+	}
+
+	/**
+	 * Write a list of tea to a file. The file is written by the shared
+	 * engine, so a write that fails does not leave a truncated file, see
+	 * {@link TeaConverterEngine#openSink(String, String)}.
+	 * 
+	 * @param teaList The tea to write
+	 * @param outFileFormat Output file format
+	 * @param outFileName Output file name, null for standard output
+	 * @throws IOException If the file could not be written
+	 */
+	public static void write(List<Tea> teaList, String outFileFormat, String outFileName) throws IOException {
+		TeaSink sink = ENGINE.openSink(outFileName, outFileFormat);
+		try {
+			for(Tea tea : teaList) {
+				sink.write(tea);
+			}
+			sink.close();
+			sink = null;
+		}
+		finally {
+			if(sink != null) {
+				sink.abort();
+			}
+		}
+	}
+
+	/**
+	 * Merge a file of updates into a master tea list and write the updated
+	 * master, see {@link TeaMerger}.
+	 * 
+	 * @param masterFileName Master file name
+	 * @param masterFileFormat Master file format
+	 * @param updateFileName Update file name
+	 * @param updateFileFormat Update file format
+	 * @param outFileFormat Output file format
+	 * @param outFileName Output file name
+	 * @param settings Settings for the merge
+	 * @return The number of inserted, updated and unchanged tea
+	 * @throws IOException If the merge failed
+	 */
+	public static TeaMerger.Result merge(String masterFileName, String masterFileFormat, String updateFileName,
+			String updateFileFormat, String outFileFormat, String outFileName, ConversionSettings settings) throws IOException {
+		return new TeaMerger(ENGINE).merge(masterFileName, masterFileFormat, updateFileName, updateFileFormat, 
+				outFileFormat, outFileName, settings);
+	}
 }
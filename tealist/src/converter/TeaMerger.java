@@ -0,0 +1,483 @@
+package converter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import converter.readers.BinaryReader;
+import converter.readers.TeaCursor;
+import converter.writers.BinaryWriter;
+import converter.writers.TeaSink;
+import tealist.Tea;
+import tealist.TeaTable;
+
+/**
+ * A TeaMerger applies a file of updates, such as new prices from a
+ * supplier, to a master tea list and writes the updated master.
+ *
+ * A tea is the same tea in both files when it has the same category and
+ * name. A master tea that is in the updates is written as it is in the
+ * updates, the other master tea are written as they are, and the tea that
+ * are only in the updates are inserted after the master tea in the order
+ * of the updates. When a tea is in the updates more than once the last of
+ * them is used, and a tea that is only in the updates is inserted once,
+ * where the last of them is. The master may have the same tea more than
+ * once and then each of them is updated.
+ *
+ * The merge is a hash join: the smaller file, by size on disk, is read
+ * into a {@link TeaTable} with a hash table over its rows, and the larger
+ * file is streamed through it one tea at a time. When the updates are the
+ * larger file, the tea that are inserted are written to a temporary file
+ * until the master has been written, and only their categories and names
+ * are kept in memory to find the last of each. The written master is the
+ * same whichever file is the smaller.
+ *
+ * @author Mats Palm
+ */
+public class TeaMerger {
+	private TeaConverterEngine engine;
+
+	/**
+	 * Constructs a merger
+	 *
+	 * @param engine The engine that opens the files
+	 */
+	public TeaMerger(TeaConverterEngine engine) {
+		this.engine = engine;
+	}
+
+	/**
+	 * Merges updates into a master tea list.
+	 *
+	 * @param masterFileName Name of the master file, or standard input
+	 * @param masterFileFormat Format of the master file
+	 * @param updateFileName Name of the file of updates, or standard input
+	 * @param updateFileFormat Format of the file of updates
+	 * @param outFileFormat Format of the updated master
+	 * @param outFileName Name of the updated master, null for standard output
+	 * @param settings Settings for reading and writing, a query is not used
+	 * @return The number of inserted, updated and unchanged tea
+	 * @throws IOException If a file could not be read or written
+	 */
+	public Result merge(String masterFileName, String masterFileFormat, String updateFileName, String updateFileFormat,
+			String outFileFormat, String outFileName, ConversionSettings settings) throws IOException {
+		boolean masterIsStandardInput = StandardStreams.isStandardInput(masterFileName);
+		boolean updatesAreStandardInput = StandardStreams.isStandardInput(updateFileName);
+		if(masterIsStandardInput && updatesAreStandardInput) {
+			throw new IOException("Only one of the files to merge can be standard input");
+		}
+		for(String inFileName : new String[] {masterFileName, updateFileName}) {
+			if(outFileName != null && !StandardStreams.isStandardInput(inFileName)
+					&& new File(outFileName).getCanonicalFile().equals(new File(inFileName).getCanonicalFile())) {
+				throw new IOException("The merged file can not be written to " + outFileName + ", it is being read");
+			}
+		}
+		ConversionSettings readSettings = new ConversionSettings();
+		readSettings.setParallelism(settings.getParallelism());
+		readSettings.setPipelined(settings.isPipelined());
+		readSettings.setParseCache(settings.getParseCache());
+
+		long start = System.nanoTime();
+		Result result = new Result();
+		boolean hashUpdates = masterIsStandardInput
+				|| !updatesAreStandardInput && new File(updateFileName).length() <= new File(masterFileName).length();
+		if(hashUpdates) {
+			HashedTea updates = read(updateFileName, updateFileFormat, readSettings);
+			TeaSink sink = engine.openSink(outFileName, outFileFormat, settings);
+			try {
+				streamMaster(masterFileName, masterFileFormat, readSettings, updates, sink, result);
+				sink.close();
+			}
+			finally {
+				sink.abort();
+			}
+		}
+		else {
+			HashedTea master = read(masterFileName, masterFileFormat, readSettings);
+			File inserts = File.createTempFile("tealist-merge-", ".bin");
+			try {
+				TeaTable applied = new TeaTable();
+				InsertKeys insertKeys = new InsertKeys();
+				int[] updateOf = streamUpdates(updateFileName, updateFileFormat, readSettings, master, applied,
+						inserts, insertKeys);
+				TeaSink sink = engine.openSink(outFileName, outFileFormat, settings);
+				try {
+					writeMaster(master, updateOf, applied, sink, result);
+					TeaCursor cursor = new BinaryReader().openCursor(inserts.getPath());
+					try {
+						Tea tea;
+						for(int insert = 0; (tea = cursor.next()) != null; insert++) {
+							if(insertKeys.isLast(tea, insert)) {
+								sink.write(tea);
+								result.inserted++;
+							}
+						}
+					}
+					finally {
+						cursor.close();
+					}
+					sink.close();
+				}
+				finally {
+					sink.abort();
+				}
+			}
+			finally {
+				if(!inserts.delete() && inserts.exists()) {
+					inserts.deleteOnExit();
+				}
+			}
+		}
+		result.nanos = System.nanoTime() - start;
+		return result;
+	}
+
+	/**
+	 * Reads a file into a hashed table.
+	 *
+	 * @param fileName Name of the file
+	 * @param fileFormat Format of the file
+	 * @param settings Settings for the reading
+	 * @return The table
+	 * @throws IOException If the file could not be read
+	 */
+	private HashedTea read(String fileName, String fileFormat, ConversionSettings settings) throws IOException {
+		HashedTea hashed = new HashedTea();
+		TeaCursor cursor = engine.openCursor(fileName, fileFormat, settings);
+		try {
+			Tea tea;
+			while((tea = cursor.next()) != null) {
+				hashed.add(tea);
+			}
+		}
+		finally {
+			cursor.close();
+		}
+		return hashed;
+	}
+
+	/**
+	 * Streams the master through the hashed updates and writes it updated,
+	 * followed by the last of each of the updates that were not in the
+	 * master.
+	 *
+	 * @param fileName Name of the master file
+	 * @param fileFormat Format of the master file
+	 * @param settings Settings for the reading
+	 * @param updates The hashed updates
+	 * @param sink The sink of the updated master
+	 * @param result The counts to add to
+	 * @throws IOException If the master could not be read or the updated master could not be written
+	 */
+	private void streamMaster(String fileName, String fileFormat, ConversionSettings settings, HashedTea updates,
+			TeaSink sink, Result result) throws IOException {
+		TeaTable table = updates.table;
+		boolean[] used = new boolean[table.size()];
+		TeaCursor cursor = engine.openCursor(fileName, fileFormat, settings);
+		try {
+			Tea tea;
+			while((tea = cursor.next()) != null) {
+				int row = updates.find(tea.getCategory(), tea.getName(), 0);
+				if(row < 0) {
+					sink.write(tea);
+					result.unchanged++;
+				}
+				else {
+					int last = row;
+					for(; row >= 0; row = updates.find(tea.getCategory(), tea.getName(), row + 1)) {
+						used[row] = true;
+						last = row;
+					}
+					write(tea, table.get(last), sink, result);
+				}
+			}
+		}
+		finally {
+			cursor.close();
+		}
+		for(int row = 0; row < used.length; row++) {
+			if(!used[row]) {
+				Tea tea = table.get(row);
+				if(updates.find(tea.getCategory(), tea.getName(), row + 1) < 0) {
+					sink.write(tea);
+					result.inserted++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Streams the updates through the hashed master. The updates of master
+	 * tea are kept in a table and the other updates are written to a file,
+	 * with their keys recorded so the last of each can be found.
+	 *
+	 * @param fileName Name of the file of updates
+	 * @param fileFormat Format of the file of updates
+	 * @param settings Settings for the reading
+	 * @param master The hashed master
+	 * @param applied The table to add the updates of master tea to
+	 * @param inserts The file to write the other updates to
+	 * @param insertKeys The keys to record the other updates in
+	 * @return For each row of the master, the row of its last update in applied or -1
+	 * @throws IOException If a file could not be read or written
+	 */
+	private int[] streamUpdates(String fileName, String fileFormat, ConversionSettings settings, HashedTea master,
+			TeaTable applied, File inserts, InsertKeys insertKeys) throws IOException {
+		int[] updateOf = new int[master.table.size()];
+		Arrays.fill(updateOf, -1);
+		TeaSink insertSink = new BinaryWriter().openSink(inserts.getPath());
+		try {
+			TeaCursor cursor = engine.openCursor(fileName, fileFormat, settings);
+			try {
+				Tea tea;
+				while((tea = cursor.next()) != null) {
+					int row = master.find(tea.getCategory(), tea.getName(), 0);
+					if(row < 0) {
+						insertSink.write(tea);
+						insertKeys.add(tea);
+						continue;
+					}
+					int update = applied.size();
+					applied.add(tea);
+					for(; row >= 0; row = master.find(tea.getCategory(), tea.getName(), row + 1)) {
+						updateOf[row] = update;
+					}
+				}
+			}
+			finally {
+				cursor.close();
+			}
+			insertSink.close();
+		}
+		finally {
+			insertSink.abort();
+		}
+		return updateOf;
+	}
+
+	/**
+	 * Writes the master with its updates.
+	 *
+	 * @param master The hashed master
+	 * @param updateOf For each row of the master, the row of its update in applied or -1
+	 * @param applied The updates of master tea
+	 * @param sink The sink of the updated master
+	 * @param result The counts to add to
+	 * @throws IOException If the updated master could not be written
+	 */
+	private static void writeMaster(HashedTea master, int[] updateOf, TeaTable applied, TeaSink sink, Result result)
+			throws IOException {
+		TeaTable table = master.table;
+		for(int row = 0; row < table.size(); row++) {
+			if(updateOf[row] < 0) {
+				sink.write(table.get(row));
+				result.unchanged++;
+			}
+			else {
+				write(table.get(row), applied.get(updateOf[row]), sink, result);
+			}
+		}
+	}
+
+	/**
+	 * Writes the update of a master tea and counts it as updated if its
+	 * price or description changed.
+	 *
+	 * @param old The master tea
+	 * @param update The update of the tea
+	 * @param sink The sink of the updated master
+	 * @param result The counts to add to
+	 * @throws IOException If the tea could not be written
+	 */
+	private static void write(Tea old, Tea update, TeaSink sink, Result result) throws IOException {
+		sink.write(update);
+		if(old.getPrice() == update.getPrice() && old.getDescription().equals(update.getDescription())) {
+			result.unchanged++;
+		}
+		else {
+			result.updated++;
+		}
+	}
+
+	/**
+	 * A table of tea with an open addressing hash table over the category
+	 * and name of its rows. A slot holds the row plus one, or 0 if it is
+	 * empty, and the hash of the row is kept so that most rows with another
+	 * key are passed without decoding their names.
+	 */
+	private static class HashedTea {
+		private TeaTable table = new TeaTable();
+		private int count;
+		private int[] slots = new int[1024];
+		private int[] hashes = new int[1024];
+
+		/**
+		 * Adds a tea to the table and the hash table.
+		 *
+		 * @param tea The tea
+		 */
+		void add(Tea tea) {
+			table.add(tea);
+			put(hash(tea.getCategory(), tea.getName()));
+		}
+
+		/**
+		 * Adds only the category and name of a tea.
+		 *
+		 * @param category The category
+		 * @param name The name
+		 */
+		void addKey(String category, String name) {
+			table.add(category, name, 0, "");
+			put(hash(category, name));
+		}
+
+		/**
+		 * Finds the first row from a row on with a key. Rows with the same
+		 * key are probed in the order they were added, since a row is never
+		 * removed and a later row was put past the slots of the earlier.
+		 *
+		 * @param category The category of the key
+		 * @param name The name of the key
+		 * @param from The first row that may be returned
+		 * @return The row, or -1 if there is no row with the key
+		 */
+		int find(String category, String name, int from) {
+			int hash = hash(category, name);
+			int mask = slots.length - 1;
+			for(int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+				int row = slots[slot] - 1;
+				if(hashes[row] == hash && row >= from
+						&& table.getName(row).equals(name) && table.getCategory(row).equals(category)) {
+					return row;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Puts the last row of the table in the hash table, which is made
+		 * twice as large when it gets more than half full.
+		 *
+		 * @param hash The hash of the row
+		 */
+		private void put(int hash) {
+			if(count == hashes.length) {
+				hashes = Arrays.copyOf(hashes, count * 2);
+			}
+			hashes[count++] = hash;
+			if(count * 2 > slots.length) {
+				slots = new int[slots.length * 2];
+				for(int row = 0; row < count; row++) {
+					insert(row);
+				}
+			}
+			else {
+				insert(count - 1);
+			}
+		}
+
+		/**
+		 * Puts a row in the first free slot from its hash.
+		 *
+		 * @param row The row
+		 */
+		private void insert(int row) {
+			int mask = slots.length - 1;
+			int slot = hashes[row] & mask;
+			while(slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = row + 1;
+		}
+
+		/**
+		 * Hashes a key and spreads the bits so that the low bits pick
+		 * the slot.
+		 *
+		 * @param category The category of the key
+		 * @param name The name of the key
+		 * @return The hash
+		 */
+		private static int hash(String category, String name) {
+			int hash = category.hashCode() * 31 + name.hashCode();
+			return hash ^ (hash >>> 16);
+		}
+	}
+
+	/**
+	 * The keys of the tea that are inserted, in the order they are written
+	 * to the temporary file, with the number of the last insert of each key.
+	 */
+	private static class InsertKeys {
+		private HashedTea keys = new HashedTea();
+		private int[] last = new int[1024];
+		private int count;
+
+		/**
+		 * Records the next insert.
+		 *
+		 * @param tea The inserted tea
+		 */
+		void add(Tea tea) {
+			int key = keys.find(tea.getCategory(), tea.getName(), 0);
+			if(key < 0) {
+				key = keys.table.size();
+				keys.addKey(tea.getCategory(), tea.getName());
+				if(key == last.length) {
+					last = Arrays.copyOf(last, key * 2);
+				}
+			}
+			last[key] = count++;
+		}
+
+		/**
+		 * Checks if an insert is the last one with its key.
+		 *
+		 * @param tea The inserted tea
+		 * @param insert The number of the insert, counted from 0
+		 * @return true if no later insert has the same category and name
+		 */
+		boolean isLast(Tea tea, int insert) {
+			return last[keys.find(tea.getCategory(), tea.getName(), 0)] == insert;
+		}
+	}
+
+	/**
+	 * The number of tea of each kind in a merge.
+	 */
+	public static class Result {
+		private long inserted;
+		private long updated;
+		private long unchanged;
+		private long nanos;
+
+		/**
+		 * @return Number of tea that were only in the updates
+		 */
+		public long getInserted() {
+			return inserted;
+		}
+
+		/**
+		 * @return Number of master tea whose price or description was changed
+		 */
+		public long getUpdated() {
+			return updated;
+		}
+
+		/**
+		 * @return Number of master tea that are the same as before
+		 */
+		public long getUnchanged() {
+			return unchanged;
+		}
+
+		/**
+		 * @return How long the merge took in milliseconds
+		 */
+		public long getMillis() {
+			return nanos / 1000000;
+		}
+	}
+}
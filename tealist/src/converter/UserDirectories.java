@@ -0,0 +1,56 @@
+package converter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/**
+ * UserDirectories finds where files that are kept between runs are stored
+ * for the user running the program.
+ *
+ * The files are kept in .cache/tealist in the home directory. Unlike the
+ * shared directory for temporary files, other users can not create files
+ * there, so they can not plant a file that is later trusted by its name.
+ * Directories are created readable only by the user when the file system
+ * has POSIX permissions.
+ *
+ * @author Mats Palm
+ */
+public final class UserDirectories {
+
+	/**
+	 * Private constructor, only static methods
+	 */
+	private UserDirectories() {
+	}
+
+	/**
+	 * Gets a directory for cached files of the user.
+	 *
+	 * @param name Name of the directory
+	 * @return The directory in .cache/tealist in the home directory, it may not exist yet
+	 */
+	public static File cache(String name) {
+		File home = new File(System.getProperty("user.home"));
+		return new File(new File(new File(home, ".cache"), "tealist"), name);
+	}
+
+	/**
+	 * Creates a directory and the parents that do not exist, readable only
+	 * by the user. Directories that exist are left as they are.
+	 *
+	 * @param directory The directory
+	 * @throws IOException If the directory could not be created
+	 */
+	public static void create(File directory) throws IOException {
+		if(FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+			Files.createDirectories(directory.toPath(),
+					PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+		}
+		else {
+			Files.createDirectories(directory.toPath());
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package converter;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+
+/**
+ * XmlParsers hands out the DOM parsers and transformers used by the xmldom
+ * format. Looking up and configuring a factory is slow, so each factory is
+ * created once. Parsers and transformers are not thread safe, so each
+ * thread gets its own, which is reset and reused by all later calls from
+ * that thread.
+ *
+ * A parser or transformer must only be used by the thread that got it and
+ * must not be kept after the call that uses it.
+ *
+ * @author Mats Palm
+ */
+public final class XmlParsers {
+
+	/* Factories are not thread safe, they are only used while holding their lock */
+	private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+	private static final TransformerFactory TRANSFORMER_FACTORY = TransformerFactory.newInstance();
+
+	private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER = new ThreadLocal<DocumentBuilder>();
+	private static final ThreadLocal<Transformer> TRANSFORMER = new ThreadLocal<Transformer>();
+
+	/**
+	 * Private constructor, there are only static methods
+	 */
+	private XmlParsers() {
+	}
+
+	/**
+	 * Gets the document builder of the current thread.
+	 *
+	 * @return A document builder in its initial state
+	 * @throws ParserConfigurationException If a builder could not be created
+	 */
+	public static DocumentBuilder documentBuilder() throws ParserConfigurationException {
+		DocumentBuilder builder = DOCUMENT_BUILDER.get();
+		if(builder == null) {
+			synchronized(DOCUMENT_BUILDER_FACTORY) {
+				builder = DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+			}
+			DOCUMENT_BUILDER.set(builder);
+		}
+		else {
+			builder.reset();
+		}
+		return builder;
+	}
+
+	/**
+	 * Gets the identity transformer of the current thread.
+	 *
+	 * @return A transformer in its initial state
+	 * @throws TransformerConfigurationException If a transformer could not be created
+	 */
+	public static Transformer transformer() throws TransformerConfigurationException {
+		Transformer transformer = TRANSFORMER.get();
+		if(transformer == null) {
+			synchronized(TRANSFORMER_FACTORY) {
+				transformer = TRANSFORMER_FACTORY.newTransformer();
+			}
+			TRANSFORMER.set(transformer);
+		}
+		else {
+			transformer.reset();
+		}
+		return transformer;
+	}
+}
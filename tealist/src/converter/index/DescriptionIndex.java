@@ -0,0 +1,216 @@
+package converter.index;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import converter.UserDirectories;
+import tealist.Tea;
+
+/**
+ * A DescriptionIndex finds tea by the words of their descriptions in text
+ * and binary files. It is an inverted index: for each term, as split by
+ * {@link DescriptionTokenizer}, it keeps the ids of the tea whose
+ * description has the term.
+ *
+ * The index is kept in a directory with one segment per tea file (see
+ * {@link Segment}) and a list of which segment covers which file. When a
+ * file changes only its segment is built again, the segments of the other
+ * files are kept as they are.
+ *
+ * A search is words separated by spaces, and a tea matches when its
+ * description has all of them. OR between words gives alternatives, so
+ * {@code citrus rökt OR jasmin} finds the tea with both citrus and rökt
+ * and the tea with jasmin. Words are compared without case, and a word is
+ * a whole term, it does not match a part of a longer term.
+ *
+ * An index may be used by many threads at the same time, and several
+ * processes may share a directory the same way as a
+ * {@link converter.ParseCache}.
+ *
+ * @author Mats Palm
+ */
+public class DescriptionIndex {
+	static final String SEGMENT_EXTENSION = ".seg";
+
+	private static final String SEGMENTS = "index.properties";
+	private static final String OR = "OR";
+
+	private File directory;
+	/* format|canonical path of tea file -> segment name */
+	private Properties segments = new Properties();
+
+	/**
+	 * Constructs an index
+	 *
+	 * @param directory The directory of the index, it is created readable only by the user if it does not exist
+	 * @throws IOException If the directory could not be created or its list of segments could not be read
+	 */
+	public DescriptionIndex(File directory) throws IOException {
+		this.directory = directory;
+		UserDirectories.create(directory);
+
+		File segmentsFile = new File(directory, SEGMENTS);
+		if(segmentsFile.isFile()) {
+			InputStream in = new FileInputStream(segmentsFile);
+			try {
+				segments.load(in);
+			}
+			finally {
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * Gets the directory used when no directory is given. It belongs to the
+	 * user, since a segment is trusted by its name.
+	 *
+	 * @return search in the cache directory of the user, see {@link UserDirectories}
+	 */
+	public static File defaultDirectory() {
+		return UserDirectories.cache("search");
+	}
+
+	/**
+	 * Builds the segments of the files that are not in the index or have
+	 * changed since their segments were built.
+	 *
+	 * @param files The tea files
+	 * @param fileFormat Format of the tea files, text or bin
+	 * @return Number of segments that were built
+	 * @throws IOException If a file could not be read or a segment could not be written
+	 */
+	public synchronized int update(List<File> files, String fileFormat) throws IOException {
+		short format = RecordScanner.formatCode(fileFormat);
+		int built = 0;
+		try {
+			for(File file : files) {
+				String key = key(file, format);
+				String old = segments.getProperty(key);
+				if(old != null && Segment.isCurrent(new File(directory, old), file, format)) {
+					continue;
+				}
+				File segment = new SegmentBuilder(file.getPath(), format).build(directory);
+				segments.setProperty(key, segment.getName());
+				built++;
+				if(old != null) {
+					File oldSegment = new File(directory, old);
+					if(!oldSegment.delete() && oldSegment.exists()) {
+						oldSegment.deleteOnExit();
+					}
+				}
+			}
+		}
+		finally {
+			if(built > 0) {
+				saveSegments();
+			}
+		}
+		return built;
+	}
+
+	/**
+	 * Finds the tea whose descriptions match a search.
+	 *
+	 * @param files The tea files, they must be up to date in the index
+	 * @param fileFormat Format of the tea files, text or bin
+	 * @param search The search
+	 * @return The tea in the order of the files and the order in each file
+	 * @throws IOException If a file is not in the index or is out of date, or could not be read
+	 */
+	public List<Tea> search(List<File> files, String fileFormat, String search) throws IOException {
+		short format = RecordScanner.formatCode(fileFormat);
+		List<List<String>> groups = parse(search);
+		List<Tea> found = new ArrayList<Tea>();
+		for(File file : files) {
+			String name;
+			synchronized(this) {
+				name = segments.getProperty(key(file, format));
+			}
+			if(name == null) {
+				throw new IOException("The file " + file.getPath() + " is not in the search index, it must be updated");
+			}
+			Segment segment = new Segment(new File(directory, name), file, format);
+			try {
+				for(int id : segment.search(groups)) {
+					found.add(segment.read(id));
+				}
+			}
+			finally {
+				segment.close();
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Splits a search into groups of terms where all terms of a group must
+	 * match. A word that is split into several terms needs all of them.
+	 *
+	 * @param search The search
+	 * @return The groups, empty groups are left out
+	 */
+	static List<List<String>> parse(String search) {
+		List<List<String>> groups = new ArrayList<List<String>>();
+		List<String> group = new ArrayList<String>();
+		for(String word : search.trim().split("\\s+")) {
+			if(OR.equals(word)) {
+				if(!group.isEmpty()) {
+					groups.add(group);
+					group = new ArrayList<String>();
+				}
+			}
+			else {
+				group.addAll(DescriptionTokenizer.tokens(word));
+			}
+		}
+		if(!group.isEmpty()) {
+			groups.add(group);
+		}
+		return groups;
+	}
+
+	/**
+	 * Gets the key of a tea file in the list of segments.
+	 *
+	 * @param file The tea file
+	 * @param format Code of the format of the tea file
+	 * @return The key
+	 * @throws IOException If the canonical path could not be found
+	 */
+	private static String key(File file, short format) throws IOException {
+		return format + "|" + file.getCanonicalPath();
+	}
+
+	/**
+	 * Writes the list of segments under a temporary name and renames it,
+	 * so a reader never sees half a list.
+	 *
+	 * @throws IOException If the list could not be written
+	 */
+	private void saveSegments() throws IOException {
+		File part = File.createTempFile("index", ".part", directory);
+		try {
+			OutputStream out = new FileOutputStream(part);
+			try {
+				segments.store(out, "TeaList search index");
+			}
+			finally {
+				out.close();
+			}
+			Files.move(part.toPath(), new File(directory, SEGMENTS).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		finally {
+			part.delete();
+		}
+	}
+}
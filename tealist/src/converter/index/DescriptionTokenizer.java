@@ -0,0 +1,58 @@
+package converter.index;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * DescriptionTokenizer splits a description into the terms that are kept
+ * in a {@link DescriptionIndex}, and splits the words of a search the same
+ * way.
+ *
+ * A term is a run of letters and digits. The text is first normalized to
+ * composed Unicode characters, so an å written as an a followed by a ring
+ * is the same term as a single å, and then lower cased with the rules of
+ * Swedish. Combining marks that are left are kept as part of the term.
+ *
+ * @author Mats Palm
+ */
+final class DescriptionTokenizer {
+	private static final Locale SWEDISH = new Locale("sv", "SE");
+
+	/**
+	 * Private constructor, only static methods
+	 */
+	private DescriptionTokenizer() {
+	}
+
+	/**
+	 * Splits a text into terms.
+	 *
+	 * @param text The text
+	 * @return The terms in the order of the text, a term may occur more than once
+	 */
+	static List<String> tokens(String text) {
+		String normalized = Normalizer.normalize(text, Normalizer.Form.NFC).toLowerCase(SWEDISH);
+		List<String> tokens = new ArrayList<String>();
+		int start = -1;
+		int i = 0;
+		while(i < normalized.length()) {
+			int codePoint = normalized.codePointAt(i);
+			if(Character.isLetterOrDigit(codePoint) || Character.getType(codePoint) == Character.NON_SPACING_MARK) {
+				if(start < 0) {
+					start = i;
+				}
+			}
+			else if(start >= 0) {
+				tokens.add(normalized.substring(start, i));
+				start = -1;
+			}
+			i += Character.charCount(codePoint);
+		}
+		if(start >= 0) {
+			tokens.add(normalized.substring(start));
+		}
+		return tokens;
+	}
+}
@@ -0,0 +1,271 @@
+package converter.index;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import converter.BinaryFormat;
+import converter.Compression;
+import converter.FileFormats;
+
+/**
+ * A RecordScanner finds where each tea is in a text or binary file, for
+ * the indexes to point at. A tea in a text file is found by the offset and
+ * length of its line, and a tea in a binary file by the offset of its block
+ * and its row in the block, since the binary format stores the fields of a
+ * tea in separate columns.
+ *
+ * Only the name of a tea is looked at, and the categories of a binary
+ * file since the blocks only hold codes for them. The other fields are
+ * left to the reader that reads the tea when it is needed, see
+ * {@link RecordSource}.
+ *
+ * @author Mats Palm
+ */
+abstract class RecordScanner {
+	static final short TEXT = 0;
+	static final short BINARY = 1;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final byte SEPARATOR = ';';
+
+	/** Name of the tea file */
+	protected String fileName;
+	/** Code of the format of the tea file */
+	protected short format;
+	/** The categories of a binary file in the order of their codes, found while scanning */
+	protected List<String> categories = new ArrayList<String>();
+
+	/**
+	 * Constructs a scanner
+	 *
+	 * @param fileName Name of the tea file
+	 * @param format Code of the format of the tea file
+	 */
+	protected RecordScanner(String fileName, short format) {
+		this.fileName = fileName;
+		this.format = format;
+	}
+
+	/**
+	 * Gets the code of a format, as kept in the indexes.
+	 *
+	 * @param fileFormat Name of the format
+	 * @return The code
+	 * @throws IOException If the format can not be indexed
+	 */
+	static short formatCode(String fileFormat) throws IOException {
+		if(FileFormats.TEXT.equals(fileFormat)) {
+			return TEXT;
+		}
+		if(FileFormats.BINARY.equals(fileFormat)) {
+			return BINARY;
+		}
+		throw new IOException("Only files in the text and bin formats can be indexed");
+	}
+
+	/**
+	 * Checks that a file exists and can be indexed.
+	 *
+	 * @param file The tea file
+	 * @throws IOException If the file does not exist or is compressed
+	 */
+	static void checkFile(File file) throws IOException {
+		if(!file.exists() || !file.isFile()) {
+			throw new IOException("The file " + file.getPath() + " does not exist");
+		}
+		if(Compression.detect(file) != Compression.NONE) {
+			throw new IOException("Input file (" + file.getPath() + ") can not be indexed, it is compressed");
+		}
+	}
+
+	/**
+	 * Is called for each tea in the order of the file.
+	 *
+	 * @param offset Offset of the line or block
+	 * @param lengthOrRow Length of the line or row in the block
+	 * @param name Bytes holding the name in UTF-8, only valid during the call
+	 * @param nameLength Number of bytes in the name
+	 * @throws IOException If the tea could not be handled
+	 */
+	protected abstract void found(long offset, int lengthOrRow, byte[] name, int nameLength) throws IOException;
+
+	/**
+	 * Scans the tea file and calls {@link #found(long, int, byte[], int)} for each tea.
+	 *
+	 * @throws IOException If the file could not be read or is not in its format
+	 */
+	protected void scan() throws IOException {
+		categories.clear();
+		if(format == TEXT) {
+			scanText();
+		}
+		else {
+			scanBinary();
+		}
+	}
+
+	/**
+	 * Scans a text file line by line. Lines end just as for the text reader,
+	 * and the name is the bytes between the first and second separator.
+	 *
+	 * @throws IOException If the file could not be read or a line has less than four fields
+	 */
+	private void scanText() throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		byte[] name = new byte[256];
+		int nameLength = 0;
+		int separators = 0;
+		long lineStart = 0;
+		long position = 0;
+		boolean skipLineFeed = false;
+
+		InputStream in = new FileInputStream(fileName);
+		try {
+			int read;
+			while((read = in.read(buffer)) >= 0) {
+				for(int i = 0; i < read; i++, position++) {
+					byte b = buffer[i];
+					if(skipLineFeed) {
+						skipLineFeed = false;
+						if(b == '\n') {
+							lineStart = position + 1;
+							continue;
+						}
+					}
+					if(b == '\n' || b == '\r') {
+						foundLine(lineStart, position, separators, name, nameLength);
+						lineStart = position + 1;
+						separators = 0;
+						nameLength = 0;
+						skipLineFeed = b == '\r';
+					}
+					else if(b == SEPARATOR) {
+						separators++;
+					}
+					else if(separators == 1) {
+						if(nameLength == name.length) {
+							byte[] larger = new byte[name.length * 2];
+							System.arraycopy(name, 0, larger, 0, nameLength);
+							name = larger;
+						}
+						name[nameLength++] = b;
+					}
+				}
+			}
+		}
+		finally {
+			in.close();
+		}
+		if(lineStart < position) {
+			foundLine(lineStart, position, separators, name, nameLength);
+		}
+	}
+
+	/**
+	 * Checks a line of a text file and reports it.
+	 *
+	 * @param start Offset of the first byte of the line
+	 * @param end Offset after the last byte of the line
+	 * @param separators Number of separators in the line
+	 * @param name The bytes of the name
+	 * @param nameLength Number of bytes in the name
+	 * @throws IOException If the line has less than four fields
+	 */
+	private void foundLine(long start, long end, int separators, byte[] name, int nameLength) throws IOException {
+		if(separators < 3 || end - start > Integer.MAX_VALUE) {
+			throw new IOException("Input file (" + fileName + ") not correct format");
+		}
+		found(start, (int) (end - start), name, nameLength);
+	}
+
+	/**
+	 * Scans a binary file block by block. Only the categories and the name
+	 * column of a block are read.
+	 *
+	 * @throws IOException If the file could not be read or is not in the binary format
+	 */
+	private void scanBinary() throws IOException {
+		FileChannel channel = new RandomAccessFile(fileName, "r").getChannel();
+		try {
+			long size = channel.size();
+			if(size < BinaryFormat.HEADER_SIZE + 4) {
+				throw new IOException("Input file (" + fileName + ") not correct format");
+			}
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, BinaryFormat.HEADER_SIZE);
+			if(header.getInt() != BinaryFormat.MAGIC || header.getShort() != BinaryFormat.VERSION) {
+				throw new IOException("Input file (" + fileName + ") not correct format");
+			}
+			byte[] name = new byte[256];
+			long position = BinaryFormat.HEADER_SIZE;
+			while(true) {
+				if(position + 4 > size) {
+					throw new IOException("Input file (" + fileName + ") not correct format");
+				}
+				int length = channel.map(FileChannel.MapMode.READ_ONLY, position, 4).getInt();
+				if(length == 0) {
+					return;
+				}
+				if(length < 0 || position + 4 + length > size) {
+					throw new IOException("Input file (" + fileName + ") not correct format");
+				}
+				ByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, position + 4, length);
+				try {
+					name = scanBlock(block, position, name);
+				}
+				catch(RuntimeException e) {
+					throw new IOException("Input file (" + fileName + ") not correct format");
+				}
+				position += 4 + length;
+			}
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Reports the tea of a block of a binary file.
+	 *
+	 * @param block The block after its length
+	 * @param offset Offset of the block in the file
+	 * @param name An array for the names that is reused if it is large enough
+	 * @return The array for the names
+	 * @throws IOException If a tea could not be handled
+	 */
+	private byte[] scanBlock(ByteBuffer block, long offset, byte[] name) throws IOException {
+		int blockCount = block.getInt();
+		block.getInt();
+		block.getInt();
+		int newCategories = block.getInt();
+		for(int i = 0; i < newCategories; i++) {
+			byte[] bytes = new byte[block.getInt()];
+			block.get(bytes);
+			categories.add(new String(bytes, StandardCharsets.UTF_8));
+		}
+		int codeWidth = block.get();
+		block.position(block.position() + blockCount * codeWidth);
+		int priceWidth = block.get();
+		block.position(block.position() + blockCount * priceWidth);
+
+		int[] lengths = new int[blockCount];
+		for(int row = 0; row < blockCount; row++) {
+			lengths[row] = block.getInt();
+		}
+		for(int row = 0; row < blockCount; row++) {
+			if(name.length < lengths[row]) {
+				name = new byte[Math.max(name.length * 2, lengths[row])];
+			}
+			block.get(name, 0, lengths[row]);
+			found(offset, row, name, lengths[row]);
+		}
+		return name;
+	}
+}
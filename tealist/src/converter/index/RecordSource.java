@@ -0,0 +1,107 @@
+package converter.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import converter.FileFormats;
+import converter.readers.BinaryReader;
+import converter.readers.TextReader;
+import tealist.Tea;
+
+/**
+ * A RecordSource reads single tea from a text or binary file, at the
+ * places a {@link RecordScanner} found them. The file is memory mapped
+ * once when it is small enough to fit in one mapping, otherwise each tea
+ * is mapped when it is read.
+ *
+ * A source may be used by many threads at the same time.
+ *
+ * @author Mats Palm
+ */
+class RecordSource implements Closeable {
+	private String fileName;
+	private short format;
+	private List<String> categories;
+	private FileChannel channel;
+	private long size;
+	/* The whole tea file, or null if it is too large to be mapped at once */
+	private MappedByteBuffer source;
+
+	/**
+	 * Constructs a source and opens the file
+	 *
+	 * @param fileName Name of the tea file
+	 * @param format Code of the format of the tea file
+	 * @param categories The categories of a binary file in the order of their codes
+	 * @throws IOException If the file could not be opened
+	 */
+	RecordSource(String fileName, short format, List<String> categories) throws IOException {
+		this.fileName = fileName;
+		this.format = format;
+		this.categories = categories;
+		channel = new RandomAccessFile(fileName, "r").getChannel();
+		try {
+			size = channel.size();
+			if(size <= Integer.MAX_VALUE) {
+				source = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			}
+		}
+		catch(IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads a tea.
+	 *
+	 * @param offset Offset of the line or block in the tea file
+	 * @param lengthOrRow Length of the line or row in the block
+	 * @return The tea
+	 * @throws IOException If the tea file could not be read
+	 */
+	Tea read(long offset, int lengthOrRow) throws IOException {
+		if(format == RecordScanner.TEXT) {
+			TextReader reader = (TextReader) FileFormats.getReader(FileFormats.TEXT.toString());
+			return reader.readLine(region(offset, lengthOrRow), fileName);
+		}
+		int length = region(offset, 4).getInt();
+		BinaryReader reader = (BinaryReader) FileFormats.getReader(FileFormats.BINARY.toString());
+		return reader.readRow(region(offset + 4, length), lengthOrRow, categories, fileName);
+	}
+
+	/**
+	 * Gets some bytes of the tea file.
+	 *
+	 * @param offset Offset of the first byte
+	 * @param length Number of bytes
+	 * @return A buffer with the bytes from its position to its limit
+	 * @throws IOException If the bytes are not in the file
+	 */
+	private ByteBuffer region(long offset, int length) throws IOException {
+		if(offset < 0 || length < 0 || offset + length > size) {
+			throw new IOException("Input file (" + fileName + ") not correct format");
+		}
+		if(source == null) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+		}
+		ByteBuffer region = source.duplicate();
+		region.position((int) offset);
+		region.limit((int) offset + length);
+		return region.slice();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException {
+		source = null;
+		channel.close();
+	}
+}
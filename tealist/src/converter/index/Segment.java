@@ -0,0 +1,290 @@
+package converter.index;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import tealist.Tea;
+
+/**
+ * A Segment is the part of a {@link DescriptionIndex} that covers one tea
+ * file. It is a file of its own that is memory mapped when it is opened.
+ * All numbers are big endian.
+ *
+ * <pre>
+ * header:     magic "TEAD" | short version | short format (0 text, 1 bin)
+ *             long size of the tea file | long time of last change of the tea file
+ *             int tea count | int term count
+ *             int categories, for each: int length | UTF-8 bytes (bin only, in code order)
+ * locations:  for each tea: long offset | int length or row, as found by a {@link RecordScanner}
+ * terms:      for each term in sorted order: int length | UTF-8 bytes | int tea count | int postings length
+ * postings:   for each term in the same order, the ids of its tea in increasing order
+ * </pre>
+ *
+ * The id of a tea is its number in the file, counted from 0. The ids of a
+ * term are stored as the gaps between them, each gap in as few bytes as
+ * possible with 7 bits in each byte and the high bit set on all bytes but
+ * the last. The terms are read into memory when the segment is opened, the
+ * postings are decoded from the mapped file when they are needed.
+ *
+ * @author Mats Palm
+ */
+class Segment implements Closeable {
+	static final int MAGIC = 0x54454144;
+	static final short VERSION = 1;
+	static final int LOCATION_SIZE = 12;
+
+	private int count;
+	private int locationsPosition;
+	private String[] terms;
+	private int[] teaCounts;
+	private int[] postingsPositions;
+	private MappedByteBuffer buf;
+	private RecordSource source;
+
+	/**
+	 * Opens a segment
+	 *
+	 * @param file The segment file
+	 * @param teaFile The tea file the segment covers
+	 * @param format Code of the format of the tea file
+	 * @throws IOException If the segment could not be read or is out of date
+	 */
+	Segment(File file, File teaFile, short format) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		}
+		finally {
+			raf.close();
+		}
+		List<String> categories = new ArrayList<String>();
+		try {
+			if(buf.getInt() != MAGIC || buf.getShort() != VERSION) {
+				throw new IOException("Index file (" + file + ") not correct format");
+			}
+			if(buf.getShort() != format || buf.getLong() != teaFile.length() || buf.getLong() != teaFile.lastModified()) {
+				throw new IOException("The search index of " + teaFile.getPath() + " is out of date, it must be updated");
+			}
+			count = buf.getInt();
+			int termCount = buf.getInt();
+			int categoryCount = buf.getInt();
+			for(int i = 0; i < categoryCount; i++) {
+				byte[] bytes = new byte[buf.getInt()];
+				buf.get(bytes);
+				categories.add(new String(bytes, StandardCharsets.UTF_8));
+			}
+			locationsPosition = buf.position();
+			buf.position(locationsPosition + count * LOCATION_SIZE);
+
+			terms = new String[termCount];
+			teaCounts = new int[termCount];
+			postingsPositions = new int[termCount + 1];
+			int[] lengths = new int[termCount];
+			for(int i = 0; i < termCount; i++) {
+				byte[] bytes = new byte[buf.getInt()];
+				buf.get(bytes);
+				terms[i] = new String(bytes, StandardCharsets.UTF_8);
+				teaCounts[i] = buf.getInt();
+				lengths[i] = buf.getInt();
+			}
+			postingsPositions[0] = buf.position();
+			for(int i = 0; i < termCount; i++) {
+				postingsPositions[i + 1] = postingsPositions[i] + lengths[i];
+			}
+			if(postingsPositions[termCount] != buf.limit()) {
+				throw new IOException("Index file (" + file + ") not correct format");
+			}
+		}
+		catch(RuntimeException e) {
+			throw new IOException("Index file (" + file + ") not correct format");
+		}
+		source = new RecordSource(teaFile.getPath(), format, categories);
+	}
+
+	/**
+	 * Checks if a segment covers a tea file as it is now, by only reading
+	 * the header of the segment.
+	 *
+	 * @param file The segment file
+	 * @param teaFile The tea file
+	 * @param format Code of the format of the tea file
+	 * @return true if the segment exists and is up to date
+	 * @throws IOException If the segment could not be read
+	 */
+	static boolean isCurrent(File file, File teaFile, short format) throws IOException {
+		if(!file.isFile()) {
+			return false;
+		}
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			return in.readInt() == MAGIC && in.readShort() == VERSION && in.readShort() == format
+					&& in.readLong() == teaFile.length() && in.readLong() == teaFile.lastModified();
+		}
+		catch(EOFException e) {
+			return false;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Finds the tea that match a search.
+	 *
+	 * @param groups Groups of terms where all terms of a group must be in a
+	 *               description, and any group is enough
+	 * @return The ids of the tea in increasing order
+	 */
+	int[] search(List<List<String>> groups) {
+		int[] found = new int[0];
+		for(List<String> group : groups) {
+			found = union(found, searchAll(group));
+		}
+		return found;
+	}
+
+	/**
+	 * Reads a tea.
+	 *
+	 * @param id The id of the tea
+	 * @return The tea
+	 * @throws IOException If the tea file could not be read
+	 */
+	Tea read(int id) throws IOException {
+		int position = locationsPosition + id * LOCATION_SIZE;
+		return source.read(buf.getLong(position), buf.getInt(position + 8));
+	}
+
+	/**
+	 * Finds the tea that have all of some terms, starting with the term
+	 * with the fewest tea so the lists being intersected stay short.
+	 *
+	 * @param group The terms
+	 * @return The ids of the tea in increasing order
+	 */
+	private int[] searchAll(List<String> group) {
+		int[] indexes = new int[group.size()];
+		for(int i = 0; i < indexes.length; i++) {
+			indexes[i] = Arrays.binarySearch(terms, group.get(i));
+			if(indexes[i] < 0) {
+				return new int[0];
+			}
+		}
+		// Sort by number of tea, the count is in the high bits
+		long[] order = new long[indexes.length];
+		for(int i = 0; i < indexes.length; i++) {
+			order[i] = (long) teaCounts[indexes[i]] << 32 | indexes[i];
+		}
+		Arrays.sort(order);
+		int[] found = null;
+		for(long term : order) {
+			int[] ids = postings((int) term);
+			found = found == null ? ids : intersect(found, ids);
+			if(found.length == 0) {
+				break;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Decodes the ids of a term.
+	 *
+	 * @param term Index of the term
+	 * @return The ids in increasing order
+	 */
+	private int[] postings(int term) {
+		int[] ids = new int[teaCounts[term]];
+		int position = postingsPositions[term];
+		int id = 0;
+		for(int i = 0; i < ids.length; i++) {
+			int gap = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buf.get(position++);
+				gap |= (b & 0x7f) << shift;
+				shift += 7;
+			} while(b < 0);
+			id += gap;
+			ids[i] = id;
+		}
+		return ids;
+	}
+
+	/**
+	 * Gets the ids that are in both of two lists.
+	 *
+	 * @param a Ids in increasing order
+	 * @param b Ids in increasing order
+	 * @return The ids in both lists in increasing order
+	 */
+	private static int[] intersect(int[] a, int[] b) {
+		int[] both = new int[Math.min(a.length, b.length)];
+		int size = 0;
+		int i = 0;
+		int j = 0;
+		while(i < a.length && j < b.length) {
+			if(a[i] < b[j]) {
+				i++;
+			}
+			else if(a[i] > b[j]) {
+				j++;
+			}
+			else {
+				both[size++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(both, size);
+	}
+
+	/**
+	 * Gets the ids that are in any of two lists.
+	 *
+	 * @param a Ids in increasing order
+	 * @param b Ids in increasing order
+	 * @return The ids in either list in increasing order, without duplicates
+	 */
+	private static int[] union(int[] a, int[] b) {
+		int[] either = new int[a.length + b.length];
+		int size = 0;
+		int i = 0;
+		int j = 0;
+		while(i < a.length || j < b.length) {
+			if(j == b.length || i < a.length && a[i] < b[j]) {
+				either[size++] = a[i++];
+			}
+			else if(i == a.length || b[j] < a[i]) {
+				either[size++] = b[j++];
+			}
+			else {
+				either[size++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(either, size);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException {
+		buf = null;
+		source.close();
+	}
+}
@@ -0,0 +1,244 @@
+package converter.index;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import converter.FileFormats;
+import converter.readers.TeaCursor;
+import tealist.Tea;
+
+/**
+ * SegmentBuilder writes the {@link Segment} of a tea file.
+ *
+ * The file is scanned once to find where each tea is, and then read once
+ * more by the reader of its format, which gives the tea in the same order,
+ * so the n:th tea read has id n. The description of each tea is split
+ * into terms and the ids of the tea of each term are collected in memory,
+ * in increasing order, and written gap encoded when all tea are read.
+ *
+ * The segment is written under a temporary name and renamed when it is
+ * complete.
+ *
+ * @author Mats Palm
+ */
+class SegmentBuilder extends RecordScanner {
+	private int count;
+	private long[] offsets = new long[1024];
+	private int[] lengthsOrRows = new int[1024];
+
+	/**
+	 * Constructs a builder
+	 *
+	 * @param fileName Name of the tea file
+	 * @param format Code of the format of the tea file
+	 */
+	SegmentBuilder(String fileName, short format) {
+		super(fileName, format);
+	}
+
+	/**
+	 * Builds the segment.
+	 *
+	 * @param directory The directory to write the segment in
+	 * @return The segment file
+	 * @throws IOException If the file could not be read or the segment could not be written
+	 */
+	File build(File directory) throws IOException {
+		File file = new File(fileName);
+		checkFile(file);
+		long size = file.length();
+		long lastModified = file.lastModified();
+
+		scan();
+		Map<String, Postings> postings = new HashMap<String, Postings>();
+		String fileFormat = format == TEXT ? FileFormats.TEXT.toString() : FileFormats.BINARY.toString();
+		TeaCursor cursor = FileFormats.getReader(fileFormat).openCursor(fileName);
+		try {
+			Tea tea;
+			int id = 0;
+			while((tea = cursor.next()) != null) {
+				if(id == count) {
+					throw new IOException("Input file (" + fileName + ") was changed while it was indexed");
+				}
+				for(String term : DescriptionTokenizer.tokens(tea.getDescription())) {
+					Postings ids = postings.get(term);
+					if(ids == null) {
+						ids = new Postings();
+						postings.put(term, ids);
+					}
+					ids.add(id);
+				}
+				id++;
+			}
+			if(id != count) {
+				throw new IOException("Input file (" + fileName + ") was changed while it was indexed");
+			}
+		}
+		finally {
+			cursor.close();
+		}
+		if(file.length() != size || file.lastModified() != lastModified) {
+			throw new IOException("Input file (" + fileName + ") was changed while it was indexed");
+		}
+
+		String[] terms = postings.keySet().toArray(new String[postings.size()]);
+		Arrays.sort(terms);
+		long segmentSize = Segment.LOCATION_SIZE * (long) count;
+		for(String term : terms) {
+			segmentSize += 12 + term.length() * 3L + postings.get(term).encodedLength();
+		}
+		if(segmentSize > Integer.MAX_VALUE) {
+			throw new IOException("Input file (" + fileName + ") has too many tea to be indexed");
+		}
+
+		File part = File.createTempFile("segment", ".part", directory);
+		boolean succeeded = false;
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(part), 64 * 1024));
+			try {
+				out.writeInt(Segment.MAGIC);
+				out.writeShort(Segment.VERSION);
+				out.writeShort(format);
+				out.writeLong(size);
+				out.writeLong(lastModified);
+				out.writeInt(count);
+				out.writeInt(terms.length);
+				out.writeInt(categories.size());
+				for(String category : categories) {
+					writeText(out, category);
+				}
+				for(int id = 0; id < count; id++) {
+					out.writeLong(offsets[id]);
+					out.writeInt(lengthsOrRows[id]);
+				}
+				for(String term : terms) {
+					Postings ids = postings.get(term);
+					writeText(out, term);
+					out.writeInt(ids.size);
+					out.writeInt(ids.encodedLength());
+				}
+				for(String term : terms) {
+					postings.get(term).write(out);
+				}
+			}
+			finally {
+				out.close();
+			}
+			File segment = new File(directory, part.getName().replace(".part", DescriptionIndex.SEGMENT_EXTENSION));
+			try {
+				Files.move(part.toPath(), segment.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch(AtomicMoveNotSupportedException e) {
+				Files.move(part.toPath(), segment.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			succeeded = true;
+			return segment;
+		}
+		finally {
+			if(!succeeded && !part.delete() && part.exists()) {
+				part.deleteOnExit();
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Keeps where the tea is, the description is read later.
+	 */
+	@Override
+	protected void found(long offset, int lengthOrRow, byte[] name, int nameLength) throws IOException {
+		if(count == offsets.length) {
+			offsets = Arrays.copyOf(offsets, count * 2);
+			lengthsOrRows = Arrays.copyOf(lengthsOrRows, count * 2);
+		}
+		offsets[count] = offset;
+		lengthsOrRows[count] = lengthOrRow;
+		count++;
+	}
+
+	/**
+	 * Writes a text as its length and UTF-8 bytes.
+	 *
+	 * @param out The stream
+	 * @param text The text
+	 * @throws IOException If the text could not be written
+	 */
+	private static void writeText(DataOutputStream out, String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * The ids of the tea of a term, collected in increasing order.
+	 */
+	private static class Postings {
+		private int[] ids = new int[4];
+		private int size;
+
+		/**
+		 * Adds an id, unless it is the last one added since a term may
+		 * occur more than once in a description.
+		 *
+		 * @param id The id, not less than the last one added
+		 */
+		void add(int id) {
+			if(size > 0 && ids[size - 1] == id) {
+				return;
+			}
+			if(size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			ids[size++] = id;
+		}
+
+		/**
+		 * Gets the number of bytes of the gap encoded ids.
+		 *
+		 * @return Number of bytes
+		 */
+		int encodedLength() {
+			int length = 0;
+			int previous = 0;
+			for(int i = 0; i < size; i++) {
+				int gap = ids[i] - previous;
+				previous = ids[i];
+				do {
+					length++;
+					gap >>>= 7;
+				} while(gap != 0);
+			}
+			return length;
+		}
+
+		/**
+		 * Writes the gap encoded ids.
+		 *
+		 * @param out The stream
+		 * @throws IOException If the ids could not be written
+		 */
+		void write(DataOutputStream out) throws IOException {
+			int previous = 0;
+			for(int i = 0; i < size; i++) {
+				int gap = ids[i] - previous;
+				previous = ids[i];
+				while(gap >= 0x80) {
+					out.write(gap & 0x7f | 0x80);
+					gap >>>= 7;
+				}
+				out.write(gap);
+			}
+		}
+	}
+}
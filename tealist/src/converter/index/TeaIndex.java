@@ -0,0 +1,226 @@
+package converter.index;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import tealist.Tea;
+
+/**
+ * A TeaIndex finds tea by name in a text or binary file without reading
+ * the rest of the file. The index is kept in a sidecar file next to the
+ * tea file, named as the tea file with {@link #EXTENSION} added, and is
+ * memory mapped when it is opened.
+ *
+ * The sidecar is an open addressing hash table with linear probing. A slot
+ * holds a hash of the name and where the tea is in the file: the offset
+ * and length of the line of a text file, or the offset of the block and
+ * the row in the block of a binary file, since the binary format stores
+ * the fields of a tea in separate columns. A lookup hashes the name, probes
+ * the slots and reads only the lines or rows that have the same hash. All
+ * numbers are big endian.
+ *
+ * <pre>
+ * header:  magic "TEAI" | short version | short format (0 text, 1 bin)
+ *          long size of the tea file | long time of last change of the tea file
+ *          int tea count | int slot count (a power of two)
+ *          int categories, for each: int length | UTF-8 bytes (bin only, in code order)
+ * slots:   int name hash (0 if the slot is empty) | int length or row | long offset
+ * </pre>
+ *
+ * An index is only used while the size and time of last change of the tea
+ * file are the same as when it was built, otherwise it has to be built
+ * again. Compressed files can not be indexed. An open index may be used by
+ * many threads at the same time.
+ *
+ * @author Mats Palm
+ */
+public class TeaIndex implements Closeable {
+	/** Added to the name of the tea file to get the name of the index */
+	public static final String EXTENSION = ".idx";
+
+	static final int MAGIC = 0x54454149;
+	static final short VERSION = 1;
+	static final int SLOT_SIZE = 16;
+
+	private int count;
+	private int mask;
+	private int slotsPosition;
+	private List<String> categories = new ArrayList<String>();
+	private MappedByteBuffer slots;
+	private RecordSource source;
+
+	/**
+	 * Builds the index of a tea file, or builds it again if it exists.
+	 *
+	 * @param fileName Name of the tea file
+	 * @param fileFormat Format of the tea file, text or bin
+	 * @return Number of tea in the index
+	 * @throws IOException If the file could not be read or the index could not be written
+	 */
+	public static int build(String fileName, String fileFormat) throws IOException {
+		return new TeaIndexBuilder(fileName, RecordScanner.formatCode(fileFormat)).build();
+	}
+
+	/**
+	 * Opens the index of a tea file.
+	 *
+	 * @param fileName Name of the tea file
+	 * @param fileFormat Format of the tea file, text or bin
+	 * @return The index, which must be closed
+	 * @throws IOException If there is no index for the file or it is out of date
+	 */
+	public static TeaIndex open(String fileName, String fileFormat) throws IOException {
+		short format = RecordScanner.formatCode(fileFormat);
+		TeaIndex index = new TeaIndex(fileName, format);
+		index.source = new RecordSource(fileName, format, index.categories);
+		return index;
+	}
+
+	/**
+	 * Gets the name of the index of a tea file.
+	 *
+	 * @param fileName Name of the tea file
+	 * @return Name of the index
+	 */
+	public static String indexName(String fileName) {
+		return fileName + EXTENSION;
+	}
+
+	/**
+	 * Hashes a name, the same way when building and when looking up.
+	 * The hash is FNV-1a of the UTF-8 bytes and is never 0, which marks
+	 * an empty slot.
+	 *
+	 * @param bytes Bytes holding the name in UTF-8
+	 * @param start Index of the first byte of the name
+	 * @param end Index after the last byte of the name
+	 * @return The hash
+	 */
+	static int hash(byte[] bytes, int start, int end) {
+		int hash = 0x811c9dc5;
+		for(int i = start; i < end; i++) {
+			hash = (hash ^ (bytes[i] & 0xff)) * 0x01000193;
+		}
+		return hash == 0 ? 1 : hash;
+	}
+
+	/**
+	 * Gets the first slot to probe for a hash.
+	 *
+	 * @param hash The hash of a name
+	 * @param mask The number of slots minus one
+	 * @return Index of the slot
+	 */
+	static int firstSlot(int hash, int mask) {
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+
+	/**
+	 * Constructs an index by mapping the sidecar of a tea file and
+	 * checking that it is up to date.
+	 *
+	 * @param fileName Name of the tea file
+	 * @param format Code of the format of the tea file
+	 * @throws IOException If there is no index for the file or it is out of date
+	 */
+	private TeaIndex(String fileName, short format) throws IOException {
+		File file = new File(fileName);
+		File indexFile = new File(indexName(fileName));
+		if(!indexFile.isFile()) {
+			throw new IOException("There is no index of " + fileName + ", it must be built first");
+		}
+		RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+		try {
+			slots = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		}
+		finally {
+			raf.close();
+		}
+		try {
+			if(slots.getInt() != MAGIC || slots.getShort() != VERSION) {
+				throw new IOException("Index file (" + indexFile + ") not correct format");
+			}
+			if(slots.getShort() != format) {
+				throw new IOException("The index of " + fileName + " was built for another format");
+			}
+			if(slots.getLong() != file.length() || slots.getLong() != file.lastModified()) {
+				throw new IOException("The index of " + fileName + " is out of date, it must be built again");
+			}
+			count = slots.getInt();
+			int slotCount = slots.getInt();
+			int categoryCount = slots.getInt();
+			for(int i = 0; i < categoryCount; i++) {
+				byte[] bytes = new byte[slots.getInt()];
+				slots.get(bytes);
+				categories.add(new String(bytes, StandardCharsets.UTF_8));
+			}
+			if(Integer.bitCount(slotCount) != 1 || slots.remaining() != (long) slotCount * SLOT_SIZE) {
+				throw new IOException("Index file (" + indexFile + ") not correct format");
+			}
+			mask = slotCount - 1;
+			slotsPosition = slots.position();
+		}
+		catch(RuntimeException e) {
+			throw new IOException("Index file (" + indexFile + ") not correct format");
+		}
+	}
+
+	/**
+	 * Gets the number of tea in the index.
+	 *
+	 * @return Number of tea
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Finds all tea with a name. Names are compared with case.
+	 *
+	 * @param name The name
+	 * @return The tea in the order they have in the file, empty if there is no tea with the name
+	 * @throws IOException If the tea file could not be read
+	 */
+	public List<Tea> find(String name) throws IOException {
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		int hash = hash(bytes, 0, bytes.length);
+		List<Tea> found = Collections.emptyList();
+
+		for(int slot = firstSlot(hash, mask); ; slot = (slot + 1) & mask) {
+			int position = slotsPosition + slot * SLOT_SIZE;
+			int slotHash = slots.getInt(position);
+			if(slotHash == 0) {
+				return found;
+			}
+			if(slotHash == hash) {
+				Tea tea = source.read(slots.getLong(position + 8), slots.getInt(position + 4));
+				if(tea.getName().equals(name)) {
+					if(found.isEmpty()) {
+						found = new ArrayList<Tea>();
+					}
+					found.add(tea);
+				}
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException {
+		slots = null;
+		if(source != null) {
+			source.close();
+			source = null;
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package converter.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TeaIndexBuilder writes the index of a tea file, see {@link TeaIndex}.
+ *
+ * The file is scanned twice. The first scan counts the tea, so the table
+ * can be given its size, and the second puts the tea in the table. The
+ * table is written straight into the memory mapped index file, so building
+ * needs the same memory however large the tea file is.
+ *
+ * The index is written under a temporary name and renamed when it is
+ * complete, so an index that is being built again can still be used.
+ *
+ * @author Mats Palm
+ */
+class TeaIndexBuilder extends RecordScanner {
+	private int count;
+	/* The slots being filled, null while counting */
+	private MappedByteBuffer table;
+	private int slotsPosition;
+	private int mask;
+
+	/**
+	 * Constructs a builder
+	 *
+	 * @param fileName Name of the tea file
+	 * @param format Code of the format of the tea file
+	 */
+	TeaIndexBuilder(String fileName, short format) {
+		super(fileName, format);
+	}
+
+	/**
+	 * Builds the index.
+	 *
+	 * @return Number of tea in the index
+	 * @throws IOException If the file could not be read or the index could not be written
+	 */
+	int build() throws IOException {
+		File file = new File(fileName);
+		checkFile(file);
+		long size = file.length();
+		long lastModified = file.lastModified();
+
+		scan();
+		int teaCount = count;
+		long slotCount = 1;
+		while(slotCount < teaCount * 4L / 3 + 1) {
+			slotCount <<= 1;
+		}
+		int headerSize = 36;
+		List<byte[]> categoryBytes = new ArrayList<byte[]>();
+		for(String category : categories) {
+			byte[] bytes = category.getBytes(StandardCharsets.UTF_8);
+			categoryBytes.add(bytes);
+			headerSize += 4 + bytes.length;
+		}
+		if(headerSize + slotCount * TeaIndex.SLOT_SIZE > Integer.MAX_VALUE) {
+			throw new IOException("Input file (" + fileName + ") has too many tea to be indexed");
+		}
+
+		File directory = file.getAbsoluteFile().getParentFile();
+		File part = File.createTempFile(file.getName(), ".part", directory);
+		boolean succeeded = false;
+		try {
+			RandomAccessFile raf = new RandomAccessFile(part, "rw");
+			try {
+				raf.setLength(headerSize + slotCount * TeaIndex.SLOT_SIZE);
+				table = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+			}
+			finally {
+				raf.close();
+			}
+			table.putInt(TeaIndex.MAGIC);
+			table.putShort(TeaIndex.VERSION);
+			table.putShort(format);
+			table.putLong(size);
+			table.putLong(lastModified);
+			table.putInt(teaCount);
+			table.putInt((int) slotCount);
+			table.putInt(categoryBytes.size());
+			for(byte[] bytes : categoryBytes) {
+				table.putInt(bytes.length);
+				table.put(bytes);
+			}
+			slotsPosition = table.position();
+			mask = (int) slotCount - 1;
+
+			count = 0;
+			scan();
+			if(count != teaCount || file.length() != size || file.lastModified() != lastModified) {
+				throw new IOException("Input file (" + fileName + ") was changed while it was indexed");
+			}
+			table.force();
+			table = null;
+
+			File index = new File(TeaIndex.indexName(fileName));
+			try {
+				Files.move(part.toPath(), index.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch(AtomicMoveNotSupportedException e) {
+				Files.move(part.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			succeeded = true;
+		}
+		finally {
+			table = null;
+			if(!succeeded && !part.delete() && part.exists()) {
+				part.deleteOnExit();
+			}
+		}
+		return teaCount;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Adds the tea to the table, or only counts it while counting.
+	 */
+	@Override
+	protected void found(long offset, int lengthOrRow, byte[] name, int nameLength) throws IOException {
+		count++;
+		if(table == null) {
+			return;
+		}
+		if(count > mask) {
+			throw new IOException("Input file (" + fileName + ") was changed while it was indexed");
+		}
+		int hash = TeaIndex.hash(name, 0, nameLength);
+		int position;
+		for(int slot = TeaIndex.firstSlot(hash, mask); ; slot = (slot + 1) & mask) {
+			position = slotsPosition + slot * TeaIndex.SLOT_SIZE;
+			if(table.getInt(position) == 0) {
+				break;
+			}
+		}
+		table.putInt(position, hash);
+		table.putInt(position + 4, lengthOrRow);
+		table.putLong(position + 8, offset);
+	}
+}
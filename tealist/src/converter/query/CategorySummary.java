@@ -0,0 +1,83 @@
+package converter.query;
+
+import java.util.Locale;
+
+/**
+ * Aggregated price information for all tea in a category.
+ * 
+ * @author Mats Palm
+ */
+public class CategorySummary {
+	private String category;
+	private long count;
+	private int minPrice = Integer.MAX_VALUE;
+	private int maxPrice = Integer.MIN_VALUE;
+	private long priceSum;
+
+	/**
+	 * Constructs an empty summary
+	 * 
+	 * @param category The category
+	 */
+	public CategorySummary(String category) {
+		this.category = category;
+	}
+
+	/**
+	 * Adds the price of a tea in the category.
+	 * 
+	 * @param price The price
+	 */
+	public void add(int price) {
+		count++;
+		minPrice = Math.min(minPrice, price);
+		maxPrice = Math.max(maxPrice, price);
+		priceSum += price;
+	}
+
+	/**
+	 * @return The category
+	 */
+	public String getCategory() {
+		return category;
+	}
+
+	/**
+	 * @return Number of tea in the category
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return The lowest price in the category
+	 */
+	public int getMinPrice() {
+		return minPrice;
+	}
+
+	/**
+	 * @return The highest price in the category
+	 */
+	public int getMaxPrice() {
+		return maxPrice;
+	}
+
+	/**
+	 * @return The average price in the category
+	 */
+	public double getAveragePrice() {
+		return count == 0 ? 0 : (double) priceSum / count;
+	}
+
+	/**
+	 * Formats the summary as a line with the fields separated with ;
+	 * 
+	 * @return category;count;min price;max price;average price
+	 */
+	@Override
+	public String toString() {
+		return category + ";" + count + ";" + minPrice + ";" + maxPrice + ";" 
+				+ String.format(Locale.ROOT, "%.2f", getAveragePrice());
+	}
+}
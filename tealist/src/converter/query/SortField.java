@@ -0,0 +1,87 @@
+package converter.query;
+
+import java.util.Comparator;
+
+import tealist.Tea;
+
+/**
+ * Enumeration for the fields tea can be sorted by.
+ * 
+ * @author Mats Palm
+ */
+public enum SortField {
+	CATEGORY(Tea.CATEGORY), NAME(Tea.NAME), PRICE(Tea.PRICE), DESCRIPTION(Tea.DESCRIPTION);
+
+	private String field;
+
+	/**
+	 * Private constructor only for the enumeration itself
+	 * 
+	 * @param field Name of the field
+	 */
+	private SortField(String field) {
+		this.field = field;
+	}
+
+	/**
+	 * Gets a comparator that orders tea by the field. Text is compared
+	 * character by character.
+	 * 
+	 * @return The comparator
+	 */
+	public Comparator<Tea> comparator() {
+		switch(this) {
+		case CATEGORY:
+			return new Comparator<Tea>() {
+				@Override
+				public int compare(Tea a, Tea b) {
+					return a.getCategory().compareTo(b.getCategory());
+				}
+			};
+		case NAME:
+			return new Comparator<Tea>() {
+				@Override
+				public int compare(Tea a, Tea b) {
+					return a.getName().compareTo(b.getName());
+				}
+			};
+		case PRICE:
+			return new Comparator<Tea>() {
+				@Override
+				public int compare(Tea a, Tea b) {
+					return Integer.compare(a.getPrice(), b.getPrice());
+				}
+			};
+		default:
+			return new Comparator<Tea>() {
+				@Override
+				public int compare(Tea a, Tea b) {
+					return a.getDescription().compareTo(b.getDescription());
+				}
+			};
+		}
+	}
+
+	/**
+	 * Iterate through the fields and return the one with a name.
+	 * 
+	 * @param field Name of the field
+	 * @return The sort field or null if there is no field with the name
+	 */
+	public static SortField fromString(String field) {
+		for(SortField sortField : SortField.values()) {
+			if(sortField.field.equalsIgnoreCase(field)) {
+				return sortField;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return this.field;
+	}
+}
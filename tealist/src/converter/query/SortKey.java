@@ -0,0 +1,85 @@
+package converter.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import tealist.Tea;
+
+/**
+ * A field to sort tea by and its direction. Tea are sorted by a list of
+ * keys, where each key after the first orders the tea that are equal in
+ * all keys before it.
+ *
+ * @author Mats Palm
+ */
+public class SortKey {
+	private SortField field;
+	private boolean descending;
+
+	/**
+	 * Constructs a key
+	 *
+	 * @param field The field to sort by
+	 * @param descending true to sort with the largest value first
+	 */
+	public SortKey(SortField field, boolean descending) {
+		if(field == null) {
+			throw new IllegalArgumentException("A sort key must have a field");
+		}
+		this.field = field;
+		this.descending = descending;
+	}
+
+	/**
+	 * @return The field to sort by
+	 */
+	public SortField getField() {
+		return field;
+	}
+
+	/**
+	 * @return true if the largest value is sorted first
+	 */
+	public boolean isDescending() {
+		return descending;
+	}
+
+	/**
+	 * Gets a comparator that orders tea by a list of keys.
+	 *
+	 * @param keys The keys, the first is compared first
+	 * @return The comparator
+	 */
+	public static Comparator<Tea> comparator(List<SortKey> keys) {
+		final List<Comparator<Tea>> comparators = new ArrayList<Comparator<Tea>>();
+		for(SortKey key : keys) {
+			Comparator<Tea> comparator = key.field.comparator();
+			comparators.add(key.descending ? Collections.reverseOrder(comparator) : comparator);
+		}
+		if(comparators.size() == 1) {
+			return comparators.get(0);
+		}
+		return new Comparator<Tea>() {
+			@Override
+			public int compare(Tea a, Tea b) {
+				for(Comparator<Tea> comparator : comparators) {
+					int result = comparator.compare(a, b);
+					if(result != 0) {
+						return result;
+					}
+				}
+				return 0;
+			}
+		};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return descending ? field + ":desc" : field.toString();
+	}
+}
@@ -0,0 +1,216 @@
+package converter.query;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import converter.readers.TeaCursor;
+import converter.readers.TeaFilter;
+import converter.writers.TeaSink;
+import tealist.Tea;
+
+/**
+ * A TeaQuery selects, orders and aggregates the tea of a conversion. It
+ * runs between the reader and the writer. The filter is handed to the
+ * reader, so tea that is filtered away is skipped while reading, and so
+ * are the fields the query does not need.
+ * 
+ * @author Mats Palm
+ */
+public class TeaQuery {
+	private TeaFilter filter = new TeaFilter();
+	private List<SortKey> sortKeys;
+	private int limit = -1;
+	private long sortMemory = -1;
+	private List<String> fields;
+	private boolean groupByCategory;
+
+	/**
+	 * Gets the filter of the query. Conditions are added to the filter directly.
+	 * 
+	 * @return The filter
+	 */
+	public TeaFilter getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Sorts the tea by a field.
+	 * 
+	 * @param sortField The field or null to keep the order of the input file
+	 * @param descending true to sort with the largest value first
+	 */
+	public void setSort(SortField sortField, boolean descending) {
+		setSort(sortField == null ? null : Collections.singletonList(new SortKey(sortField, descending)));
+	}
+
+	/**
+	 * Sorts the tea by several fields, each field orders the tea that are
+	 * equal in the fields before it.
+	 * 
+	 * @param sortKeys The keys, the first is compared first, or null to keep the order of the input file
+	 */
+	public void setSort(List<SortKey> sortKeys) {
+		this.sortKeys = sortKeys == null || sortKeys.isEmpty() ? null : new ArrayList<SortKey>(sortKeys);
+		project();
+	}
+
+	/**
+	 * @return The keys to sort by or null to keep the order of the input file
+	 */
+	public List<SortKey> getSortKeys() {
+		return sortKeys;
+	}
+
+	/**
+	 * Only writes the first tea, after sorting.
+	 * 
+	 * @param limit The number of tea to write or -1 for all tea
+	 */
+	public void setLimit(int limit) {
+		this.limit = limit;
+	}
+
+	/**
+	 * @return The number of tea to write or -1 for all tea
+	 */
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Sets how much heap the tea may use while it is sorted. Tea that do
+	 * not fit are sorted in runs that are spilled to temporary files and
+	 * merged, see {@link TeaSorter}.
+	 * 
+	 * @param sortMemory The limit in bytes or -1 for a quarter of the maximum heap
+	 */
+	public void setSortMemory(long sortMemory) {
+		this.sortMemory = sortMemory;
+	}
+
+	/**
+	 * @return The heap the tea may use while it is sorted in bytes or -1 for a quarter of the maximum heap
+	 */
+	public long getSortMemory() {
+		return sortMemory;
+	}
+
+	/**
+	 * Only reads some of the fields of the tea. A name or description that
+	 * is not read is written empty, the category and price are always read.
+	 * The fields sorted by are read as well.
+	 * 
+	 * @param fields Names of the fields as in {@link Tea}, or null for all fields
+	 */
+	public void setFields(List<String> fields) {
+		this.fields = fields;
+		project();
+	}
+
+	/**
+	 * @return Names of the fields that are read and written, or null for all fields
+	 */
+	public List<String> getFields() {
+		return fields;
+	}
+
+	/**
+	 * Summarizes the prices per category instead of writing the tea. Only
+	 * the categories and prices are read.
+	 * 
+	 * @param groupByCategory true to summarize
+	 */
+	public void setGroupByCategory(boolean groupByCategory) {
+		this.groupByCategory = groupByCategory;
+		project();
+	}
+
+	/**
+	 * @return true if the prices are summarized per category
+	 */
+	public boolean isGroupByCategory() {
+		return groupByCategory;
+	}
+
+	/**
+	 * Writes the tea from a cursor to a sink in the order and number given
+	 * by the query. The cursor should already be filtered by the filter of
+	 * the query.
+	 * 
+	 * @param cursor The filtered tea
+	 * @param sink The sink to write to
+	 * @throws IOException If there was an I/O error
+	 */
+	public void run(TeaCursor cursor, TeaSink sink) throws IOException {
+		if(sortKeys != null && limit >= 0) {
+			new TeaSorter(sortKeys).top(cursor, limit, sink);
+		}
+		else if(sortKeys != null) {
+			TeaSorter sorter = new TeaSorter(sortKeys);
+			if(sortMemory > 0) {
+				sorter.setMemoryLimit(sortMemory);
+			}
+			sorter.sort(cursor, sink);
+		}
+		else {
+			long written = 0;
+			Tea tea;
+			while((limit < 0 || written < limit) && (tea = cursor.next()) != null) {
+				sink.write(tea);
+				written++;
+			}
+		}
+	}
+
+	/**
+	 * Tells the filter which fields the query needs.
+	 */
+	private void project() {
+		if(groupByCategory) {
+			filter.setFields(Arrays.asList(Tea.CATEGORY, Tea.PRICE));
+		}
+		else if(fields == null) {
+			filter.setFields(null);
+		}
+		else {
+			Set<String> needed = new HashSet<String>(fields);
+			if(sortKeys != null) {
+				for(SortKey key : sortKeys) {
+					needed.add(key.getField().toString());
+				}
+			}
+			filter.setFields(needed);
+		}
+	}
+
+	/**
+	 * Summarizes the prices of the tea from a cursor per category, in a 
+	 * single pass. The cursor should already be filtered by the filter of 
+	 * the query.
+	 * 
+	 * @param cursor The filtered tea
+	 * @return A summary per category in the order the categories were first read
+	 * @throws IOException If there was an I/O error
+	 */
+	public List<CategorySummary> summarize(TeaCursor cursor) throws IOException {
+		Map<String, CategorySummary> summaries = new LinkedHashMap<String, CategorySummary>();
+		Tea tea;
+		while((tea = cursor.next()) != null) {
+			String category = tea.getCategory();
+			CategorySummary summary = summaries.get(category);
+			if(summary == null) {
+				summary = new CategorySummary(category);
+				summaries.put(category, summary);
+			}
+			summary.add(tea.getPrice());
+		}
+		return new ArrayList<CategorySummary>(summaries.values());
+	}
+}
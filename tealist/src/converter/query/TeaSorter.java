@@ -0,0 +1,428 @@
+package converter.query;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import converter.BinaryFormat;
+import converter.readers.BinaryReader;
+import converter.readers.TeaCursor;
+import converter.writers.BinaryWriter;
+import converter.writers.TeaSink;
+import tealist.Tea;
+import tealist.TeaTable;
+
+/**
+ * A TeaSorter sorts tea by one or more fields, see {@link SortKey}. The sort
+ * is stable, tea that are equal in all the fields keep the order they were
+ * read in.
+ * 
+ * Tea that do not fit in the memory limit are sorted externally: the tea
+ * is read in runs that fit in the limit, each run is sorted in memory and
+ * spilled to a temporary file in the binary format, and the runs are then
+ * merged into the sink. Each run that is merged holds a decoded block in
+ * memory, so only as many runs as fit in the limit are merged at once, and
+ * more runs are first merged into longer runs.
+ * 
+ * @author Mats Palm
+ */
+public class TeaSorter {
+	/* Heap for each tea and sort key while a run is sorted, besides the table: the row number and the key */
+	private static final int SORT_BYTES_PER_TEA = 64;
+	/* Heap for each tea of a decoded block while merging, besides its text: its code, price and text offsets */
+	private static final int MERGE_BYTES_PER_TEA = 16;
+	private static final int MAX_MERGE_RUNS = 64;
+
+	private List<SortKey> keys;
+	private long memoryLimit = Runtime.getRuntime().maxMemory() / 4;
+
+	/**
+	 * Constructs a sorter
+	 * 
+	 * @param field The field to sort by
+	 * @param descending true to sort with the largest value first
+	 */
+	public TeaSorter(SortField field, boolean descending) {
+		this(Collections.singletonList(new SortKey(field, descending)));
+	}
+
+	/**
+	 * Constructs a sorter
+	 * 
+	 * @param keys The keys to sort by, the first is compared first
+	 */
+	public TeaSorter(List<SortKey> keys) {
+		if(keys.isEmpty()) {
+			throw new IllegalArgumentException("At least one sort key is needed");
+		}
+		this.keys = new ArrayList<SortKey>(keys);
+	}
+
+	/**
+	 * Sets how much heap the tea may use while it is sorted. Tea that do not
+	 * fit are sorted in runs that are spilled to temporary files.
+	 * 
+	 * @param memoryLimit The limit in bytes, a quarter of the maximum heap if it is not set
+	 */
+	public void setMemoryLimit(long memoryLimit) {
+		if(memoryLimit < 1) {
+			throw new IllegalArgumentException("Memory limit must be at least 1 byte");
+		}
+		this.memoryLimit = memoryLimit;
+	}
+
+	/**
+	 * Reads all tea from a cursor and writes them sorted to a sink. The tea is
+	 * held in a {@link TeaTable} while it is sorted, and tea that do not fit
+	 * in the memory limit are spilled to runs that are merged.
+	 * 
+	 * @param cursor The tea to sort
+	 * @param sink The sink to write the sorted tea to
+	 * @throws IOException If there was an I/O error
+	 */
+	public void sort(TeaCursor cursor, TeaSink sink) throws IOException {
+		List<File> runs = new ArrayList<File>();
+		try {
+			TeaTable table = new TeaTable();
+			long count = 0;
+			Tea tea;
+			while((tea = cursor.next()) != null) {
+				table.add(tea);
+				count++;
+				if(table.estimatedBytes() + (long) table.size() * keys.size() * SORT_BYTES_PER_TEA > memoryLimit) {
+					runs.add(spill(table));
+					table = new TeaTable(table.size());
+				}
+			}
+			if(runs.isEmpty()) {
+				for(int row : order(table)) {
+					sink.write(table.get(row));
+				}
+				return;
+			}
+			if(table.size() > 0) {
+				runs.add(spill(table));
+			}
+			table = null;
+			int fanIn = fanIn(runs, count);
+			while(runs.size() > fanIn) {
+				runs = mergeRuns(runs, fanIn);
+			}
+			merge(runs, sink);
+		}
+		finally {
+			for(File run : runs) {
+				delete(run);
+			}
+		}
+	}
+
+	/**
+	 * Reads all tea from a cursor and writes the first tea in sorted order to a
+	 * sink. Only the tea that may end up among the first are kept in memory.
+	 * 
+	 * @param cursor The tea to sort
+	 * @param limit The number of tea to write
+	 * @param sink The sink to write the sorted tea to
+	 * @throws IOException If there was an I/O error
+	 */
+	public void top(TeaCursor cursor, int limit, TeaSink sink) throws IOException {
+		final Comparator<Tea> order = comparator();
+		Comparator<Ranked> ranked = new Comparator<Ranked>() {
+			@Override
+			public int compare(Ranked a, Ranked b) {
+				int result = order.compare(a.tea, b.tea);
+				return result != 0 ? result : Long.compare(a.sequence, b.sequence);
+			}
+		};
+		PriorityQueue<Ranked> kept = new PriorityQueue<Ranked>(Math.max(1, limit) + 1, Collections.reverseOrder(ranked));
+		long sequence = 0;
+		Tea tea;
+		while((tea = cursor.next()) != null) {
+			kept.add(new Ranked(tea, sequence++));
+			if(kept.size() > limit) {
+				kept.poll();
+			}
+		}
+		List<Ranked> first = new ArrayList<Ranked>(kept);
+		Collections.sort(first, ranked);
+		for(Ranked r : first) {
+			sink.write(r.tea);
+		}
+	}
+
+	/**
+	 * Gets a comparator for tea in the order of the sorter.
+	 * 
+	 * @return The comparator
+	 */
+	public Comparator<Tea> comparator() {
+		return SortKey.comparator(keys);
+	}
+
+	/**
+	 * Sorts a table and writes it to a temporary file.
+	 * 
+	 * @param table The tea of the run
+	 * @return The file of the run
+	 * @throws IOException If the file could not be written
+	 */
+	private File spill(TeaTable table) throws IOException {
+		File run = File.createTempFile("tealist-sort-", ".bin");
+		boolean succeeded = false;
+		try {
+			TeaSink sink = new BinaryWriter().openSink(run.getPath());
+			try {
+				for(int row : order(table)) {
+					sink.write(table.get(row));
+				}
+			}
+			finally {
+				sink.close();
+			}
+			succeeded = true;
+		}
+		finally {
+			if(!succeeded) {
+				delete(run);
+			}
+		}
+		return run;
+	}
+
+	/**
+	 * Gets how many runs can be merged at once in the memory limit. Each
+	 * run holds a decoded block, and so does the sink when runs are merged
+	 * into a longer run.
+	 * 
+	 * @param runs The runs
+	 * @param count The number of tea in the runs
+	 * @return The number of runs, at least 2
+	 */
+	private int fanIn(List<File> runs, long count) {
+		long bytes = 0;
+		for(File run : runs) {
+			bytes += run.length();
+		}
+		long blockBytes = BinaryFormat.BLOCK_SIZE * (bytes / Math.max(1, count) + MERGE_BYTES_PER_TEA);
+		return (int) Math.max(2, Math.min(MAX_MERGE_RUNS, memoryLimit / blockBytes - 1));
+	}
+
+	/**
+	 * Merges groups of runs into longer runs. The runs that are merged are
+	 * deleted.
+	 * 
+	 * @param runs The runs in the order they were read
+	 * @param fanIn The number of runs merged into each longer run
+	 * @return The longer runs, in the same order
+	 * @throws IOException If a run could not be read or written
+	 */
+	private List<File> mergeRuns(List<File> runs, int fanIn) throws IOException {
+		List<File> merged = new ArrayList<File>();
+		boolean succeeded = false;
+		try {
+			for(int start = 0; start < runs.size(); start += fanIn) {
+				List<File> group = runs.subList(start, Math.min(runs.size(), start + fanIn));
+				File run = File.createTempFile("tealist-sort-", ".bin");
+				merged.add(run);
+				TeaSink sink = new BinaryWriter().openSink(run.getPath());
+				try {
+					merge(group, sink);
+				}
+				finally {
+					sink.close();
+				}
+			}
+			succeeded = true;
+		}
+		finally {
+			if(!succeeded) {
+				for(File run : merged) {
+					delete(run);
+				}
+			}
+		}
+		for(File run : runs) {
+			delete(run);
+		}
+		return merged;
+	}
+
+	/**
+	 * Merges sorted runs into a sink. Of tea that are equal, the tea of the
+	 * earlier run is written first, which keeps the sort stable.
+	 * 
+	 * @param runs The runs in the order they were read
+	 * @param sink The sink to write the merged tea to
+	 * @throws IOException If a run could not be read
+	 */
+	private void merge(List<File> runs, TeaSink sink) throws IOException {
+		final Comparator<Tea> order = comparator();
+		PriorityQueue<Head> heads = new PriorityQueue<Head>(runs.size(), new Comparator<Head>() {
+			@Override
+			public int compare(Head a, Head b) {
+				int result = order.compare(a.tea, b.tea);
+				return result != 0 ? result : Integer.compare(a.run, b.run);
+			}
+		});
+		List<TeaCursor> cursors = new ArrayList<TeaCursor>();
+		try {
+			BinaryReader reader = new BinaryReader();
+			for(int i = 0; i < runs.size(); i++) {
+				TeaCursor cursor = reader.openCursor(runs.get(i).getPath());
+				cursors.add(cursor);
+				Tea tea = cursor.next();
+				if(tea != null) {
+					heads.add(new Head(tea, i, cursor));
+				}
+			}
+			Head head;
+			while((head = heads.poll()) != null) {
+				sink.write(head.tea);
+				head.tea = head.cursor.next();
+				if(head.tea != null) {
+					heads.add(head);
+				}
+			}
+		}
+		finally {
+			for(TeaCursor cursor : cursors) {
+				cursor.close();
+			}
+		}
+	}
+
+	/**
+	 * Deletes a run, or deletes it when the program ends if it is still
+	 * open somewhere.
+	 * 
+	 * @param run The file of the run
+	 */
+	private static void delete(File run) {
+		if(!run.delete() && run.exists()) {
+			run.deleteOnExit();
+		}
+	}
+
+	/**
+	 * Sorts the rows of a table. Every row gets a value per sort key that is
+	 * decoded only once, categories are compared by their rank in the
+	 * dictionary. The rows are sorted in parallel by the common fork/join
+	 * pool.
+	 * 
+	 * @param table The table
+	 * @return The rows in sorted order
+	 */
+	public Integer[] order(final TeaTable table) {
+		Integer[] rows = new Integer[table.size()];
+		for(int i = 0; i < rows.length; i++) {
+			rows[i] = i;
+		}
+		final int[] signs = new int[keys.size()];
+		final int[][] numbers = new int[keys.size()][];
+		final String[][] texts = new String[keys.size()][];
+		for(int k = 0; k < signs.length; k++) {
+			SortField field = keys.get(k).getField();
+			signs[k] = keys.get(k).isDescending() ? -1 : 1;
+			if(field == SortField.PRICE || field == SortField.CATEGORY) {
+				int[] values = new int[table.size()];
+				int[] ranks = field == SortField.CATEGORY ? categoryRanks(table.getCategories()) : null;
+				for(int i = 0; i < values.length; i++) {
+					values[i] = ranks == null ? table.getPrice(i) : ranks[table.getCategoryCode(i)];
+				}
+				numbers[k] = values;
+			}
+			else {
+				String[] values = new String[table.size()];
+				for(int i = 0; i < values.length; i++) {
+					values[i] = field == SortField.NAME ? table.getName(i) : table.getDescription(i);
+				}
+				texts[k] = values;
+			}
+		}
+		Arrays.parallelSort(rows, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				for(int k = 0; k < signs.length; k++) {
+					int result = numbers[k] != null ? Integer.compare(numbers[k][a], numbers[k][b])
+							: texts[k][a].compareTo(texts[k][b]);
+					if(result != 0) {
+						return signs[k] * result;
+					}
+				}
+				return 0;
+			}
+		});
+		return rows;
+	}
+
+	/**
+	 * Ranks the categories of a dictionary in sorted order.
+	 * 
+	 * @param categories The categories in code order
+	 * @return The rank of each code
+	 */
+	private static int[] categoryRanks(final List<String> categories) {
+		Integer[] codes = new Integer[categories.size()];
+		for(int i = 0; i < codes.length; i++) {
+			codes[i] = i;
+		}
+		Arrays.sort(codes, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return categories.get(a).compareTo(categories.get(b));
+			}
+		});
+		int[] ranks = new int[codes.length];
+		for(int rank = 0; rank < codes.length; rank++) {
+			ranks[codes[rank]] = rank;
+		}
+		return ranks;
+	}
+
+	/**
+	 * The next tea of a run that is merged.
+	 */
+	private static class Head {
+		private Tea tea;
+		private int run;
+		private TeaCursor cursor;
+
+		/**
+		 * Constructs a head
+		 * 
+		 * @param tea The next tea of the run
+		 * @param run The order of the run
+		 * @param cursor The rest of the run
+		 */
+		private Head(Tea tea, int run, TeaCursor cursor) {
+			this.tea = tea;
+			this.run = run;
+			this.cursor = cursor;
+		}
+	}
+
+	/**
+	 * A tea and the order it was read in.
+	 */
+	private static class Ranked {
+		private Tea tea;
+		private long sequence;
+
+		/**
+		 * Constructs a ranked tea
+		 * 
+		 * @param tea The tea
+		 * @param sequence The order it was read in
+		 */
+		private Ranked(Tea tea, long sequence) {
+			this.tea = tea;
+			this.sequence = sequence;
+		}
+	}
+}
@@ -0,0 +1,519 @@
+package converter.readers;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import converter.BinaryFormat;
+import converter.Compression;
+import tealist.Tea;
+import tealist.TeaTable;
+
+/**
+ * BinaryReader can read a file in the compact binary format described in
+ * {@link BinaryFormat}. Each block is memory mapped and decoded column by
+ * column, the categories are decoded only once per file. With a filter,
+ * blocks without any accepted price are skipped and only the names and
+ * descriptions of accepted tea are decoded. Names and descriptions are
+ * returned undecoded in a {@link LazyTea}, and a description the filter
+ * does not need is skipped. The blocks of a compressed file are
+ * decompressed into a buffer instead of being mapped.
+ *
+ * @author Mats Palm
+ */
+public class BinaryReader implements TeaFileReader {
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<Tea> readFile(String fileName) throws IOException {
+		List<Tea> teaList = new ArrayList<Tea>();
+
+		TeaCursor cursor = openCursor(fileName);
+		try
+		{
+			Tea tea;
+			while((tea = cursor.next()) != null)
+			{
+				teaList.add(tea);
+			}
+		}
+		finally
+		{
+			cursor.close();
+		}
+		return teaList;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TeaTable readTable(String fileName) throws IOException {
+		TeaTable table = new TeaTable();
+
+		TeaCursor cursor = openCursor(fileName);
+		try
+		{
+			Tea tea;
+			while((tea = cursor.next()) != null)
+			{
+				table.add(tea);
+			}
+		}
+		finally
+		{
+			cursor.close();
+		}
+		table.trimToSize();
+		return table;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TeaCursor openCursor(String fileName) throws IOException {
+		return openCursor(fileName, null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TeaCursor openCursor(String fileName, TeaFilter filter) throws IOException {
+		File file = new File(fileName);
+		if(!file.exists() || !file.isFile())
+		{
+			throw new IOException("The file " + fileName +  " does not exist");
+		}
+		Compression compression = Compression.detect(file);
+		if(compression != Compression.NONE)
+		{
+			return openCursor(compression.open(file), fileName, filter);
+		}
+		FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+		try
+		{
+			return new BinaryCursor(channel, fileName, filter);
+		}
+		catch(IOException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TeaCursor openCursor(InputStream in, String fileName, TeaFilter filter) throws IOException {
+		try
+		{
+			return new BinaryCursor(in, fileName, filter);
+		}
+		catch(IOException e)
+		{
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads a single tea of a block, such as a tea an index points at,
+	 * without decoding the rest of the block.
+	 *
+	 * @param block The block after its length, positioned at the tea count
+	 * @param row Index of the tea in the block
+	 * @param categories All categories of the file in the order of their codes
+	 * @param fileName Name of the file, used in error messages
+	 * @return The tea
+	 * @throws IOException If the block is not correct
+	 */
+	public Tea readRow(ByteBuffer block, int row, List<String> categories, String fileName) throws IOException {
+		try
+		{
+			int count = block.getInt();
+			int minPrice = block.getInt();
+			block.getInt();
+			int newCategories = block.getInt();
+			for(int i = 0; i < newCategories; i++)
+			{
+				int length = block.getInt();
+				block.position(block.position() + length);
+			}
+			if(row < 0 || row >= count)
+			{
+				throw new IOException("Input file (" + fileName + ") not correct format");
+			}
+			int codeWidth = block.get();
+			int code = BinaryFormat.getUnsigned(cell(block, row, count, codeWidth), codeWidth);
+			int priceWidth = block.get();
+			int price = minPrice + BinaryFormat.getUnsigned(cell(block, row, count, priceWidth), priceWidth);
+			if(code >= categories.size())
+			{
+				throw new IOException("Unknown category");
+			}
+			ByteBuffer name = text(block, row, count);
+			ByteBuffer description = text(block, row, count);
+
+			byte[] text = new byte[name.remaining() + description.remaining()];
+			int nameLength = name.remaining();
+			name.get(text, 0, nameLength);
+			description.get(text, nameLength, description.remaining());
+			return new LazyTea(categories.get(code), price, text, nameLength);
+		}
+		catch(RuntimeException e)
+		{
+			throw new IOException("Input file (" + fileName + ") not correct format");
+		}
+	}
+
+	/**
+	 * Finds the value of one tea in a column of numbers and moves the
+	 * block past the column.
+	 *
+	 * @param block The block positioned at the column
+	 * @param row Index of the tea
+	 * @param count Number of tea in the block
+	 * @param width Width of the numbers
+	 * @return A buffer positioned at the value
+	 */
+	private static ByteBuffer cell(ByteBuffer block, int row, int count, int width) {
+		ByteBuffer cell = block.duplicate();
+		cell.position(block.position() + row * width);
+		block.position(block.position() + count * width);
+		return cell;
+	}
+
+	/**
+	 * Finds the bytes of one tea in a text column and moves the block
+	 * past the column.
+	 *
+	 * @param block The block positioned at the lengths of the column
+	 * @param row Index of the tea
+	 * @param count Number of tea in the block
+	 * @return A buffer with the bytes of the text from its position to its limit
+	 */
+	private static ByteBuffer text(ByteBuffer block, int row, int count) {
+		int offset = 0;
+		int length = 0;
+		int total = 0;
+		for(int i = 0; i < count; i++)
+		{
+			int next = block.getInt();
+			if(i == row)
+			{
+				offset = total;
+				length = next;
+			}
+			total += next;
+		}
+		ByteBuffer text = block.duplicate();
+		text.position(block.position() + offset);
+		text.limit(block.position() + offset + length);
+		block.position(block.position() + total);
+		return text;
+	}
+
+	/**
+	 * Decodes one block at a time and returns its tea. The blocks are
+	 * either mapped from a file or read from a stream.
+	 */
+	private static class BinaryCursor implements TeaCursor {
+		private FileChannel channel;
+		private DataInputStream in;
+		private byte[] blockBytes = new byte[0];
+		private String fileName;
+		private TeaFilter filter;
+		private boolean nameNeeded;
+		private boolean descriptionNeeded;
+		private long position;
+		private long size;
+		private boolean ended;
+
+		private List<String> categories = new ArrayList<String>();
+		private int count;
+		private int row;
+		private int[] codes = new int[0];
+		private int[] prices = new int[0];
+		private int[] nameOffsets = new int[1];
+		private int[] descriptionOffsets = new int[1];
+		private byte[] names = new byte[0];
+		private byte[] descriptions = new byte[0];
+
+		/**
+		 * Constructs a cursor and checks the header
+		 *
+		 * @param channel The file
+		 * @param fileName Name of the file, used in error messages
+		 * @param filter The filter the tea must pass, or null
+		 * @throws IOException If the file is not in the binary format
+		 */
+		private BinaryCursor(FileChannel channel, String fileName, TeaFilter filter) throws IOException {
+			this.channel = channel;
+			this.fileName = fileName;
+			setFilter(filter);
+			this.size = channel.size();
+			checkHeader();
+		}
+
+		/**
+		 * Constructs a cursor over a stream and checks the header
+		 *
+		 * @param in The stream
+		 * @param fileName Name of the file, used in error messages
+		 * @param filter The filter the tea must pass, or null
+		 * @throws IOException If the stream is not in the binary format
+		 */
+		private BinaryCursor(InputStream in, String fileName, TeaFilter filter) throws IOException {
+			this.in = new DataInputStream(in);
+			this.fileName = fileName;
+			setFilter(filter);
+			checkHeader();
+		}
+
+		/**
+		 * Sets the filter the tea must pass and that names the fields to read.
+		 *
+		 * @param filter The filter, or null
+		 */
+		private void setFilter(TeaFilter filter) {
+			this.filter = filter == null || filter.acceptsAll() ? null : filter;
+			this.nameNeeded = filter == null || filter.needsField(Tea.NAME);
+			this.descriptionNeeded = filter == null || filter.needsField(Tea.DESCRIPTION);
+		}
+
+		/**
+		 * Reads the header and checks that it is of the binary format.
+		 *
+		 * @throws IOException If the file is not in the binary format
+		 */
+		private void checkHeader() throws IOException {
+			ByteBuffer header = read(BinaryFormat.HEADER_SIZE);
+			if(header.getInt() != BinaryFormat.MAGIC || header.getShort() != BinaryFormat.VERSION)
+			{
+				throw new IOException("Input file (" + fileName + ") not correct format");
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Tea next() throws IOException {
+			while(true)
+			{
+				while(row == count)
+				{
+					if(ended || !readBlock())
+					{
+						return null;
+					}
+				}
+				int i = row++;
+				if(filter == null
+						|| filter.acceptsCategory(categories.get(codes[i]))
+						&& filter.acceptsPrice(prices[i])
+						&& filter.acceptsName(names, nameOffsets[i], nameOffsets[i + 1]))
+				{
+					// The columns are reused for the next block, so the text is copied
+					int nameLength = nameNeeded ? nameOffsets[i + 1] - nameOffsets[i] : 0;
+					int descriptionLength = descriptionNeeded ? descriptionOffsets[i + 1] - descriptionOffsets[i] : 0;
+					byte[] text = new byte[nameLength + descriptionLength];
+					System.arraycopy(names, nameOffsets[i], text, 0, nameLength);
+					System.arraycopy(descriptions, descriptionOffsets[i], text, nameLength, descriptionLength);
+					return new LazyTea(categories.get(codes[i]), prices[i], text, nameLength);
+				}
+			}
+		}
+
+		/**
+		 * Reads and decodes the next block.
+		 *
+		 * @return false if there are no more blocks
+		 * @throws IOException If the block is not correct
+		 */
+		private boolean readBlock() throws IOException {
+			int length = read(4).getInt();
+			if(length == 0)
+			{
+				ended = true;
+				return false;
+			}
+			if(length < 0 || channel != null && position + length > size)
+			{
+				throw new IOException("Input file (" + fileName + ") not correct format");
+			}
+			ByteBuffer block = readBlockBytes(length);
+
+			try
+			{
+				count = block.getInt();
+				int minPrice = block.getInt();
+				int maxPrice = block.getInt();
+
+				int newCategories = block.getInt();
+				for(int i = 0; i < newCategories; i++)
+				{
+					byte[] bytes = new byte[block.getInt()];
+					block.get(bytes);
+					categories.add(new String(bytes, StandardCharsets.UTF_8));
+				}
+				if(filter != null && !filter.acceptsPriceRange(minPrice, maxPrice))
+				{
+					// Nothing in the block is accepted, only its categories are needed
+					count = 0;
+					row = 0;
+					return true;
+				}
+				if(codes.length < count)
+				{
+					codes = new int[count];
+					prices = new int[count];
+					nameOffsets = new int[count + 1];
+					descriptionOffsets = new int[count + 1];
+				}
+				int codeWidth = block.get();
+				for(int i = 0; i < count; i++)
+				{
+					codes[i] = BinaryFormat.getUnsigned(block, codeWidth);
+					if(codes[i] >= categories.size())
+					{
+						throw new IOException("Unknown category");
+					}
+				}
+				int priceWidth = block.get();
+				for(int i = 0; i < count; i++)
+				{
+					prices[i] = minPrice + BinaryFormat.getUnsigned(block, priceWidth);
+				}
+				names = getColumn(block, nameOffsets, names);
+				if(descriptionNeeded)
+				{
+					descriptions = getColumn(block, descriptionOffsets, descriptions);
+				}
+			}
+			catch(RuntimeException e)
+			{
+				throw new IOException("Input file (" + fileName + ") not correct format");
+			}
+			row = 0;
+			return true;
+		}
+
+		/**
+		 * Gets the lengths and bytes of a text column.
+		 *
+		 * @param block The block positioned at the column
+		 * @param offsets Gets the offset of each text in the bytes, and the total length last
+		 * @param bytes An array that is reused if it is large enough
+		 * @return The bytes of the column
+		 */
+		private byte[] getColumn(ByteBuffer block, int[] offsets, byte[] bytes) {
+			offsets[0] = 0;
+			for(int i = 0; i < count; i++)
+			{
+				offsets[i + 1] = offsets[i] + block.getInt();
+			}
+			if(bytes.length < offsets[count])
+			{
+				bytes = new byte[offsets[count]];
+			}
+			block.get(bytes, 0, offsets[count]);
+			return bytes;
+		}
+
+		/**
+		 * Gets the bytes of a block, mapped from the file or read from the
+		 * stream into a buffer that is reused for the next block.
+		 *
+		 * @param length Number of bytes in the block
+		 * @return A buffer with the bytes
+		 * @throws IOException If the file is too short
+		 */
+		private ByteBuffer readBlockBytes(int length) throws IOException {
+			if(channel != null)
+			{
+				ByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+				position += length;
+				return block;
+			}
+			if(blockBytes.length < length)
+			{
+				blockBytes = new byte[length];
+			}
+			readFully(blockBytes, length);
+			return ByteBuffer.wrap(blockBytes, 0, length);
+		}
+
+		/**
+		 * Reads the next bytes of the file.
+		 *
+		 * @param length Number of bytes
+		 * @return A buffer with the bytes
+		 * @throws IOException If the file is too short
+		 */
+		private ByteBuffer read(int length) throws IOException {
+			ByteBuffer buf = ByteBuffer.allocate(length);
+			if(in != null)
+			{
+				readFully(buf.array(), length);
+				return buf;
+			}
+			while(buf.hasRemaining())
+			{
+				if(channel.read(buf, position + buf.position()) < 0)
+				{
+					throw new IOException("Input file (" + fileName + ") not correct format");
+				}
+			}
+			position += length;
+			buf.flip();
+			return buf;
+		}
+
+		/**
+		 * Reads the next bytes of the stream.
+		 *
+		 * @param bytes The array to read into
+		 * @param length Number of bytes
+		 * @throws IOException If the stream is too short
+		 */
+		private void readFully(byte[] bytes, int length) throws IOException {
+			try
+			{
+				in.readFully(bytes, 0, length);
+			}
+			catch(EOFException e)
+			{
+				throw new IOException("Input file (" + fileName + ") not correct format");
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void close() throws IOException {
+			if(channel != null)
+			{
+				channel.close();
+			}
+			else
+			{
+				in.close();
+			}
+		}
+	}
+}
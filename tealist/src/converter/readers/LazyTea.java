@@ -0,0 +1,81 @@
+package converter.readers;
+
+import java.nio.charset.StandardCharsets;
+
+import tealist.Tea;
+
+/**
+ * A LazyTea keeps the UTF-8 bytes of its name and description and only
+ * decodes them when they are first asked for, so tea that is counted,
+ * filtered or sorted by price and then dropped never has its text decoded.
+ *
+ * The bytes are a copy of the fields only, not of the buffer they were read
+ * from, so a tea does not keep a whole block or line buffer alive. A tea
+ * that is shared between threads may decode a field on more than one of
+ * them, which gives equal strings.
+ *
+ * @author Mats Palm
+ */
+class LazyTea extends Tea {
+	private byte[] text;
+	private int nameLength;
+	/* Decoded text, null until asked for. Strings are immutable, so a racy read is safe. */
+	private String name;
+	private String description;
+
+	/**
+	 * Constructs a tea
+	 *
+	 * @param category The tea category
+	 * @param price The price
+	 * @param text The UTF-8 bytes of the name followed by those of the description
+	 * @param nameLength Number of bytes of the name
+	 */
+	LazyTea(String category, int price, byte[] text, int nameLength) {
+		super(category, null, price, null);
+		this.text = text;
+		this.nameLength = nameLength;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getName() {
+		String decoded = name;
+		if(decoded == null) {
+			decoded = new String(text, 0, nameLength, StandardCharsets.UTF_8);
+			name = decoded;
+		}
+		return decoded;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getDescription() {
+		String decoded = description;
+		if(decoded == null) {
+			decoded = new String(text, nameLength, text.length - nameLength, StandardCharsets.UTF_8);
+			description = decoded;
+		}
+		return decoded;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setDescription(String description) {
+		this.description = description;
+	}
+}
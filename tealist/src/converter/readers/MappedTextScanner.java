@@ -0,0 +1,72 @@
+package converter.readers;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * MappedTextScanner scans a range of a text file that is memory mapped,
+ * one window at a time so files larger than a single mapping can be read.
+ *
+ * @author Mats Palm
+ */
+class MappedTextScanner extends TextScanner {
+	private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+	private FileChannel channel;
+	private long windowStart;
+	private long end;
+	private boolean closeChannel;
+
+	/**
+	 * Constructs a scanner for a range of a file
+	 *
+	 * @param channel The file
+	 * @param start Position of the first byte to scan
+	 * @param end Position after the last byte to scan
+	 * @param fileName Name of the file, used in error messages
+	 * @param closeChannel true if the file should be closed with the scanner
+	 * @throws IOException If the file could not be mapped
+	 */
+	MappedTextScanner(FileChannel channel, long start, long end, String fileName, boolean closeChannel) throws IOException {
+		super(fileName);
+		this.channel = channel;
+		this.windowStart = start;
+		this.end = end;
+		this.closeChannel = closeChannel;
+		map(start);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected boolean fill() throws IOException {
+		long next = windowStart + buf.position();
+		if(next >= end) {
+			return false;
+		}
+		map(next);
+		return true;
+	}
+
+	/**
+	 * Maps the next window of the file.
+	 *
+	 * @param start Position of the first byte in the window
+	 * @throws IOException If the file could not be mapped
+	 */
+	private void map(long start) throws IOException {
+		windowStart = start;
+		buf = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, end - start));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException {
+		if(closeChannel) {
+			channel.close();
+		}
+	}
+}
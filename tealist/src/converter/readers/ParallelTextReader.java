@@ -0,0 +1,245 @@
+package converter.readers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import converter.Compression;
+
+import tealist.Tea;
+
+/**
+ * ParallelTextReader can read a plain text input file using several threads.
+ *
+ * The file is split in chunks that start and end at line breaks. The chunks
+ * are parsed concurrently on a {@link ForkJoinPool} and the tea is returned
+ * in the same order as in the file. Only a few chunks per thread are parsed
+ * ahead of the chunk being read, so memory use does not grow with the size
+ * of the file.
+ *
+ * The threads are either started for each cursor, or taken from a pool
+ * that is shared by several readers and outlives them. A compressed file
+ * can only be decompressed from the start, so it is read by one thread.
+ *
+ * @author Mats Palm
+ */
+public class ParallelTextReader extends TextReader {
+	private static final long CHUNK_SIZE = 4L * 1024 * 1024;
+	private static final int CHUNKS_AHEAD_PER_THREAD = 2;
+
+	private int parallelism;
+	private ForkJoinPool pool;
+
+	/**
+	 * Constructs a reader that starts new threads for each cursor
+	 *
+	 * @param parallelism Number of threads parsing the file
+	 */
+	public ParallelTextReader(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Constructs a reader that parses on the threads of a shared pool. The
+	 * pool is not shut down by the reader.
+	 *
+	 * @param pool The pool
+	 */
+	public ParallelTextReader(ForkJoinPool pool) {
+		this.parallelism = pool.getParallelism();
+		this.pool = pool;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TeaCursor openCursor(String fileName, TeaFilter filter) throws IOException {
+		if(parallelism <= 1)
+		{
+			return super.openCursor(fileName, filter);
+		}
+		File file = new File(fileName);
+		if(!file.exists() || !file.isFile())
+		{
+			throw new IOException("The file " + fileName +  " does not exist");
+		}
+		if(Compression.detect(file) != Compression.NONE)
+		{
+			return super.openCursor(fileName, filter);
+		}
+		FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+		if(pool == null)
+		{
+			return new ParallelCursor(channel, fileName, filter, new ForkJoinPool(parallelism), true);
+		}
+		return new ParallelCursor(channel, fileName, filter, pool, false);
+	}
+
+	/**
+	 * Finds the start of the first line that starts at or after a position.
+	 *
+	 * @param channel The file
+	 * @param position The position to start looking at
+	 * @param size Size of the file
+	 * @return Position after the next \n, or size if there is none
+	 * @throws IOException If there was an I/O error
+	 */
+	private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(8 * 1024);
+		while(position < size)
+		{
+			buf.clear();
+			int read = channel.read(buf, position);
+			if(read <= 0)
+			{
+				break;
+			}
+			for(int i = 0; i < read; i++)
+			{
+				if(buf.get(i) == '\n')
+				{
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	/**
+	 * Hands out chunks to the pool and returns the parsed tea in order.
+	 */
+	private static class ParallelCursor implements TeaCursor {
+		private FileChannel channel;
+		private String fileName;
+		private TeaFilter filter;
+		private ForkJoinPool pool;
+		private boolean ownsPool;
+		private long size;
+		private long nextChunk;
+		private int maxAhead;
+		private Deque<Future<List<Tea>>> parsing = new ArrayDeque<Future<List<Tea>>>();
+		private Iterator<Tea> current;
+
+		/**
+		 * Constructs a cursor and starts parsing the first chunks
+		 *
+		 * @param channel The file
+		 * @param fileName Name of the file, used in error messages
+		 * @param filter The filter the tea must pass, or null
+		 * @param pool The threads parsing the file
+		 * @param ownsPool true if the pool is shut down when the cursor is closed
+		 * @throws IOException If there was an I/O error
+		 */
+		private ParallelCursor(FileChannel channel, String fileName, TeaFilter filter, ForkJoinPool pool,
+				boolean ownsPool) throws IOException {
+			this.channel = channel;
+			this.fileName = fileName;
+			this.filter = filter;
+			this.pool = pool;
+			this.ownsPool = ownsPool;
+			this.maxAhead = pool.getParallelism() * CHUNKS_AHEAD_PER_THREAD;
+			try
+			{
+				this.size = channel.size();
+				fillAhead();
+			} catch (IOException e)
+			{
+				close();
+				throw e;
+			}
+		}
+
+		/**
+		 * Submits chunks until enough chunks are parsed ahead.
+		 *
+		 * @throws IOException If there was an I/O error
+		 */
+		private void fillAhead() throws IOException {
+			while(parsing.size() < maxAhead && nextChunk < size)
+			{
+				final long start = nextChunk;
+				final long end = nextLineStart(channel, Math.min(start + CHUNK_SIZE, size), size);
+				nextChunk = end;
+				parsing.addLast(pool.submit(new Callable<List<Tea>>() {
+					@Override
+					public List<Tea> call() throws IOException {
+						List<Tea> teaList = new ArrayList<Tea>();
+						TextScanner chunk = new MappedTextScanner(channel, start, end, fileName, false);
+						chunk.setFilter(filter);
+						Tea tea;
+						while((tea = chunk.next()) != null)
+						{
+							teaList.add(tea);
+						}
+						return teaList;
+					}
+				}));
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Tea next() throws IOException {
+			while(current == null || !current.hasNext())
+			{
+				Future<List<Tea>> chunk = parsing.pollFirst();
+				if(chunk == null)
+				{
+					return null;
+				}
+				fillAhead();
+				try
+				{
+					current = chunk.get().iterator();
+				} catch (ExecutionException e)
+				{
+					if(e.getCause() instanceof IOException)
+					{
+						throw (IOException) e.getCause();
+					}
+					throw new IOException("Input file (" + fileName + ") not correct format");
+				} catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					throw new IOException("Reading " + fileName + " was interrupted");
+				}
+			}
+			return current.next();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void close() throws IOException {
+			if(ownsPool)
+			{
+				pool.shutdownNow();
+			}
+			else
+			{
+				for(Future<List<Tea>> chunk : parsing)
+				{
+					chunk.cancel(true);
+				}
+			}
+			parsing.clear();
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package converter.readers;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+import tealist.Tea;
+
+/**
+ * A PipelinedCursor reads another cursor on a separate thread, so parsing
+ * the input overlaps with whatever the caller does with the tea, such as
+ * encoding and writing it.
+ *
+ * The reading thread fills batches of tea in a ring of preallocated slots
+ * and hands over a whole batch at a time, so the threads only synchronize
+ * once per batch. When the ring is full the reading thread waits until the
+ * caller has taken a batch, so no more than {@link #RING_SIZE} batches are
+ * ever held in memory. A fault while reading is handed over after the tea
+ * read before it and thrown by {@link #next()}.
+ *
+ * Like other cursors it must only be used by one thread at a time.
+ *
+ * @author Mats Palm
+ */
+public class PipelinedCursor implements TeaCursor {
+	public static final int BATCH_SIZE = 1024;
+	public static final int RING_SIZE = 8;
+
+	private TeaCursor source;
+	private Tea[][] ring = new Tea[RING_SIZE][BATCH_SIZE];
+	private int[] sizes = new int[RING_SIZE];
+	private CountDownLatch finished = new CountDownLatch(1);
+
+	/* Shared by both threads, guarded by this */
+	private long published;
+	private long consumed;
+	private boolean ended;
+	private boolean closed;
+	private Throwable failure;
+
+	/* Only used by the caller */
+	private Tea[] current;
+	private int currentSize;
+	private int position;
+
+	/**
+	 * Constructs a cursor and starts reading the source
+	 *
+	 * @param source The cursor to read, it is closed when this cursor is closed
+	 * @param executor Runs the reading thread
+	 */
+	public PipelinedCursor(TeaCursor source, ExecutorService executor) {
+		this.source = source;
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				produce();
+			}
+		});
+	}
+
+	/**
+	 * Reads the source into the ring until the source ends, fails or this
+	 * cursor is closed.
+	 */
+	private void produce() {
+		try {
+			while(true) {
+				int slot;
+				synchronized(this) {
+					while(published - consumed == RING_SIZE && !closed) {
+						wait();
+					}
+					if(closed) {
+						return;
+					}
+					slot = (int) (published % RING_SIZE);
+				}
+
+				Tea[] batch = ring[slot];
+				int size = 0;
+				Tea tea = null;
+				while(size < BATCH_SIZE && (tea = source.next()) != null) {
+					batch[size++] = tea;
+				}
+
+				synchronized(this) {
+					sizes[slot] = size;
+					published++;
+					ended = tea == null;
+					notifyAll();
+				}
+				if(tea == null) {
+					return;
+				}
+			}
+		}
+		catch(InterruptedException e) {
+			synchronized(this) {
+				failure = new IOException("Reading was interrupted");
+				notifyAll();
+			}
+		}
+		catch(Throwable e) {
+			synchronized(this) {
+				failure = e;
+				notifyAll();
+			}
+		}
+		finally {
+			finished.countDown();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Tea next() throws IOException {
+		while(position == currentSize) {
+			if(!takeBatch()) {
+				return null;
+			}
+		}
+		Tea tea = current[position];
+		// The slot is refilled later, the tea should not be kept alive by it
+		current[position++] = null;
+		return tea;
+	}
+
+	/**
+	 * Gives back the batch that has been read and waits for the next one.
+	 *
+	 * @return false if there are no more batches
+	 * @throws IOException If reading the source failed
+	 */
+	private synchronized boolean takeBatch() throws IOException {
+		if(current != null) {
+			current = null;
+			consumed++;
+			notifyAll();
+		}
+		while(consumed == published && failure == null && !ended) {
+			try {
+				wait();
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Waiting for tea was interrupted");
+			}
+		}
+		if(consumed < published) {
+			int slot = (int) (consumed % RING_SIZE);
+			current = ring[slot];
+			currentSize = sizes[slot];
+			position = 0;
+			return true;
+		}
+		if(failure instanceof IOException) {
+			throw (IOException) failure;
+		}
+		if(failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		}
+		if(failure instanceof Error) {
+			throw (Error) failure;
+		}
+		return false;
+	}
+
+	/**
+	 * Stops the reading thread, waits for it to finish its batch and
+	 * closes the source.
+	 *
+	 * @throws IOException If the source could not be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized(this) {
+			closed = true;
+			notifyAll();
+		}
+		try {
+			finished.await();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		source.close();
+	}
+}
@@ -0,0 +1,109 @@
+package converter.readers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import tealist.Tea;
+
+/**
+ * A SpooledCursor lets a reader that only reads files read a stream. The
+ * stream is copied to a temporary file, which the reader opens, and the
+ * file is removed when the cursor is closed. It is used by the default
+ * {@link TeaFileReader#openCursor(InputStream, String, TeaFilter)}.
+ *
+ * @author Mats Palm
+ */
+class SpooledCursor implements TeaCursor {
+	private TeaCursor cursor;
+	private File file;
+
+	/**
+	 * Constructs a cursor
+	 *
+	 * @param cursor The cursor reading the temporary file
+	 * @param file The temporary file
+	 */
+	private SpooledCursor(TeaCursor cursor, File file) {
+		this.cursor = cursor;
+		this.file = file;
+	}
+
+	/**
+	 * Copies a stream to a temporary file and opens a cursor over it.
+	 *
+	 * @param reader The reader of the format
+	 * @param in The stream, it is closed when it has been copied
+	 * @param filter The filter or null to return all tea
+	 * @return The cursor
+	 * @throws IOException If the stream could not be copied or the file could not be opened
+	 */
+	static TeaCursor open(TeaFileReader reader, InputStream in, TeaFilter filter) throws IOException {
+		File file;
+		try {
+			file = File.createTempFile("tealist-", ".tmp");
+		}
+		catch(IOException e) {
+			in.close();
+			throw e;
+		}
+		boolean opened = false;
+		try {
+			try {
+				Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			finally {
+				in.close();
+			}
+			TeaCursor cursor = reader.openCursor(file.getPath(), filter);
+			opened = true;
+			return new SpooledCursor(cursor, file);
+		}
+		finally {
+			if(!opened) {
+				delete(file);
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Tea next() throws IOException {
+		return cursor.next();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The temporary file is removed.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(file == null) {
+			return;
+		}
+		try {
+			cursor.close();
+		}
+		finally {
+			delete(file);
+			file = null;
+		}
+	}
+
+	/**
+	 * Deletes a file, or deletes it when the program ends if it can not be
+	 * deleted now.
+	 *
+	 * @param file The file
+	 */
+	private static void delete(File file) {
+		if(!file.delete() && file.exists()) {
+			file.deleteOnExit();
+		}
+	}
+}
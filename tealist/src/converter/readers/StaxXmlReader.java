@@ -0,0 +1,284 @@
+package converter.readers;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import converter.Compression;
+import tealist.Tea;
+import tealist.TeaTable;
+
+/**
+ * StaxXmlReader can read a XML input file. The file is read as a stream of
+ * events, so each tea is built in a single pass without keeping a document
+ * of the whole file in memory. A compressed file is decompressed while it
+ * is read. The text of a name or description the filter does not need is
+ * skipped without being turned into a string.
+ *
+ * @author Mats Palm
+ */
+public class StaxXmlReader implements TeaFileReader {
+
+	/* Creating readers from a configured factory is thread safe */
+	private static final XMLInputFactory FACTORY = createFactory();
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<Tea> readFile(String fileName) throws IOException {
+		List<Tea> teaList = new ArrayList<Tea>();
+
+		TeaCursor cursor = openCursor(fileName);
+		try
+		{
+			Tea tea;
+			while((tea = cursor.next()) != null)
+			{
+				teaList.add(tea);
+			}
+		}
+		finally
+		{
+			cursor.close();
+		}
+		return teaList;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TeaTable readTable(String fileName) throws IOException {
+		TeaTable table = new TeaTable();
+
+		TeaCursor cursor = openCursor(fileName);
+		try
+		{
+			Tea tea;
+			while((tea = cursor.next()) != null)
+			{
+				table.add(tea);
+			}
+		}
+		finally
+		{
+			cursor.close();
+		}
+		table.trimToSize();
+		return table;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TeaCursor openCursor(String fileName) throws IOException {
+		return openCursor(fileName, null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TeaCursor openCursor(String fileName, TeaFilter filter) throws IOException {
+		File xmlFile = new File(fileName);
+		if(!xmlFile.exists() || !xmlFile.isFile())
+		{
+			throw new IOException("The file " + fileName +  " does not exist");
+		}
+
+		Compression compression = Compression.detect(xmlFile);
+		if(compression != Compression.NONE)
+		{
+			return openCursor(compression.open(xmlFile), fileName, filter);
+		}
+		return openCursor(new BufferedInputStream(new FileInputStream(xmlFile), 64 * 1024), fileName, filter);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TeaCursor openCursor(InputStream in, String fileName, TeaFilter filter) throws IOException {
+		try
+		{
+			return new StaxCursor(FACTORY.createXMLStreamReader(in), in, fileName, filter);
+		}
+		catch(XMLStreamException e) {
+			in.close();
+			throw new IOException("Input file (" + fileName + ") not correct format");
+		}
+	}
+
+	/**
+	 * Creates the factory shared by all cursors.
+	 *
+	 * @return A factory that coalesces text and does not resolve DTDs
+	 */
+	private static XMLInputFactory createFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		return factory;
+	}
+
+	/**
+	 * Pulls events from the stream until a complete tea element has been read.
+	 */
+	private static class StaxCursor implements TeaCursor {
+		private XMLStreamReader xml;
+		private InputStream in;
+		private String fileName;
+		private TeaFilter filter;
+		private boolean nameNeeded;
+		private boolean descriptionNeeded;
+
+		/**
+		 * Constructs a cursor over a stream reader
+		 *
+		 * @param xml The stream reader positioned at the start of the document
+		 * @param in The underlying input stream
+		 * @param fileName Name of the file, used in error messages
+		 * @param filter The filter the tea must pass, or null
+		 */
+		private StaxCursor(XMLStreamReader xml, InputStream in, String fileName, TeaFilter filter) {
+			this.xml = xml;
+			this.in = in;
+			this.fileName = fileName;
+			this.filter = filter;
+			// The name is read for the filter even when it is not needed
+			this.nameNeeded = filter == null || filter.needsField(Tea.NAME) || !filter.acceptsAll();
+			this.descriptionNeeded = filter == null || filter.needsField(Tea.DESCRIPTION);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Tea next() throws IOException {
+			try
+			{
+				while(xml.hasNext())
+				{
+					if(xml.next() == XMLStreamConstants.START_ELEMENT && Tea.TEA.equals(xml.getLocalName()))
+					{
+						Tea tea = readTea();
+						if(filter == null || filter.accepts(tea))
+						{
+							if(filter != null && !filter.needsField(Tea.NAME))
+							{
+								tea.setName("");
+							}
+							return tea;
+						}
+					}
+				}
+				return null;
+			}
+			catch(Exception e) {
+				throw new IOException("Input file (" + fileName + ") not correct format");
+			}
+		}
+
+		/**
+		 * Reads the fields of a tea element. The reader is positioned at the
+		 * start of the tea element and is left at its end.
+		 *
+		 * @return The tea
+		 * @throws XMLStreamException If the XML is not well formed
+		 * @throws IOException If a field is missing
+		 */
+		private Tea readTea() throws XMLStreamException, IOException {
+			String category = null, name = null, price = null, description = null;
+			int depth = 1;
+
+			while(depth > 0)
+			{
+				int event = xml.next();
+				if(event == XMLStreamConstants.START_ELEMENT)
+				{
+					String tag = xml.getLocalName();
+					if(depth == 1 && Tea.CATEGORY.equals(tag))
+					{
+						category = xml.getElementText();
+					}
+					else if(depth == 1 && Tea.NAME.equals(tag))
+					{
+						name = nameNeeded ? xml.getElementText() : skipElementText();
+					}
+					else if(depth == 1 && Tea.PRICE.equals(tag))
+					{
+						price = xml.getElementText();
+					}
+					else if(depth == 1 && Tea.DESCRIPTION.equals(tag))
+					{
+						description = descriptionNeeded ? xml.getElementText() : skipElementText();
+					}
+					else
+					{
+						depth++;
+					}
+				}
+				else if(event == XMLStreamConstants.END_ELEMENT)
+				{
+					depth--;
+				}
+			}
+			if(category == null || name == null || price == null || description == null)
+			{
+				throw new IOException("Tea element is missing a field");
+			}
+			return new Tea(category, name, Integer.parseInt(price), description);
+		}
+
+		/**
+		 * Skips the text of an element. The reader is positioned at the start
+		 * of the element and is left at its end.
+		 *
+		 * @return An empty text for the field
+		 * @throws XMLStreamException If the XML is not well formed
+		 */
+		private String skipElementText() throws XMLStreamException {
+			int depth = 1;
+			while(depth > 0)
+			{
+				int event = xml.next();
+				if(event == XMLStreamConstants.START_ELEMENT)
+				{
+					depth++;
+				}
+				else if(event == XMLStreamConstants.END_ELEMENT)
+				{
+					depth--;
+				}
+			}
+			return "";
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void close() throws IOException {
+			try
+			{
+				xml.close();
+			}
+			catch(XMLStreamException e) {
+				// The stream below is closed anyway
+			}
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package converter.readers;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.ZipException;
+
+/**
+ * StreamTextScanner scans text read from a stream, such as a compressed
+ * file that is decompressed while it is read. The stream is read into a
+ * buffer that is reused for the whole file.
+ *
+ * @author Mats Palm
+ */
+class StreamTextScanner extends TextScanner {
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private InputStream in;
+
+	/**
+	 * Constructs a scanner for a stream
+	 *
+	 * @param in The stream, it is closed with the scanner
+	 * @param fileName Name of the file, used in error messages
+	 */
+	StreamTextScanner(InputStream in, String fileName) {
+		super(fileName);
+		this.in = in;
+		buf = ByteBuffer.allocate(BUFFER_SIZE);
+		buf.limit(0);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected boolean fill() throws IOException {
+		int read;
+		try
+		{
+			do
+			{
+				read = in.read(buf.array(), 0, buf.capacity());
+			} while(read == 0);
+		}
+		catch(EOFException e)
+		{
+			throw new IOException("Input file (" + fileName + ") not correct format");
+		}
+		catch(ZipException e)
+		{
+			throw new IOException("Input file (" + fileName + ") not correct format");
+		}
+		if(read < 0)
+		{
+			buf.limit(0);
+			return false;
+		}
+		buf.position(0);
+		buf.limit(read);
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,24 @@
+package converter.readers;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import tealist.Tea;
+
+/**
+ * A TeaCursor reads tea information one record at a time, so
+ * a tea file never has to be held in memory as a whole.
+ * 
+ * @author Mats Palm
+ */
+public interface TeaCursor extends Closeable {
+
+	/**
+	 * Reads the next tea in the file.
+	 * 
+	 * @return The next tea or null if there are no more tea in the file
+	 * @throws IOException If there was an error while reading
+	 */
+	public Tea next() throws IOException;
+
+}
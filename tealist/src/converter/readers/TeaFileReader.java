@@ -1,9 +1,11 @@
 package converter.readers;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 import tealist.Tea;
+import tealist.TeaTable;
 
 /**
  * This interface should be implemented by something that 
@@ -23,4 +25,68 @@ public interface TeaFileReader {
 	 */
 	public List<Tea> readFile(String fileName) throws IOException;
 
+	/**
+	 * Opens a cursor that reads the tea in a file one at a time.
+	 * The caller is responsible for closing the cursor.
+	 * 
+	 * @param fileName Name of the file
+	 * @return A cursor positioned before the first tea in the file
+	 * @throws IOException if the file could not be opened
+	 */
+	public TeaCursor openCursor(String fileName) throws IOException;
+
+	/**
+	 * Opens a cursor that only returns the tea accepted by a filter. The
+	 * filter is checked while reading, so tea that is not accepted is
+	 * skipped as early as the file format allows.
+	 * 
+	 * @param fileName Name of the file
+	 * @param filter The filter or null to return all tea
+	 * @return A cursor positioned before the first accepted tea in the file
+	 * @throws IOException if the file could not be opened
+	 */
+	public TeaCursor openCursor(String fileName, TeaFilter filter) throws IOException;
+
+	/**
+	 * Opens a cursor that reads the tea from a stream, such as a file
+	 * that is decompressed while it is read. The stream is closed with
+	 * the cursor. By default the stream is copied to a temporary file
+	 * that is opened with {@link #openCursor(String, TeaFilter)}, a reader
+	 * that can read the stream as it arrives should do that instead.
+	 * 
+	 * @param in The stream of the bytes of the file
+	 * @param fileName Name of the file, used in error messages
+	 * @param filter The filter or null to return all tea
+	 * @return A cursor positioned before the first accepted tea in the stream
+	 * @throws IOException if the stream could not be read
+	 */
+	public default TeaCursor openCursor(InputStream in, String fileName, TeaFilter filter) throws IOException {
+		return SpooledCursor.open(this, in, filter);
+	}
+
+	/**
+	 * Reads all the tea in a file into a compact table. This uses far less
+	 * memory than a list of tea. By default the tea is read with a cursor
+	 * and added one at a time, a reader may fill the table more directly.
+	 * 
+	 * @param fileName Name of the file
+	 * @return A table of the tea in the file
+	 * @throws IOException if there was an error while reading
+	 */
+	public default TeaTable readTable(String fileName) throws IOException {
+		TeaTable table = new TeaTable();
+		TeaCursor cursor = openCursor(fileName);
+		try {
+			Tea tea;
+			while((tea = cursor.next()) != null) {
+				table.add(tea);
+			}
+		}
+		finally {
+			cursor.close();
+		}
+		table.trimToSize();
+		return table;
+	}
+
 }
@@ -0,0 +1,181 @@
+package converter.readers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import tealist.Tea;
+
+/**
+ * A TeaFilter decides which tea a reader should return. Readers check the
+ * cheap fields first and skip a tea as soon as one check fails, so tea that
+ * is filtered away is never fully decoded.
+ *
+ * A filter may also name the fields that are needed. Readers skip the name
+ * and description while reading when they are not needed and leave them
+ * empty, the category and price are always read.
+ *
+ * A filter without any conditions accepts all tea.
+ *
+ * @author Mats Palm
+ */
+public class TeaFilter {
+	private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+	private String category;
+	private int minPrice = Integer.MIN_VALUE;
+	private int maxPrice = Integer.MAX_VALUE;
+	private String namePrefix;
+	private byte[] namePrefixBytes;
+	private Set<String> fields;
+
+	/**
+	 * Only accept tea in a category. Categories are compared ignoring case.
+	 *
+	 * @param category The category or null for all categories
+	 */
+	public void setCategory(String category) {
+		this.category = category;
+	}
+
+	/**
+	 * Only accept tea with at least this price.
+	 *
+	 * @param minPrice The lowest price
+	 */
+	public void setMinPrice(int minPrice) {
+		this.minPrice = minPrice;
+	}
+
+	/**
+	 * Only accept tea with at most this price.
+	 *
+	 * @param maxPrice The highest price
+	 */
+	public void setMaxPrice(int maxPrice) {
+		this.maxPrice = maxPrice;
+	}
+
+	/**
+	 * Only accept tea with a name that starts with a prefix. Names are
+	 * compared with case.
+	 *
+	 * @param namePrefix The prefix or null for all names
+	 */
+	public void setNamePrefix(String namePrefix) {
+		this.namePrefix = namePrefix;
+		this.namePrefixBytes = namePrefix == null ? null : namePrefix.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Only read some of the fields of the tea. The conditions are still
+	 * checked on fields that are not read.
+	 *
+	 * @param fields Names of the fields as in {@link Tea}, or null for all fields
+	 */
+	public void setFields(Collection<String> fields) {
+		this.fields = fields == null ? null : new HashSet<String>(fields);
+	}
+
+	/**
+	 * Checks if a field should be read.
+	 *
+	 * @param field Name of the field as in {@link Tea}
+	 * @return true if the field is needed
+	 */
+	public boolean needsField(String field) {
+		return fields == null || fields.contains(field);
+	}
+
+	/**
+	 * Checks if the filter has any conditions.
+	 *
+	 * @return true if all tea is accepted
+	 */
+	public boolean acceptsAll() {
+		return category == null && namePrefix == null && minPrice == Integer.MIN_VALUE && maxPrice == Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Checks a tea against all conditions.
+	 *
+	 * @param tea The tea
+	 * @return true if the tea is accepted
+	 */
+	public boolean accepts(Tea tea) {
+		return acceptsCategory(tea.getCategory()) && acceptsPrice(tea.getPrice()) && acceptsName(tea.getName());
+	}
+
+	/**
+	 * Checks the category condition. A byte order mark that was read as part
+	 * of the first category of a file is ignored.
+	 *
+	 * @param teaCategory The category of a tea
+	 * @return true if the category is accepted
+	 */
+	public boolean acceptsCategory(String teaCategory) {
+		if(category == null) {
+			return true;
+		}
+		if(teaCategory.length() > 0 && teaCategory.charAt(0) == BYTE_ORDER_MARK) {
+			teaCategory = teaCategory.substring(1);
+		}
+		return category.equalsIgnoreCase(teaCategory);
+	}
+
+	/**
+	 * Checks the price conditions.
+	 *
+	 * @param price The price of a tea
+	 * @return true if the price is accepted
+	 */
+	public boolean acceptsPrice(int price) {
+		return price >= minPrice && price <= maxPrice;
+	}
+
+	/**
+	 * Checks if any price in a range can be accepted, so a reader can skip
+	 * a whole block of tea.
+	 *
+	 * @param lowest The lowest price in the range
+	 * @param highest The highest price in the range
+	 * @return false if no price in the range is accepted
+	 */
+	public boolean acceptsPriceRange(int lowest, int highest) {
+		return highest >= minPrice && lowest <= maxPrice;
+	}
+
+	/**
+	 * Checks the name condition.
+	 *
+	 * @param name The name of a tea
+	 * @return true if the name is accepted
+	 */
+	public boolean acceptsName(String name) {
+		return namePrefix == null || name.startsWith(namePrefix);
+	}
+
+	/**
+	 * Checks the name condition on a name that has not been decoded.
+	 *
+	 * @param bytes Bytes holding the name in UTF-8
+	 * @param start Index of the first byte of the name
+	 * @param end Index after the last byte of the name
+	 * @return true if the name is accepted
+	 */
+	public boolean acceptsName(byte[] bytes, int start, int end) {
+		if(namePrefixBytes == null) {
+			return true;
+		}
+		if(end - start < namePrefixBytes.length) {
+			return false;
+		}
+		for(int i = 0; i < namePrefixBytes.length; i++) {
+			if(bytes[start + i] != namePrefixBytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
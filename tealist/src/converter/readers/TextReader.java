@@ -1,17 +1,23 @@
 package converter.readers;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
 
+import converter.Compression;
+
 import tealist.Tea;
+import tealist.TeaTable;
 
 /**
- * TextReader can read a plain text input file
+ * TextReader can read a plain text input file. The file is memory mapped
+ * and scanned by a {@link TextScanner}, a compressed file is decompressed
+ * into a buffer and scanned from there.
  * 
  * @author Mats Palm
  */
@@ -24,35 +30,131 @@ public class TextReader implements TeaFileReader {
 	public List<Tea> readFile(String fileName) throws IOException {
 		List<Tea> teaList = new ArrayList<Tea>();
 
+		TeaCursor cursor = openCursor(fileName);
+		try
+		{
+			Tea tea;
+			while((tea = cursor.next()) != null)
+			{
+				teaList.add(tea);
+			}
+		} finally
+		{
+			cursor.close();
+		}
+		return teaList;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The fields are added to the table straight from the bytes of the file.
+	 */
+	@Override
+	public TeaTable readTable(String fileName) throws IOException {
+		TeaTable table = new TeaTable();
+
+		TeaCursor cursor = openCursor(fileName);
+		try
+		{
+			if(cursor instanceof TextScanner)
+			{
+				TextScanner scanner = (TextScanner) cursor;
+				while(scanner.nextInto(table))
+				{
+					// Each call adds one tea
+				}
+			}
+			else
+			{
+				Tea tea;
+				while((tea = cursor.next()) != null)
+				{
+					table.add(tea);
+				}
+			}
+		} finally
+		{
+			cursor.close();
+		}
+		table.trimToSize();
+		return table;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TeaCursor openCursor(String fileName) throws IOException {
+		return openCursor(fileName, null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TeaCursor openCursor(String fileName, TeaFilter filter) throws IOException {
 		File file = new File(fileName);
 		if(!file.exists() || !file.isFile())
 		{
 			throw new IOException("The file " + fileName +  " does not exist");
 		}
-		FileInputStream fis = new FileInputStream(file);
-		InputStreamReader isr = new InputStreamReader(fis, "UTF-8");
-		BufferedReader br = new BufferedReader(isr);
-
-		String line;
-
+		Compression compression = Compression.detect(file);
+		if(compression != Compression.NONE)
+		{
+			return openCursor(compression.open(file), fileName, filter);
+		}
+		FileChannel channel = new RandomAccessFile(file, "r").getChannel();
 		try
 		{
-			while((line = br.readLine()) != null)
+			TextScanner scanner = new MappedTextScanner(channel, 0, channel.size(), fileName, true);
+			scanner.setFilter(filter);
+			return scanner;
+		} catch (IOException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TeaCursor openCursor(InputStream in, String fileName, TeaFilter filter) throws IOException {
+		TextScanner scanner = new StreamTextScanner(in, fileName);
+		scanner.setFilter(filter);
+		return scanner;
+	}
+
+	/**
+	 * Reads the tea of a single line, such as a line an index points at.
+	 *
+	 * @param line The bytes of the line, from the position to the limit
+	 * @param fileName Name of the file, used in error messages
+	 * @return The tea
+	 * @throws IOException If the line is not in the text file format
+	 */
+	public Tea readLine(final ByteBuffer line, String fileName) throws IOException {
+		TextScanner scanner = new TextScanner(fileName) {
 			{
-				Tea tea = new Tea();
-				String[] teaLine = line.split(";");
-				tea.category = teaLine[0];
-				tea.name = teaLine[1];
-				tea.price = Integer.valueOf(teaLine[2]);
-				tea.description = teaLine[3];
-				teaList.add(tea);
+				buf = line;
+			}
+
+			@Override
+			protected boolean fill() {
+				return false;
+			}
 
+			@Override
+			public void close() {
 			}
-			br.close();
-		} catch (Exception e)
-		{			
+		};
+		Tea tea = scanner.next();
+		if(tea == null)
+		{
 			throw new IOException("Input file (" + fileName + ") not correct format");
-		}		
-		return teaList;
+		}
+		return tea;
 	}
 }
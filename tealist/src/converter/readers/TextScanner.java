@@ -0,0 +1,287 @@
+package converter.readers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import tealist.Tea;
+import tealist.TeaTable;
+
+/**
+ * TextScanner turns bytes of text in the text file format into tea.
+ *
+ * Lines are found by scanning the bytes for line breaks and the fields by
+ * scanning for ;, so no regular expressions or intermediate strings are
+ * needed. The price is parsed straight from the bytes. Lines end with \n,
+ * \r or \r\n just as for {@link java.io.BufferedReader#readLine()}, and
+ * the text is decoded as UTF-8 where a byte order mark is kept as part of
+ * the first field.
+ *
+ * When a {@link TeaFilter} is set, the category, price and name of a line
+ * are checked before anything else is decoded. The name and description
+ * are returned undecoded in a {@link LazyTea}, and a field the filter does
+ * not need is not even scanned.
+ *
+ * Subclasses provide the bytes by filling the buffer.
+ *
+ * @author Mats Palm
+ */
+abstract class TextScanner implements TeaCursor {
+	private static final byte SEPARATOR = ';';
+
+	/** The bytes to scan, position is at the first byte not yet scanned */
+	protected ByteBuffer buf;
+	/** Name of the file, used in error messages */
+	protected String fileName;
+
+	private byte[] line = new byte[256];
+	private int[] ends = new int[4];
+	private boolean skipLineFeed;
+	private byte[] lastCategory = new byte[0];
+	private String lastCategoryString;
+	private TeaFilter filter;
+	private boolean nameNeeded = true;
+	private boolean descriptionNeeded = true;
+
+	/**
+	 * Constructs a scanner.
+	 *
+	 * @param fileName Name of the file, used in error messages
+	 */
+	protected TextScanner(String fileName) {
+		this.fileName = fileName;
+	}
+
+	/**
+	 * Sets the filter that lines must pass to be returned and that names the
+	 * fields to read.
+	 *
+	 * @param filter The filter or null to return all lines
+	 */
+	void setFilter(TeaFilter filter) {
+		this.filter = filter == null || filter.acceptsAll() ? null : filter;
+		this.nameNeeded = filter == null || filter.needsField(Tea.NAME);
+		this.descriptionNeeded = filter == null || filter.needsField(Tea.DESCRIPTION);
+	}
+
+	/**
+	 * Makes more bytes available in the buffer. All bytes before the
+	 * position of the buffer have been scanned and may be discarded.
+	 *
+	 * @return false if there are no more bytes
+	 * @throws IOException If there was an I/O error
+	 */
+	protected abstract boolean fill() throws IOException;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Tea next() throws IOException {
+		int length;
+		while((length = readLine()) >= 0) {
+			split(line, length);
+			if(accepts()) {
+				return toTea();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the next tea straight into a table, without creating a tea object
+	 * or any strings for its fields.
+	 *
+	 * @param table The table to add the tea to
+	 * @return false if there are no more tea
+	 * @throws IOException If there was an error while reading
+	 */
+	public boolean nextInto(TeaTable table) throws IOException {
+		int length;
+		while((length = readLine()) >= 0) {
+			split(line, length);
+			if(accepts()) {
+				table.add(line, 0, ends[0], ends[0] + 1, ends[1], parseInt(line, ends[1] + 1, ends[2]), ends[2] + 1, ends[3]);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Copies the next line into the line array.
+	 *
+	 * @return The length of the line or -1 if there are no more lines
+	 * @throws IOException If there was an I/O error
+	 */
+	protected int readLine() throws IOException {
+		int length = 0;
+		boolean found = false;
+
+		while(true) {
+			if(!buf.hasRemaining() && !fill()) {
+				return found ? length : -1;
+			}
+			if(skipLineFeed) {
+				skipLineFeed = false;
+				if(buf.get(buf.position()) == '\n') {
+					buf.position(buf.position() + 1);
+					continue;
+				}
+			}
+			found = true;
+
+			int position = buf.position();
+			int limit = buf.limit();
+			int i = position;
+			byte b = 0;
+			while(i < limit && (b = buf.get(i)) != '\n' && b != '\r') {
+				i++;
+			}
+			int count = i - position;
+			if(length + count > line.length) {
+				byte[] larger = new byte[Math.max(line.length * 2, length + count)];
+				System.arraycopy(line, 0, larger, 0, length);
+				line = larger;
+			}
+			buf.get(line, length, count);
+			length += count;
+
+			if(i < limit) {
+				buf.position(i + 1);
+				skipLineFeed = b == '\r';
+				return length;
+			}
+		}
+	}
+
+	/**
+	 * Checks the current line against the filter, without decoding
+	 * the name or the description.
+	 *
+	 * @return true if the line should be returned
+	 * @throws IOException If the price is not a number
+	 */
+	private boolean accepts() throws IOException {
+		return filter == null
+				|| filter.acceptsCategory(category(line, ends[0]))
+				&& filter.acceptsPrice(parseInt(line, ends[1] + 1, ends[2]))
+				&& filter.acceptsName(line, ends[0] + 1, ends[1]);
+	}
+
+	/**
+	 * Turns the current line into a tea. The bytes of the name and the
+	 * description are copied, since the line array is reused.
+	 *
+	 * @return The tea
+	 * @throws IOException If the line is not in the text file format
+	 */
+	private Tea toTea() throws IOException {
+		int categoryEnd = ends[0];
+		int nameEnd = ends[1];
+		int priceEnd = ends[2];
+		int nameLength = nameNeeded ? nameEnd - categoryEnd - 1 : 0;
+		int descriptionLength = descriptionNeeded ? ends[3] - priceEnd - 1 : 0;
+
+		byte[] text = new byte[nameLength + descriptionLength];
+		System.arraycopy(line, categoryEnd + 1, text, 0, nameLength);
+		System.arraycopy(line, priceEnd + 1, text, nameLength, descriptionLength);
+		return new LazyTea(category(line, categoryEnd), parseInt(line, nameEnd + 1, priceEnd), text, nameLength);
+	}
+
+	/**
+	 * Finds where each of the four fields of a line ends.
+	 *
+	 * @param bytes The bytes of the line
+	 * @param length Number of bytes in the line
+	 * @throws IOException If the line has less than four fields
+	 */
+	private void split(byte[] bytes, int length) throws IOException {
+		ends[0] = indexOf(bytes, 0, length);
+		ends[1] = indexOf(bytes, ends[0] + 1, length);
+		ends[2] = indexOf(bytes, ends[1] + 1, length);
+		if(ends[2] >= length) {
+			throw new IOException("Input file (" + fileName + ") not correct format");
+		}
+		// The description is the rest of the line up to any further separator
+		ends[3] = descriptionNeeded ? indexOf(bytes, ends[2] + 1, length) : length;
+	}
+
+	/**
+	 * Decodes the category, which is the first field of the line. Lists
+	 * usually have the same category on many lines in a row, so the string
+	 * of the previous line is reused when the bytes are the same.
+	 *
+	 * @param bytes The bytes of the line
+	 * @param end End of the category
+	 * @return The category
+	 */
+	private String category(byte[] bytes, int end) {
+		boolean same = lastCategoryString != null && lastCategory.length == end;
+		for(int i = 0; same && i < end; i++) {
+			same = lastCategory[i] == bytes[i];
+		}
+		if(!same) {
+			lastCategory = new byte[end];
+			System.arraycopy(bytes, 0, lastCategory, 0, end);
+			lastCategoryString = new String(bytes, 0, end, StandardCharsets.UTF_8);
+		}
+		return lastCategoryString;
+	}
+
+	/**
+	 * Finds the next separator.
+	 *
+	 * @param bytes The bytes to search
+	 * @param from Index to start at
+	 * @param length Number of bytes to search
+	 * @return Index of the separator or length if there is none
+	 */
+	private static int indexOf(byte[] bytes, int from, int length) {
+		int i = from;
+		while(i < length && bytes[i] != SEPARATOR) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Parses a decimal int with an optional sign, just as
+	 * {@link Integer#parseInt(String)} does.
+	 *
+	 * @param bytes The bytes to parse
+	 * @param from Index of the first byte
+	 * @param to Index after the last byte
+	 * @return The int
+	 * @throws IOException If the bytes are not an int
+	 */
+	protected int parseInt(byte[] bytes, int from, int to) throws IOException {
+		int i = from;
+		boolean negative = false;
+		if(i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+			negative = bytes[i] == '-';
+			i++;
+		}
+		if(i == to) {
+			throw new IOException("Input file (" + fileName + ") not correct format");
+		}
+		long value = 0;
+		for(; i < to; i++) {
+			int digit = bytes[i] - '0';
+			if(digit < 0 || digit > 9) {
+				throw new IOException("Input file (" + fileName + ") not correct format");
+			}
+			value = value * 10 + digit;
+			if(value > (long) Integer.MAX_VALUE + 1) {
+				throw new IOException("Input file (" + fileName + ") not correct format");
+			}
+		}
+		if(negative) {
+			value = -value;
+		}
+		if(value > Integer.MAX_VALUE) {
+			throw new IOException("Input file (" + fileName + ") not correct format");
+		}
+		return (int) value;
+	}
+}
@@ -2,18 +2,21 @@ package converter.readers;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import converter.Compression;
+import converter.XmlParsers;
 import tealist.Tea;
+import tealist.TeaTable;
 
 /**
  * XmlReader can read a XML input file
@@ -27,60 +30,210 @@ public class XmlReader implements TeaFileReader {
 	 */
 	@Override
 	public List<Tea> readFile(String fileName) throws IOException {
-		{		
+		{
 			List<Tea> teaList = new ArrayList<Tea>();
 
-			File xmlFile = new File(fileName);
-			if(!xmlFile.exists() || !xmlFile.isFile())
+			TeaCursor cursor = openCursor(fileName);
+			try
+			{
+				Tea tea;
+				while((tea = cursor.next()) != null)
+				{
+					teaList.add(tea);
+				}
+			}
+			finally
 			{
-				throw new IOException("The file " + fileName +  " does not exist");
+				cursor.close();
 			}
+			return teaList;
+		}
+	}
 
-			try
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TeaTable readTable(String fileName) throws IOException {
+		TeaTable table = new TeaTable();
+
+		TeaCursor cursor = openCursor(fileName);
+		try
+		{
+			Tea tea;
+			while((tea = cursor.next()) != null)
 			{
-				DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-				DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-				Document doc = dBuilder.parse(xmlFile);
-				doc.getDocumentElement().normalize();
+				table.add(tea);
+			}
+		}
+		finally
+		{
+			cursor.close();
+		}
+		table.trimToSize();
+		return table;
+	}
 
-				NodeList nodeList = doc.getElementsByTagName(Tea.TEA);
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TeaCursor openCursor(String fileName) throws IOException {
+		return openCursor(fileName, null);
+	}
 
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The whole document is parsed when the cursor is opened, the cursor
+	 * only saves the reader from building a list of all the tea.
+	 */
+	@Override
+	public TeaCursor openCursor(String fileName, TeaFilter filter) throws IOException {
+		File xmlFile = new File(fileName);
+		if(!xmlFile.exists() || !xmlFile.isFile())
+		{
+			throw new IOException("The file " + fileName +  " does not exist");
+		}
 
-				for(int i = 0; i < nodeList.getLength(); i++) {
+		Compression compression = Compression.detect(xmlFile);
+		if(compression != Compression.NONE)
+		{
+			return openCursor(compression.open(xmlFile), fileName, filter);
+		}
 
-					Tea tea = new Tea();
-					Node node = nodeList.item(i);
-					if(node.getNodeType() == Node.ELEMENT_NODE) {
+		try
+		{
+			DocumentBuilder dBuilder = XmlParsers.documentBuilder();
+			Document doc = dBuilder.parse(xmlFile);
+			doc.getDocumentElement().normalize();
 
-						Element element = (Element) node;
+			return new DomCursor(doc.getElementsByTagName(Tea.TEA), fileName, filter);
+		}
+		catch(Exception e) {
+			throw new IOException("Input file (" + fileName + ") not correct format");
+		}
+	}
 
-						tea.category = getTagValue(Tea.CATEGORY, element);
-						tea.name = getTagValue(Tea.NAME, element);
-						tea.price = Integer.valueOf(getTagValue(Tea.PRICE, element));
-						tea.description = getTagValue(Tea.DESCRIPTION, element);	 
-					}
-					teaList.add(tea);
-				}
-			}
-			catch(Exception e) {
-				throw new IOException("Input file (" + fileName + ") not correct format");
-			}
-			return teaList;
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The whole stream is parsed and closed when the cursor is opened.
+	 */
+	@Override
+	public TeaCursor openCursor(InputStream in, String fileName, TeaFilter filter) throws IOException {
+		try
+		{
+			DocumentBuilder dBuilder = XmlParsers.documentBuilder();
+			Document doc = dBuilder.parse(in);
+			doc.getDocumentElement().normalize();
+
+			return new DomCursor(doc.getElementsByTagName(Tea.TEA), fileName, filter);
+		}
+		catch(Exception e) {
+			throw new IOException("Input file (" + fileName + ") not correct format");
+		}
+		finally
+		{
+			in.close();
 		}
 	}
 
 		/**
 		 * Gets a value from an element.
-		 *  
+		 *
 		 * @param tag The tag we are looking for
 		 * @param element The current element
 		 * @return The value of the tag
 		 */
-		private String getTagValue(String tag, Element element) {
+		private static String getTagValue(String tag, Element element) {
 			NodeList nlList = element.getElementsByTagName(tag).item(0).getChildNodes();
 			Node nValue = (Node) nlList.item(0);
 
 			return nValue.getNodeValue();
 		}
-		
+
+	/**
+	 * Walks through the tea elements of a parsed document.
+	 */
+	private static class DomCursor implements TeaCursor {
+		private NodeList nodeList;
+		private String fileName;
+		private TeaFilter filter;
+		private int index;
+
+		/**
+		 * Constructs a cursor over the tea elements
+		 *
+		 * @param nodeList The tea elements
+		 * @param fileName Name of the file, used in error messages
+		 * @param filter The filter the tea must pass, or null
+		 */
+		private DomCursor(NodeList nodeList, String fileName, TeaFilter filter) {
+			this.nodeList = nodeList;
+			this.fileName = fileName;
+			this.filter = filter;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Tea next() throws IOException {
+			Tea tea;
+			do
+			{
+				tea = nextTea();
+			}
+			while(tea != null && filter != null && !filter.accepts(tea));
+			if(tea != null && filter != null && !filter.needsField(Tea.NAME))
+			{
+				// The name was only read for the filter
+				tea.setName("");
+			}
+			return tea;
+		}
+
+		/**
+		 * Gets the next tea element as a tea.
+		 *
+		 * @return The tea or null if there are no more tea elements
+		 * @throws IOException If a tea element is not correct
+		 */
+		private Tea nextTea() throws IOException {
+			if(nodeList == null || index >= nodeList.getLength())
+			{
+				return null;
+			}
+			try
+			{
+				Tea tea = new Tea();
+				Node node = nodeList.item(index++);
+				if(node.getNodeType() == Node.ELEMENT_NODE) {
+
+					Element element = (Element) node;
+
+					tea.setCategory(getTagValue(Tea.CATEGORY, element));
+					tea.setName(getTagValue(Tea.NAME, element));
+					tea.setPrice(Integer.valueOf(getTagValue(Tea.PRICE, element)));
+					if(filter == null || filter.needsField(Tea.DESCRIPTION))
+					{
+						tea.setDescription(getTagValue(Tea.DESCRIPTION, element));
+					}
+				}
+				return tea;
+			}
+			catch(Exception e) {
+				throw new IOException("Input file (" + fileName + ") not correct format");
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void close() {
+			nodeList = null;
+		}
+	}
 }
@@ -0,0 +1,21 @@
+package converter.stats;
+
+/**
+ * A ConversionListener is told about each finished conversion, so an
+ * application that embeds the converter can collect its metrics.
+ *
+ * A listener added to settings used by a batch can be called by several
+ * threads at the same time.
+ *
+ * @author Mats Palm
+ */
+public interface ConversionListener {
+
+	/**
+	 * Called when a conversion has succeeded or failed.
+	 *
+	 * @param stats The metrics of the conversion
+	 */
+	public void conversionFinished(ConversionStats stats);
+
+}
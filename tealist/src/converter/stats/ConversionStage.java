@@ -0,0 +1,39 @@
+package converter.stats;
+
+/**
+ * The stages of a conversion. Reading and writing are interleaved tea by
+ * tea, so each stage is the sum of all the time spent in it.
+ *
+ * @author Mats Palm
+ */
+public enum ConversionStage {
+	/** Opening the input and output files */
+	OPEN("open"),
+	/** Reading and parsing tea from the input */
+	READ("read"),
+	/** Everything between reading and writing, such as sorting */
+	TRANSFORM("transform"),
+	/** Encoding and writing tea to the output */
+	WRITE("write"),
+	/** Finishing and flushing the output */
+	FLUSH("flush");
+
+	private String label;
+
+	/**
+	 * Private constructor only for the enumeration itself
+	 *
+	 * @param label Name of the stage in summaries and events
+	 */
+	private ConversionStage(String label) {
+		this.label = label;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return label;
+	}
+}
@@ -0,0 +1,238 @@
+package converter.stats;
+
+import java.util.Locale;
+
+/**
+ * The metrics of one conversion: how many tea were read and written, how
+ * many bytes the files have and the wall time and allocated bytes of each
+ * stage.
+ *
+ * Allocated bytes are those allocated by the converting thread, threads
+ * that parse in parallel are not included. They are -1 if the JVM cannot
+ * measure them.
+ *
+ * @author Mats Palm
+ */
+public class ConversionStats {
+	private String inFileName;
+	private String inFileFormat;
+	private String outFileFormat;
+	private String outFileName;
+	private boolean succeeded;
+	private long recordsRead;
+	private long recordsWritten;
+	private long bytesIn;
+	private long bytesOut = -1;
+	private long nanos;
+	private long[] stageNanos = new long[ConversionStage.values().length];
+	private long[] stageAllocatedBytes = new long[ConversionStage.values().length];
+
+	/**
+	 * Constructs the stats of a conversion
+	 *
+	 * @param inFileName Input file name
+	 * @param inFileFormat Input file format
+	 * @param outFileFormat Output file format
+	 * @param outFileName Output file name, null for standard output
+	 */
+	ConversionStats(String inFileName, String inFileFormat, String outFileFormat, String outFileName) {
+		this.inFileName = inFileName;
+		this.inFileFormat = inFileFormat;
+		this.outFileFormat = outFileFormat;
+		this.outFileName = outFileName;
+	}
+
+	/**
+	 * @return Input file name
+	 */
+	public String getInFileName() {
+		return inFileName;
+	}
+
+	/**
+	 * @return Input file format
+	 */
+	public String getInFileFormat() {
+		return inFileFormat;
+	}
+
+	/**
+	 * @return Output file format
+	 */
+	public String getOutFileFormat() {
+		return outFileFormat;
+	}
+
+	/**
+	 * @return Output file name, null for standard output
+	 */
+	public String getOutFileName() {
+		return outFileName;
+	}
+
+	/**
+	 * @return true if the conversion succeeded
+	 */
+	public boolean isSucceeded() {
+		return succeeded;
+	}
+
+	/**
+	 * @return Number of tea read from the input, after any filter
+	 */
+	public long getRecordsRead() {
+		return recordsRead;
+	}
+
+	/**
+	 * @return Number of tea written to the output
+	 */
+	public long getRecordsWritten() {
+		return recordsWritten;
+	}
+
+	/**
+	 * @return Size of the input file in bytes, -1 for standard input
+	 */
+	public long getBytesIn() {
+		return bytesIn;
+	}
+
+	/**
+	 * @return Size of the output file in bytes, -1 for standard output
+	 */
+	public long getBytesOut() {
+		return bytesOut;
+	}
+
+	/**
+	 * @return Wall time of the whole conversion in nanoseconds
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+
+	/**
+	 * @param stage A stage
+	 * @return Wall time of the stage in nanoseconds
+	 */
+	public long getNanos(ConversionStage stage) {
+		return stageNanos[stage.ordinal()];
+	}
+
+	/**
+	 * @param stage A stage
+	 * @return Bytes allocated during the stage, -1 if they could not be measured
+	 */
+	public long getAllocatedBytes(ConversionStage stage) {
+		return stageAllocatedBytes[stage.ordinal()];
+	}
+
+	/**
+	 * @return Bytes allocated during the conversion, -1 if they could not be measured
+	 */
+	public long getAllocatedBytes() {
+		long total = 0;
+		for(long bytes : stageAllocatedBytes) {
+			if(bytes < 0) {
+				return -1;
+			}
+			total += bytes;
+		}
+		return total;
+	}
+
+	/**
+	 * @return Tea read per second
+	 */
+	public double getRecordsPerSecond() {
+		return nanos == 0 ? 0 : recordsRead * 1e9 / nanos;
+	}
+
+	/**
+	 * Adds time and allocated bytes to a stage.
+	 *
+	 * @param stage The stage
+	 * @param nanos Wall time in nanoseconds
+	 * @param allocatedBytes Allocated bytes, -1 if unknown
+	 */
+	void addStage(ConversionStage stage, long nanos, long allocatedBytes) {
+		stageNanos[stage.ordinal()] += nanos;
+		if(allocatedBytes < 0 || stageAllocatedBytes[stage.ordinal()] < 0) {
+			stageAllocatedBytes[stage.ordinal()] = -1;
+		}
+		else {
+			stageAllocatedBytes[stage.ordinal()] += allocatedBytes;
+		}
+	}
+
+	/**
+	 * Counts a tea read.
+	 */
+	void recordRead() {
+		recordsRead++;
+	}
+
+	/**
+	 * Counts a tea written.
+	 */
+	void recordWritten() {
+		recordsWritten++;
+	}
+
+	/**
+	 * Sets the outcome of the conversion.
+	 *
+	 * @param succeeded true if the conversion succeeded
+	 * @param nanos Wall time of the whole conversion
+	 * @param bytesIn Size of the input file, -1 for standard input
+	 * @param bytesOut Size of the output file, -1 for standard output
+	 */
+	void finish(boolean succeeded, long nanos, long bytesIn, long bytesOut) {
+		this.succeeded = succeeded;
+		this.nanos = nanos;
+		this.bytesIn = bytesIn;
+		this.bytesOut = bytesOut;
+	}
+
+	/**
+	 * Makes a summary with one line for the conversion and one line per stage.
+	 *
+	 * @return The summary
+	 */
+	@Override
+	public String toString() {
+		StringBuilder summary = new StringBuilder();
+		summary.append(String.format(Locale.ROOT, "%s (%s) to %s%s%s%n",
+				inFileName, inFileFormat, outFileName == null ? "standard output" : outFileName,
+				outFileFormat == null ? "" : " (" + outFileFormat + ")", succeeded ? "" : " failed"));
+		summary.append(String.format(Locale.ROOT, "  %d tea read, %d written in %.1f ms, %.0f tea/s%n",
+				recordsRead, recordsWritten, nanos / 1e6, getRecordsPerSecond()));
+		summary.append(String.format(Locale.ROOT, "  %s in, %s out, %s allocated%n",
+				bytes(bytesIn), bytes(bytesOut), bytes(getAllocatedBytes())));
+		for(ConversionStage stage : ConversionStage.values()) {
+			summary.append(String.format(Locale.ROOT, "  %-10s %10.1f ms %12s%n",
+					stage, getNanos(stage) / 1e6, bytes(getAllocatedBytes(stage))));
+		}
+		return summary.toString();
+	}
+
+	/**
+	 * Formats a number of bytes.
+	 *
+	 * @param bytes Number of bytes, -1 if unknown
+	 * @return The bytes in B, KB or MB
+	 */
+	private static String bytes(long bytes) {
+		if(bytes < 0) {
+			return "? B";
+		}
+		if(bytes < 1024) {
+			return bytes + " B";
+		}
+		if(bytes < 1024 * 1024) {
+			return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+		}
+		return String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024.0));
+	}
+}
@@ -0,0 +1,126 @@
+package converter.stats;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Emits the metrics of a conversion as JDK Flight Recorder events: one
+ * tealist.Conversion event spanning the whole conversion and one
+ * tealist.ConversionStage event per stage. Start a recording with
+ * -XX:StartFlightRecording or jcmd to collect them.
+ *
+ * This class is only loaded when the JVM has the flight recorder.
+ *
+ * @author Mats Palm
+ */
+class FlightRecorderEvents {
+
+	/**
+	 * Checks if a recording takes the conversion events.
+	 *
+	 * @return true if the events should be made
+	 */
+	static boolean isEnabled() {
+		return new ConversionEvent().isEnabled();
+	}
+
+	/**
+	 * Begins the event of a conversion.
+	 *
+	 * @return The event
+	 */
+	static Object begin() {
+		ConversionEvent event = new ConversionEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Ends and commits the event of a conversion and the events of its stages.
+	 *
+	 * @param begun The event returned by begin
+	 * @param stats The metrics of the conversion
+	 */
+	static void commit(Object begun, ConversionStats stats) {
+		ConversionEvent event = (ConversionEvent) begun;
+		event.end();
+		if(!event.shouldCommit()) {
+			return;
+		}
+		event.inputFile = stats.getInFileName();
+		event.inputFormat = stats.getInFileFormat();
+		event.outputFile = stats.getOutFileName();
+		event.outputFormat = stats.getOutFileFormat();
+		event.succeeded = stats.isSucceeded();
+		event.recordsRead = stats.getRecordsRead();
+		event.recordsWritten = stats.getRecordsWritten();
+		event.recordsPerSecond = stats.getRecordsPerSecond();
+		event.bytesIn = stats.getBytesIn();
+		event.bytesOut = stats.getBytesOut();
+		event.allocated = stats.getAllocatedBytes();
+		event.commit();
+
+		for(ConversionStage stage : ConversionStage.values()) {
+			ConversionStageEvent stageEvent = new ConversionStageEvent();
+			stageEvent.inputFile = stats.getInFileName();
+			stageEvent.stage = stage.toString();
+			stageEvent.wallTime = stats.getNanos(stage);
+			stageEvent.allocated = stats.getAllocatedBytes(stage);
+			stageEvent.commit();
+		}
+	}
+
+	@Name("tealist.Conversion")
+	@Label("Tea Conversion")
+	@Category("TeaList")
+	@Description("A tea file converted from one format to another")
+	static class ConversionEvent extends Event {
+		@Label("Input File")
+		String inputFile;
+		@Label("Input Format")
+		String inputFormat;
+		@Label("Output File")
+		String outputFile;
+		@Label("Output Format")
+		String outputFormat;
+		@Label("Succeeded")
+		boolean succeeded;
+		@Label("Tea Read")
+		long recordsRead;
+		@Label("Tea Written")
+		long recordsWritten;
+		@Label("Tea per Second")
+		double recordsPerSecond;
+		@Label("Bytes In")
+		@DataAmount
+		long bytesIn;
+		@Label("Bytes Out")
+		@DataAmount
+		long bytesOut;
+		@Label("Allocated")
+		@DataAmount
+		long allocated;
+	}
+
+	@Name("tealist.ConversionStage")
+	@Label("Tea Conversion Stage")
+	@Category("TeaList")
+	@Description("Total time and allocation of one stage of a tea conversion")
+	static class ConversionStageEvent extends Event {
+		@Label("Input File")
+		String inputFile;
+		@Label("Stage")
+		String stage;
+		@Label("Wall Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long wallTime;
+		@Label("Allocated")
+		@DataAmount
+		long allocated;
+	}
+}
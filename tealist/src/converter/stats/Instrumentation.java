@@ -0,0 +1,281 @@
+package converter.stats;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+
+import converter.StandardStreams;
+import converter.readers.TeaCursor;
+import converter.writers.TeaSink;
+import tealist.Tea;
+
+/**
+ * Instrumentation measures the stages of one conversion. The converter
+ * tells it which stage it enters, and the cursor and sink wrapped by it
+ * switch to the read and write stages while a tea is read or written.
+ *
+ * When nothing listens and no flight recording is taking the events, a
+ * disabled instrumentation is used that measures nothing and does not wrap
+ * the cursor or sink, so conversions without stats cost nothing extra.
+ *
+ * @author Mats Palm
+ */
+public class Instrumentation {
+	private static final Instrumentation DISABLED = new Instrumentation(null, null);
+	private static final boolean FLIGHT_RECORDER = isFlightRecorderAvailable();
+	private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+	private ConversionStats stats;
+	private List<String> outFileNames;
+	private List<ConversionListener> listeners;
+	private Object event;
+	private long start;
+	private ConversionStage stage;
+	private long stageStart;
+	private long stageAllocated;
+
+	/**
+	 * Constructs an instrumentation
+	 *
+	 * @param stats The stats to fill in, null if disabled
+	 * @param listeners The listeners to tell when the conversion is finished
+	 */
+	private Instrumentation(ConversionStats stats, List<ConversionListener> listeners) {
+		this.stats = stats;
+		this.listeners = listeners;
+	}
+
+	/**
+	 * Starts measuring a conversion.
+	 *
+	 * @param inFileName Input file name
+	 * @param inFileFormat Input file format
+	 * @param outFileFormat Output file format
+	 * @param outFileName Output file name, null for standard output
+	 * @param listeners The listeners to tell when the conversion is finished
+	 * @return The instrumentation, disabled if nothing takes the metrics
+	 */
+	public static Instrumentation start(String inFileName, String inFileFormat, String outFileFormat,
+			String outFileName, List<ConversionListener> listeners) {
+		return start(inFileName, inFileFormat, Collections.singletonList(outFileFormat),
+				Collections.singletonList(outFileName), listeners);
+	}
+
+	/**
+	 * Starts measuring a conversion that writes several output files. The
+	 * stats name all the outputs and count the bytes of all of them.
+	 *
+	 * @param inFileName Input file name
+	 * @param inFileFormat Input file format
+	 * @param outFileFormats Output file formats
+	 * @param outFileNames Output file names, null for standard output
+	 * @param listeners The listeners to tell when the conversion is finished
+	 * @return The instrumentation, disabled if nothing takes the metrics
+	 */
+	public static Instrumentation start(String inFileName, String inFileFormat, List<String> outFileFormats,
+			List<String> outFileNames, List<ConversionListener> listeners) {
+		boolean recording = FLIGHT_RECORDER && FlightRecorderEvents.isEnabled();
+		if(listeners.isEmpty() && !recording) {
+			return DISABLED;
+		}
+		Instrumentation instrumentation = new Instrumentation(new ConversionStats(inFileName, inFileFormat,
+				join(outFileFormats), outFileNames.contains(null) ? null : join(outFileNames)), listeners);
+		instrumentation.outFileNames = outFileNames;
+		if(recording) {
+			instrumentation.event = FlightRecorderEvents.begin();
+		}
+		instrumentation.start = System.nanoTime();
+		instrumentation.enter(ConversionStage.OPEN);
+		return instrumentation;
+	}
+
+	/**
+	 * Enters a stage. The time and allocations since the last switch are
+	 * added to the stage that is left.
+	 *
+	 * @param next The stage to enter
+	 * @return The stage that is left, so it can be entered again
+	 */
+	public ConversionStage enter(ConversionStage next) {
+		if(stats == null) {
+			return next;
+		}
+		long now = System.nanoTime();
+		long allocated = allocatedBytes();
+		ConversionStage previous = stage;
+		if(previous != null) {
+			stats.addStage(previous, now - stageStart, allocated < 0 ? -1 : allocated - stageAllocated);
+		}
+		stage = next;
+		stageStart = now;
+		stageAllocated = allocated;
+		return previous;
+	}
+
+	/**
+	 * Wraps a cursor so reading is measured as the read stage.
+	 *
+	 * @param cursor The cursor
+	 * @return The measured cursor, or the cursor itself if disabled
+	 */
+	public TeaCursor cursor(final TeaCursor cursor) {
+		if(stats == null) {
+			return cursor;
+		}
+		return new TeaCursor() {
+			@Override
+			public Tea next() throws IOException {
+				ConversionStage previous = enter(ConversionStage.READ);
+				try {
+					Tea tea = cursor.next();
+					if(tea != null) {
+						stats.recordRead();
+					}
+					return tea;
+				} finally {
+					enter(previous);
+				}
+			}
+
+			@Override
+			public void close() throws IOException {
+				cursor.close();
+			}
+		};
+	}
+
+	/**
+	 * Wraps a sink so writing is measured as the write stage.
+	 *
+	 * @param sink The sink
+	 * @return The measured sink, or the sink itself if disabled
+	 */
+	public TeaSink sink(final TeaSink sink) {
+		if(stats == null) {
+			return sink;
+		}
+		return new TeaSink() {
+			@Override
+			public void write(Tea tea) throws IOException {
+				ConversionStage previous = enter(ConversionStage.WRITE);
+				try {
+					sink.write(tea);
+					stats.recordWritten();
+				} finally {
+					enter(previous);
+				}
+			}
+
+			@Override
+			public void close() throws IOException {
+				ConversionStage previous = enter(ConversionStage.FLUSH);
+				try {
+					sink.close();
+				} finally {
+					enter(previous);
+				}
+			}
+
+			@Override
+			public void abort() {
+				sink.abort();
+			}
+		};
+	}
+
+	/**
+	 * Stops measuring and hands the stats to the listeners and the flight
+	 * recorder.
+	 *
+	 * @param succeeded true if the conversion succeeded
+	 */
+	public void finish(boolean succeeded) {
+		if(stats == null) {
+			return;
+		}
+		enter(null);
+		long bytesOut = 0;
+		for(String outFileName : outFileNames) {
+			if(outFileName == null) {
+				bytesOut = -1;
+				break;
+			}
+			bytesOut += new File(outFileName).length();
+		}
+		long bytesIn = StandardStreams.isStandardInput(stats.getInFileName()) ? -1 : new File(stats.getInFileName()).length();
+		stats.finish(succeeded, System.nanoTime() - start, bytesIn, bytesOut);
+
+		if(event != null) {
+			FlightRecorderEvents.commit(event, stats);
+		}
+		for(ConversionListener listener : listeners) {
+			listener.conversionFinished(stats);
+		}
+	}
+
+	/**
+	 * Joins names to be shown as one.
+	 *
+	 * @param names The names
+	 * @return The names separated by commas, or the only name which may be null
+	 */
+	private static String join(List<String> names) {
+		if(names.size() == 1) {
+			return names.get(0);
+		}
+		StringBuilder joined = new StringBuilder();
+		for(String name : names) {
+			if(joined.length() > 0) {
+				joined.append(", ");
+			}
+			joined.append(name);
+		}
+		return joined.toString();
+	}
+
+	/**
+	 * Gets the bytes allocated by the current thread so far.
+	 *
+	 * @return Allocated bytes, -1 if the JVM cannot measure them
+	 */
+	private static long allocatedBytes() {
+		return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Gets the thread bean if it can measure allocated bytes.
+	 *
+	 * @return The bean or null
+	 */
+	private static com.sun.management.ThreadMXBean allocationCounter() {
+		try {
+			java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+			if(threads instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+				if(counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled()) {
+					return counter;
+				}
+			}
+		} catch(LinkageError e) {
+			// Not a JVM with com.sun.management
+		}
+		return null;
+	}
+
+	/**
+	 * Checks if the JVM has the flight recorder, which Java 8 before
+	 * update 262 does not have.
+	 *
+	 * @return true if events can be recorded
+	 */
+	private static boolean isFlightRecorderAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event");
+			return true;
+		} catch(ClassNotFoundException e) {
+			return false;
+		}
+	}
+}
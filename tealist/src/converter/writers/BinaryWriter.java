@@ -0,0 +1,254 @@
+package converter.writers;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import converter.BinaryFormat;
+import converter.Compression;
+import converter.StandardStreams;
+import tealist.Tea;
+
+/**
+ * BinaryWriter can write a tea list in the compact binary format described
+ * in {@link BinaryFormat}. The tea is collected in blocks, and each block is
+ * written as columns when it is full. The tea count in the header is only
+ * filled in when the file is written uncompressed.
+ *
+ * @author Mats Palm
+ */
+public class BinaryWriter implements TeaFileWriter {
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void writeFile(List<Tea> teaList, String fileName) throws Exception {
+		TeaSink sink = openSink(fileName);
+		try {
+			for(Tea tea : teaList) {
+				sink.write(tea);
+			}
+		}
+		finally {
+			sink.close();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TeaSink openSink(String fileName) throws IOException {
+		if(fileName == null) {
+			return new BinarySink(StandardStreams.openOutput(), null);
+		}
+		Compression compression = Compression.forName(fileName);
+		if(compression != Compression.NONE) {
+			return openSink(compression.create(fileName));
+		}
+		FileOutputStream fos = new FileOutputStream(fileName);
+		return new BinarySink(fos, fos.getChannel());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TeaSink openSink(OutputStream out) throws IOException {
+		return new BinarySink(out, null);
+	}
+
+	/**
+	 * Collects tea in a block and writes the block as columns.
+	 */
+	private static class BinarySink implements TeaSink {
+		private OutputStream out;
+		private FileChannel channel;
+		private long count;
+
+		private Map<String, Integer> categoryCodes = new HashMap<String, Integer>();
+		private List<String> newCategories = new ArrayList<String>();
+		private int[] codes = new int[BinaryFormat.BLOCK_SIZE];
+		private int[] prices = new int[BinaryFormat.BLOCK_SIZE];
+		private byte[][] names = new byte[BinaryFormat.BLOCK_SIZE][];
+		private byte[][] descriptions = new byte[BinaryFormat.BLOCK_SIZE][];
+		private int size;
+		private ByteBuffer block = ByteBuffer.allocate(64 * 1024);
+
+		/**
+		 * Constructs a sink and writes the header
+		 *
+		 * @param out The stream to write to, it is closed with the sink
+		 * @param channel The channel of the file, used to write the tea count in the header when
+		 *                the sink is closed. If it is null the tea count is left as unknown.
+		 * @throws IOException If there was an I/O error
+		 */
+		private BinarySink(OutputStream out, FileChannel channel) throws IOException {
+			this.out = out;
+			this.channel = channel;
+
+			ByteBuffer header = ByteBuffer.allocate(BinaryFormat.HEADER_SIZE);
+			header.putInt(BinaryFormat.MAGIC);
+			header.putShort(BinaryFormat.VERSION);
+			header.putShort((short) 0);
+			header.putLong(-1);
+			out.write(header.array());
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(Tea tea) throws IOException {
+			String category = tea.getCategory();
+			Integer code = categoryCodes.get(category);
+			if(code == null) {
+				code = categoryCodes.size();
+				categoryCodes.put(category, code);
+				newCategories.add(category);
+			}
+			codes[size] = code;
+			prices[size] = tea.getPrice();
+			names[size] = tea.getName().getBytes(StandardCharsets.UTF_8);
+			descriptions[size] = tea.getDescription().getBytes(StandardCharsets.UTF_8);
+			size++;
+			count++;
+
+			if(size == BinaryFormat.BLOCK_SIZE) {
+				writeBlock();
+			}
+		}
+
+		/**
+		 * Writes the collected tea as a block.
+		 *
+		 * @throws IOException If there was an I/O error
+		 */
+		private void writeBlock() throws IOException {
+			int minPrice = Integer.MAX_VALUE;
+			int maxPrice = Integer.MIN_VALUE;
+			int textBytes = 0;
+			for(int i = 0; i < size; i++) {
+				minPrice = Math.min(minPrice, prices[i]);
+				maxPrice = Math.max(maxPrice, prices[i]);
+				textBytes += names[i].length + descriptions[i].length;
+			}
+			List<byte[]> categoryBytes = new ArrayList<byte[]>();
+			int dictionaryBytes = 4;
+			for(String category : newCategories) {
+				byte[] bytes = category.getBytes(StandardCharsets.UTF_8);
+				categoryBytes.add(bytes);
+				dictionaryBytes += 4 + bytes.length;
+			}
+			int codeWidth = BinaryFormat.width(categoryCodes.size() - 1);
+			int priceWidth = BinaryFormat.width((long) maxPrice - minPrice);
+			int length = 12 + dictionaryBytes + 1 + size * codeWidth + 1 + size * priceWidth + size * 8 + textBytes;
+
+			ensureCapacity(4 + length);
+			block.clear();
+			block.putInt(length);
+			block.putInt(size);
+			block.putInt(minPrice);
+			block.putInt(maxPrice);
+
+			block.putInt(categoryBytes.size());
+			for(byte[] bytes : categoryBytes) {
+				block.putInt(bytes.length);
+				block.put(bytes);
+			}
+			block.put((byte) codeWidth);
+			for(int i = 0; i < size; i++) {
+				BinaryFormat.putUnsigned(block, codeWidth, codes[i]);
+			}
+			block.put((byte) priceWidth);
+			for(int i = 0; i < size; i++) {
+				BinaryFormat.putUnsigned(block, priceWidth, prices[i] - minPrice);
+			}
+			putColumn(names);
+			putColumn(descriptions);
+
+			out.write(block.array(), 0, block.position());
+			newCategories.clear();
+			size = 0;
+		}
+
+		/**
+		 * Puts the lengths and then the bytes of a text column.
+		 *
+		 * @param column The text of each tea in the block
+		 */
+		private void putColumn(byte[][] column) {
+			for(int i = 0; i < size; i++) {
+				block.putInt(column[i].length);
+			}
+			for(int i = 0; i < size; i++) {
+				block.put(column[i]);
+				column[i] = null;
+			}
+		}
+
+		/**
+		 * Makes sure the block buffer can hold a block.
+		 *
+		 * @param capacity Number of bytes needed
+		 */
+		private void ensureCapacity(int capacity) {
+			if(block.capacity() < capacity) {
+				block = ByteBuffer.allocate(Math.max(capacity, block.capacity() * 2));
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void close() throws IOException {
+			if(out == null) {
+				return;
+			}
+			if(size > 0) {
+				writeBlock();
+			}
+			ByteBuffer end = ByteBuffer.allocate(4);
+			end.putInt(0);
+			out.write(end.array());
+			out.flush();
+
+			if(channel != null) {
+				ByteBuffer countBuffer = ByteBuffer.allocate(8);
+				countBuffer.putLong(count);
+				countBuffer.flip();
+				channel.write(countBuffer, BinaryFormat.COUNT_POSITION);
+			}
+			out.close();
+			out = null;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 *
+		 * Neither the last block, the end block nor the tea count is written.
+		 */
+		@Override
+		public void abort() {
+			if(out == null) {
+				return;
+			}
+			try {
+				out.close();
+			}
+			catch(IOException e) {
+				// The sink has already failed
+			}
+			out = null;
+		}
+	}
+}
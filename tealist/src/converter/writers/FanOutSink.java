@@ -0,0 +1,243 @@
+package converter.writers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import tealist.Tea;
+
+/**
+ * A FanOutSink writes the same tea to several sinks, each on a thread of
+ * its own, so a file that is read once can be written in many formats in
+ * about the time it takes to write the slowest of them.
+ *
+ * The tea is handed over in batches. A batch is shared by all the sinks and
+ * is never changed once it is handed over, and neither is the tea in it, so
+ * the sinks only read what the others read. Each sink has a few batches
+ * queued at most, and the thread writing to the fan-out waits when the
+ * slowest sink falls that far behind.
+ *
+ * When a sink fails, the next write to the fan-out fails. The sink that
+ * failed is aborted, the other sinks are still closed when the fan-out is
+ * closed. Aborting the fan-out aborts all of them.
+ *
+ * @author Mats Palm
+ */
+public class FanOutSink implements TeaSink {
+	private static final int BATCH_SIZE = 1024;
+	private static final int BATCHES_AHEAD = 8;
+	/* Marks the end of the tea, compared by identity */
+	private static final Tea[] END = new Tea[0];
+
+	private List<Output> outputs = new ArrayList<Output>();
+	private Tea[] batch = new Tea[BATCH_SIZE];
+	private int size;
+	private boolean closed;
+
+	/**
+	 * Constructs a fan-out and starts a writing thread for each sink.
+	 *
+	 * @param sinks The sinks to write to, they are closed with the fan-out
+	 * @param executor Runs the writing threads, it must be able to run all of them at the same time
+	 */
+	public FanOutSink(List<TeaSink> sinks, ExecutorService executor) {
+		for(TeaSink sink : sinks) {
+			Output output = new Output(sink);
+			outputs.add(output);
+			output.future = executor.submit(output);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(Tea tea) throws IOException {
+		checkFailures();
+		batch[size++] = tea;
+		if(size == BATCH_SIZE) {
+			publish(batch);
+			batch = new Tea[BATCH_SIZE];
+			size = 0;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Waits until every sink has written its tea and been closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if(size > 0) {
+				Tea[] last = new Tea[size];
+				System.arraycopy(batch, 0, last, 0, size);
+				publish(last);
+			}
+			batch = null;
+			publish(END);
+			for(Output output : outputs) {
+				output.future.get();
+			}
+		}
+		catch(InterruptedException e) {
+			for(Output output : outputs) {
+				output.future.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+			throw new IOException("Writing was interrupted");
+		}
+		catch(ExecutionException e) {
+			// Each output catches what its sink throws
+			throw new IllegalStateException(e.getCause());
+		}
+		checkFailures();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The batches that are queued are dropped, and waits until every sink
+	 * has been aborted.
+	 */
+	@Override
+	public void abort() {
+		if(closed) {
+			return;
+		}
+		closed = true;
+		batch = null;
+		try {
+			for(Output output : outputs) {
+				output.aborted = true;
+				output.queue.clear();
+				output.queue.put(END);
+			}
+			for(Output output : outputs) {
+				output.future.get();
+			}
+		}
+		catch(InterruptedException e) {
+			for(Output output : outputs) {
+				output.future.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+		}
+		catch(ExecutionException e) {
+			// Each output catches what its sink throws
+		}
+	}
+
+	/**
+	 * Queues a batch for every sink.
+	 *
+	 * @param tea The batch
+	 * @throws IOException If the thread was interrupted while waiting for a slow sink
+	 */
+	private void publish(Tea[] tea) throws IOException {
+		try {
+			for(Output output : outputs) {
+				output.queue.put(tea);
+			}
+		}
+		catch(InterruptedException e) {
+			for(Output output : outputs) {
+				output.future.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+			throw new IOException("Writing was interrupted");
+		}
+	}
+
+	/**
+	 * Throws the first failure of a sink.
+	 *
+	 * @throws IOException If a sink has failed
+	 */
+	private void checkFailures() throws IOException {
+		for(Output output : outputs) {
+			Exception failure = output.failure;
+			if(failure instanceof IOException) {
+				throw (IOException) failure;
+			}
+			if(failure != null) {
+				throw new IOException("Could not write: " + failure);
+			}
+		}
+	}
+
+	/**
+	 * Writes the queued batches to one sink.
+	 */
+	private static class Output implements Callable<Void> {
+		private TeaSink sink;
+		private BlockingQueue<Tea[]> queue = new ArrayBlockingQueue<Tea[]>(BATCHES_AHEAD);
+		private Future<Void> future;
+		private volatile Exception failure;
+		private volatile boolean aborted;
+
+		/**
+		 * Constructs an output
+		 *
+		 * @param sink The sink to write to
+		 */
+		private Output(TeaSink sink) {
+			this.sink = sink;
+		}
+
+		/**
+		 * Writes batches until the end. After a failure the batches are
+		 * still taken, so the thread writing to the fan-out is not held up,
+		 * and the sink is aborted at the end instead of closed.
+		 *
+		 * @return Nothing
+		 */
+		@Override
+		public Void call() {
+			try {
+				Tea[] tea;
+				while((tea = queue.take()) != END) {
+					if(failure == null && !aborted) {
+						try {
+							for(Tea t : tea) {
+								sink.write(t);
+							}
+						}
+						catch(Exception e) {
+							failure = e;
+						}
+					}
+				}
+			}
+			catch(InterruptedException e) {
+				failure = new IOException("Writing was interrupted");
+			}
+			finally {
+				if(failure != null || aborted) {
+					sink.abort();
+				}
+				else {
+					try {
+						sink.close();
+					}
+					catch(Exception e) {
+						failure = e;
+						sink.abort();
+					}
+				}
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package converter.writers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+import tealist.Tea;
+
+/**
+ * A SpooledSink lets a writer that only writes files write to a stream.
+ * The tea is written to a temporary file, which is copied to the stream
+ * when the sink is closed and then removed. It is used by the default
+ * {@link TeaFileWriter#openSink(OutputStream)}.
+ *
+ * @author Mats Palm
+ */
+class SpooledSink implements TeaSink {
+	private TeaSink sink;
+	private File file;
+	private OutputStream out;
+
+	/**
+	 * Constructs a sink
+	 *
+	 * @param sink The sink writing the temporary file
+	 * @param file The temporary file
+	 * @param out The stream to copy the file to
+	 */
+	private SpooledSink(TeaSink sink, File file, OutputStream out) {
+		this.sink = sink;
+		this.file = file;
+		this.out = out;
+	}
+
+	/**
+	 * Opens a sink to a temporary file that is copied to a stream.
+	 *
+	 * @param writer The writer of the format
+	 * @param out The stream, it is closed with the sink
+	 * @return The sink
+	 * @throws IOException If the temporary file could not be opened
+	 */
+	static TeaSink open(TeaFileWriter writer, OutputStream out) throws IOException {
+		File file = null;
+		boolean opened = false;
+		try {
+			file = File.createTempFile("tealist-", ".tmp");
+			TeaSink sink = writer.openSink(file.getPath());
+			opened = true;
+			return new SpooledSink(sink, file, out);
+		}
+		finally {
+			if(!opened) {
+				if(file != null) {
+					delete(file);
+				}
+				closeQuietly(out);
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(Tea tea) throws IOException {
+		sink.write(tea);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The temporary file is copied to the stream and removed. If that
+	 * fails the sink is aborted.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(file == null) {
+			return;
+		}
+		boolean succeeded = false;
+		try {
+			sink.close();
+			Files.copy(file.toPath(), out);
+			out.close();
+			delete(file);
+			file = null;
+			succeeded = true;
+		}
+		finally {
+			if(!succeeded) {
+				abort();
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The temporary file is removed and the stream is closed.
+	 */
+	@Override
+	public void abort() {
+		if(file == null) {
+			return;
+		}
+		sink.abort();
+		delete(file);
+		file = null;
+		closeQuietly(out);
+	}
+
+	/**
+	 * Deletes a file, or deletes it when the program ends if it can not be
+	 * deleted now.
+	 *
+	 * @param file The file
+	 */
+	private static void delete(File file) {
+		if(!file.delete() && file.exists()) {
+			file.deleteOnExit();
+		}
+	}
+
+	/**
+	 * Closes a stream without reporting errors, used when writing has
+	 * already failed.
+	 *
+	 * @param out The stream
+	 */
+	private static void closeQuietly(OutputStream out) {
+		try {
+			out.close();
+		}
+		catch(IOException e) {
+			// The original fault is reported to the caller
+		}
+	}
+}
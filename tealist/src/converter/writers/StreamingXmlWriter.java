@@ -0,0 +1,181 @@
+package converter.writers;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import converter.Compression;
+import converter.StandardStreams;
+import tealist.Tea;
+
+/**
+ * StreamingXmlWriter can write a tea list as XML. Each tea is written to a
+ * buffered UTF-8 stream as soon as it arrives, the output is the same as
+ * the one written by {@link XmlWriter}.
+ *
+ * @author Mats Palm
+ */
+public class StreamingXmlWriter implements TeaFileWriter {
+
+	private static final String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void writeFile(List<Tea> teaList, String fileName) throws Exception {
+		TeaSink sink = openSink(fileName);
+		try {
+			for(Tea tea : teaList) {
+				sink.write(tea);
+			}
+		}
+		finally {
+			sink.close();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TeaSink openSink(String fileName) throws IOException {
+		if(fileName == null) {
+			return new XmlSink(StandardStreams.openOutput());
+		}
+		Compression compression = Compression.forName(fileName);
+		if(compression != Compression.NONE) {
+			return openSink(compression.create(fileName));
+		}
+		return new XmlSink(new FileOutputStream(fileName));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TeaSink openSink(OutputStream out) throws IOException {
+		return new XmlSink(out);
+	}
+
+	/**
+	 * Writes the tealist element and one tea element per tea.
+	 */
+	private static class XmlSink implements TeaSink {
+		private Writer out;
+		private boolean empty = true;
+
+		/**
+		 * Constructs a sink and writes the start of the document
+		 *
+		 * @param stream The stream to write to, it is closed with the sink
+		 * @throws IOException If there was an I/O error
+		 */
+		private XmlSink(OutputStream stream) throws IOException {
+			this.out = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"), BUFFER_SIZE);
+			out.write(HEADER);
+			out.write('<');
+			out.write(Tea.TEALIST);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(Tea tea) throws IOException {
+			if(empty) {
+				out.write('>');
+				empty = false;
+			}
+			out.write("<" + Tea.TEA + ">");
+			writeElement(Tea.CATEGORY, tea.getCategory());
+			writeElement(Tea.NAME, tea.getName());
+			out.write("<" + Tea.PRICE + ">");
+			out.write(Integer.toString(tea.getPrice()));
+			out.write("</" + Tea.PRICE + ">");
+			writeElement(Tea.DESCRIPTION, tea.getDescription());
+			out.write("</" + Tea.TEA + ">");
+		}
+
+		/**
+		 * Writes an element with escaped text content.
+		 *
+		 * @param tag Name of the element
+		 * @param text The text content
+		 * @throws IOException If there was an I/O error
+		 */
+		private void writeElement(String tag, String text) throws IOException {
+			out.write('<');
+			out.write(tag);
+			out.write('>');
+			escape(text);
+			out.write("</");
+			out.write(tag);
+			out.write('>');
+		}
+
+		/**
+		 * Writes text with the characters that are not allowed in XML
+		 * text content escaped. Runs of plain characters are written
+		 * in one go.
+		 *
+		 * @param text The text to write
+		 * @throws IOException If there was an I/O error
+		 */
+		private void escape(String text) throws IOException {
+			int start = 0;
+			int length = text.length();
+			for(int i = 0; i < length; i++) {
+				String entity;
+				switch(text.charAt(i)) {
+				case '<': entity = "&lt;"; break;
+				case '>': entity = "&gt;"; break;
+				case '&': entity = "&amp;"; break;
+				case '\r': entity = "&#13;"; break;
+				default: continue;
+				}
+				out.write(text, start, i - start);
+				out.write(entity);
+				start = i + 1;
+			}
+			out.write(text, start, length - start);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void close() throws IOException {
+			if(out == null) {
+				return;
+			}
+			out.write(empty ? "/>" : "</" + Tea.TEALIST + ">");
+			out.close();
+			out = null;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 *
+		 * The tealist element is left without its end tag.
+		 */
+		@Override
+		public void abort() {
+			if(out == null) {
+				return;
+			}
+			try {
+				out.close();
+			}
+			catch(IOException e) {
+				// The sink has already failed
+			}
+			out = null;
+		}
+	}
+}
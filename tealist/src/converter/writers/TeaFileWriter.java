@@ -1,6 +1,7 @@
 package converter.writers;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 import tealist.Tea;
@@ -18,9 +19,36 @@ public interface TeaFileWriter {
 	 * 
 	 * @param teaList A list of the tea
 	 * @param fileName Name of the file, if it is null the file will be written to 
-	 *                 system.out
+	 *                 standard output in large blocks
 	 * @throws IOException If there was an I/O error
 	 */
 	public void writeFile(List<Tea> teaList, String fileName) throws Exception;
 
+	/**
+	 * Opens a sink that writes tea information to a file one tea at a time.
+	 * The caller is responsible for closing the sink.
+	 * 
+	 * @param fileName Name of the file, if it is null the file will be written to 
+	 *                 system.out
+	 * @return A sink for the tea
+	 * @throws IOException If the file could not be opened
+	 */
+	public TeaSink openSink(String fileName) throws IOException;
+
+	/**
+	 * Opens a sink that writes tea information to a stream, such as a file
+	 * that is compressed while it is written. The stream is closed with the
+	 * sink. By default the tea is written to a temporary file with
+	 * {@link #openSink(String)} and copied to the stream when the sink is
+	 * closed, a writer that can write to the stream directly should do
+	 * that instead.
+	 * 
+	 * @param out The stream to write to
+	 * @return A sink for the tea
+	 * @throws IOException If there was an I/O error
+	 */
+	public default TeaSink openSink(OutputStream out) throws IOException {
+		return SpooledSink.open(this, out);
+	}
+
 }
@@ -0,0 +1,35 @@
+package converter.writers;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import tealist.Tea;
+
+/**
+ * A TeaSink writes tea information one record at a time, so
+ * a tea list never has to be held in memory as a whole. 
+ * The output is complete first when the sink is closed. A sink that
+ * can not be completed, since reading or writing failed, is aborted
+ * instead.
+ * 
+ * @author Mats Palm
+ */
+public interface TeaSink extends Closeable {
+
+	/**
+	 * Writes the next tea.
+	 * 
+	 * @param tea The tea to write
+	 * @throws IOException If there was an I/O error
+	 */
+	public void write(Tea tea) throws IOException;
+
+	/**
+	 * Stops writing after a failure. The end of the format is not written,
+	 * so what has been written is never mistaken for a complete output,
+	 * and the resources of the sink are released without reporting errors.
+	 * Aborting a sink that is closed does nothing.
+	 */
+	public void abort();
+
+}
@@ -1,15 +1,21 @@
 package converter.writers;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.OutputStreamWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
+import converter.Compression;
+import converter.StandardStreams;
 import tealist.Tea;
 
 /**
- * TextWriter can write a tea list as plain text
+ * TextWriter can write a tea list as plain text. The fields are encoded 
+ * as UTF-8 straight into a buffer that is written in large blocks, so 
+ * writing a tea does not create any objects.
  * 
  * @author Mats Palm
  */
@@ -21,29 +27,115 @@ public class TextWriter implements TeaFileWriter {
 	@Override
 	public void writeFile(List<Tea> teaList, String fileName) throws Exception {
 		{
-			if (fileName == null) {
+			TeaSink sink = openSink(fileName);
+			try {
 				for (Tea tea : teaList) {
-					System.out.println(tea.category + ";" + tea.name + ";" + tea.price + ";" + tea.description);
+					sink.write(tea);
 				}
-			} else {
-				File file = new File(fileName);
+			} finally {
+				sink.close();
+			}
+		}
+	}
 
-				if (!file.exists()) {
-					file.createNewFile();
-				}
-				FileOutputStream fos = new FileOutputStream(file);
-				OutputStreamWriter osw = new OutputStreamWriter(fos, "UTF-8");
-				BufferedWriter bw = new BufferedWriter(osw);
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TeaSink openSink(String fileName) throws IOException {
+		if (fileName == null) {
+			return new TextSink(new Utf8Output(Channels.newChannel(StandardStreams.openOutput())), true);
+		}
+		Compression compression = Compression.forName(fileName);
+		if (compression != Compression.NONE) {
+			return openSink(compression.create(fileName));
+		}
+		File file = new File(fileName);
+
+		if (!file.exists()) {
+			file.createNewFile();
+		}
+		FileOutputStream fos = new FileOutputStream(file);
+		return new TextSink(new Utf8Output(fos.getChannel()), false);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TeaSink openSink(OutputStream out) throws IOException {
+		return new TextSink(new Utf8Output(Channels.newChannel(out)), false);
+	}
+
+	/**
+	 * Writes one line of text per tea. Lines are separated by a new line,
+	 * there is no new line after the last tea in a file. On standard output
+	 * every line ends with a new line.
+	 */
+	private static class TextSink implements TeaSink {
+		private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+		private Utf8Output out;
+		private boolean endEveryLine;
+		private boolean first = true;
+
+		/**
+		 * Constructs a sink
+		 *
+		 * @param out The output to write to
+		 * @param endEveryLine true if every line should end with a new line,
+		 *                     false if there is no new line after the last line
+		 */
+		private TextSink(Utf8Output out, boolean endEveryLine) {
+			this.out = out;
+			this.endEveryLine = endEveryLine;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(Tea tea) throws IOException {
+			if (!first && !endEveryLine) {
+				out.write(LINE_SEPARATOR);
+			}
+			out.write(tea.getCategory());
+			out.write(';');
+			out.write(tea.getName());
+			out.write(';');
+			out.write(tea.getPrice());
+			out.write(';');
+			out.write(tea.getDescription());
+			if (endEveryLine) {
+				out.write(LINE_SEPARATOR);
+			}
+			first = false;
+		}
 
-				for (int i = 0; i < teaList.size(); i++) {
-					Tea tea = teaList.get(i);
-					bw.write(tea.category + ";" + tea.name + ";" + tea.price + ";" + tea.description);
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void close() throws IOException {
+			if (out != null) {
+				out.close();
+				out = null;
+			}
+		}
 
-					if (i + 1 != teaList.size()) {
-						bw.newLine();
-					}
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void abort() {
+			if (out != null) {
+				try {
+					out.close();
+				}
+				catch (IOException e) {
+					// The sink has already failed
 				}
-				bw.close();
+				out = null;
 			}
 		}
 	}
@@ -0,0 +1,189 @@
+package converter.writers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Utf8Output encodes text as UTF-8 straight into a direct buffer and
+ * writes the buffer to a channel when it is full. Strings and numbers are
+ * encoded without creating any objects, and text that is only ASCII is
+ * copied a char at a time without any checks.
+ *
+ * Chars that are half of a surrogate pair without the other half are
+ * written as ?, like the UTF-8 encoder of the JDK does.
+ *
+ * @author Mats Palm
+ */
+class Utf8Output implements Closeable {
+	private static final int BUFFER_SIZE = 256 * 1024;
+	/* The most bytes a char needs, a surrogate pair needs 4 bytes for 2 chars */
+	private static final int MAX_BYTES_PER_CHAR = 3;
+	private static final int MAX_INT_LENGTH = 11;
+
+	private WritableByteChannel channel;
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private byte[] digits = new byte[MAX_INT_LENGTH];
+
+	/**
+	 * Constructs an output
+	 *
+	 * @param channel The channel to write to, it is closed with the output
+	 */
+	Utf8Output(WritableByteChannel channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * Writes a string.
+	 *
+	 * @param s The string
+	 * @throws IOException If there was an I/O error
+	 */
+	void write(String s) throws IOException {
+		int length = s.length();
+		if(buffer.remaining() < length * MAX_BYTES_PER_CHAR) {
+			flush();
+			if(buffer.remaining() < length * MAX_BYTES_PER_CHAR) {
+				writeLong(s);
+				return;
+			}
+		}
+		int i = 0;
+		while(i < length && s.charAt(i) < 0x80) {
+			buffer.put((byte) s.charAt(i++));
+		}
+		while(i < length) {
+			i = encode(s, i);
+		}
+	}
+
+	/**
+	 * Writes a string that may not fit in the buffer.
+	 *
+	 * @param s The string
+	 * @throws IOException If there was an I/O error
+	 */
+	private void writeLong(String s) throws IOException {
+		int i = 0;
+		while(i < s.length()) {
+			if(buffer.remaining() < 2 * MAX_BYTES_PER_CHAR) {
+				flush();
+			}
+			i = encode(s, i);
+		}
+	}
+
+	/**
+	 * Encodes the char at an index, or the surrogate pair starting at it.
+	 * The buffer must have room for the bytes.
+	 *
+	 * @param s The string
+	 * @param i The index
+	 * @return The index of the next char
+	 */
+	private int encode(String s, int i) {
+		char c = s.charAt(i);
+		if(c < 0x80) {
+			buffer.put((byte) c);
+		}
+		else if(c < 0x800) {
+			buffer.put((byte) (0xC0 | c >> 6));
+			buffer.put((byte) (0x80 | c & 0x3F));
+		}
+		else if(Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+			int codePoint = Character.toCodePoint(c, s.charAt(i + 1));
+			buffer.put((byte) (0xF0 | codePoint >> 18));
+			buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+			buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+			buffer.put((byte) (0x80 | codePoint & 0x3F));
+			return i + 2;
+		}
+		else if(Character.isSurrogate(c)) {
+			buffer.put((byte) '?');
+		}
+		else {
+			buffer.put((byte) (0xE0 | c >> 12));
+			buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+			buffer.put((byte) (0x80 | c & 0x3F));
+		}
+		return i + 1;
+	}
+
+	/**
+	 * Writes a number in decimal.
+	 *
+	 * @param value The number
+	 * @throws IOException If there was an I/O error
+	 */
+	void write(int value) throws IOException {
+		if(buffer.remaining() < MAX_INT_LENGTH) {
+			flush();
+		}
+		long rest = value;
+		if(rest < 0) {
+			buffer.put((byte) '-');
+			rest = -rest;
+		}
+		int count = 0;
+		do {
+			digits[count++] = (byte) ('0' + rest % 10);
+			rest /= 10;
+		}
+		while(rest > 0);
+		while(count > 0) {
+			buffer.put(digits[--count]);
+		}
+	}
+
+	/**
+	 * Writes bytes that are already encoded.
+	 *
+	 * @param bytes The bytes
+	 * @throws IOException If there was an I/O error
+	 */
+	void write(byte[] bytes) throws IOException {
+		if(buffer.remaining() < bytes.length) {
+			flush();
+		}
+		buffer.put(bytes);
+	}
+
+	/**
+	 * Writes a single ASCII char.
+	 *
+	 * @param c The char
+	 * @throws IOException If there was an I/O error
+	 */
+	void write(char c) throws IOException {
+		if(!buffer.hasRemaining()) {
+			flush();
+		}
+		buffer.put((byte) c);
+	}
+
+	/**
+	 * Writes what is in the buffer to the channel.
+	 *
+	 * @throws IOException If there was an I/O error
+	 */
+	void flush() throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Flushes the buffer and closes the channel.
+	 *
+	 * @throws IOException If there was an I/O error
+	 */
+	@Override
+	public void close() throws IOException {
+		flush();
+		channel.close();
+	}
+}
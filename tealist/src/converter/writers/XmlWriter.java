@@ -1,12 +1,12 @@
 package converter.writers;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
@@ -15,6 +15,9 @@ import javax.xml.transform.stream.StreamResult;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import converter.Compression;
+import converter.StandardStreams;
+import converter.XmlParsers;
 import tealist.Tea;
 
 /**
@@ -23,53 +26,176 @@ import tealist.Tea;
  * @author Mats Palm
  */
 public class XmlWriter implements TeaFileWriter {
-	
-	/** 
+
+	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public void writeFile(List<Tea> teaList, String fileName) throws Exception {
-		DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
+		TeaSink sink = openSink(fileName);
+		try {
+			for(Tea tea : teaList) {
+				sink.write(tea);
+			}
+		}
+		finally {
+			sink.close();
+		}
+	}
 
-		Document doc = docBuilder.newDocument();
-		Element rootElement = doc.createElement(Tea.TEALIST);
-		doc.appendChild(rootElement);
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The tea is collected in a document that is written to the file
+	 * when the sink is closed.
+	 */
+	@Override
+	public TeaSink openSink(String fileName) throws IOException {
+		if(fileName == null) {
+			return openSink(StandardStreams.openOutput());
+		}
+		Compression compression = Compression.forName(fileName);
+		if(compression != Compression.NONE) {
+			return openSink(compression.create(fileName));
+		}
+		return new DomSink(newDocument(), fileName, null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The tea is collected in a document that is written to the stream
+	 * when the sink is closed.
+	 */
+	@Override
+	public TeaSink openSink(OutputStream out) throws IOException {
+		try {
+			return new DomSink(newDocument(), null, out);
+		}
+		catch(IOException e) {
+			out.close();
+			throw e;
+		}
+	}
 
-		for(Tea tea : teaList) {
+	/**
+	 * Creates an empty document.
+	 *
+	 * @return The document
+	 * @throws IOException If the document could not be created
+	 */
+	private static Document newDocument() throws IOException {
+		try {
+			DocumentBuilder docBuilder = XmlParsers.documentBuilder();
+
+			return docBuilder.newDocument();
+		}
+		catch(Exception e) {
+			throw new IOException("Could not create XML document: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Builds a document with one element per tea.
+	 */
+	private static class DomSink implements TeaSink {
+		private Document doc;
+		private Element rootElement;
+		private String fileName;
+		private OutputStream out;
+
+		/**
+		 * Constructs a sink
+		 *
+		 * @param doc An empty document
+		 * @param fileName Name of the file, used when the stream is null
+		 * @param out The stream to write the document to instead of the file, it is closed
+		 *            with the sink
+		 */
+		private DomSink(Document doc, String fileName, OutputStream out) {
+			this.doc = doc;
+			this.fileName = fileName;
+			this.out = out;
+			rootElement = doc.createElement(Tea.TEALIST);
+			doc.appendChild(rootElement);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(Tea tea) {
 			Element teaElement = doc.createElement(Tea.TEA);
 			rootElement.appendChild(teaElement);
 
 			Element categoryElement = doc.createElement(Tea.CATEGORY);
-			categoryElement.appendChild(doc.createTextNode(tea.category));
+			categoryElement.appendChild(doc.createTextNode(tea.getCategory()));
 			teaElement.appendChild(categoryElement);
 
 			Element nameElement = doc.createElement(Tea.NAME);
-			nameElement.appendChild(doc.createTextNode(tea.name));
+			nameElement.appendChild(doc.createTextNode(tea.getName()));
 			teaElement.appendChild(nameElement);
 
 			Element priceElement = doc.createElement(Tea.PRICE);
-			priceElement.appendChild(doc.createTextNode("" + tea.price));
+			priceElement.appendChild(doc.createTextNode("" + tea.getPrice()));
 			teaElement.appendChild(priceElement);
 
 			Element descriptionElement = doc.createElement(Tea.DESCRIPTION);
-			descriptionElement.appendChild(doc.createTextNode(tea.description));
+			descriptionElement.appendChild(doc.createTextNode(tea.getDescription()));
 			teaElement.appendChild(descriptionElement);
-		}			
-
-		TransformerFactory transformerFactory = TransformerFactory.newInstance();
-		Transformer transformer = transformerFactory.newTransformer();
-		DOMSource source = new DOMSource(doc);
-		StreamResult result;
-
-		if(fileName == null) {
-			result = new StreamResult(System.out);
-		}
-		else {
-			result = new StreamResult(new File(fileName));
 		}
 
-		transformer.transform(source, result);					
-	}		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void close() throws IOException {
+			if(doc == null) {
+				return;
+			}
+			try {
+				Transformer transformer = XmlParsers.transformer();
+				DOMSource source = new DOMSource(doc);
+				StreamResult result;
+
+				if(out != null) {
+					result = new StreamResult(out);
+				}
+				else {
+					result = new StreamResult(new File(fileName));
+				}
+
+				transformer.transform(source, result);
+			}
+			catch(Exception e) {
+				throw new IOException("Could not write XML document: " + e.getMessage());
+			}
+			finally {
+				doc = null;
+				if(out != null) {
+					out.close();
+					out = null;
+				}
+			}
+		}
 
+		/**
+		 * {@inheritDoc}
+		 *
+		 * The document is dropped without being written.
+		 */
+		@Override
+		public void abort() {
+			doc = null;
+			if(out != null) {
+				try {
+					out.close();
+				}
+				catch(IOException e) {
+					// The sink has already failed
+				}
+				out = null;
+			}
+		}
+	}
 }
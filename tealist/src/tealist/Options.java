@@ -7,7 +7,11 @@ package tealist;
  * @version 2011-10-24
  */
 public enum Options {
-	FROM_FILE_FORMAT("-f"), TO_FILE_FORMAT("-t"), INPUT_FILE("-i"), OUTPUT_FILE("-o"), LIST_FILE_FORMATS("-l"), HELP("-h"), ERROR("!error");
+	FROM_FILE_FORMAT("-f"), TO_FILE_FORMAT("-t"), INPUT_FILE("-i"), OUTPUT_FILE("-o"), LIST_FILE_FORMATS("-l"), HELP("-h"), PARALLELISM("-p"), COMPRESSION_THREADS("-z"), 
+	BATCH_INPUT("-b"), OUTPUT_DIRECTORY("-d"), CONCURRENCY("-j"), 
+	CATEGORY("-c"), MIN_PRICE("-min"), MAX_PRICE("-max"), NAME_PREFIX("-n"), SORT("-s"), SORT_MEMORY("-m"), TOP("-top"), FIELDS("-fields"), GROUP_BY_CATEGORY("-g"), 
+	BUILD_INDEX("-index"), FIND("-find"), SEARCH("-search"), MERGE("-merge"), MERGE_FORMAT("-mf"), 
+	STATS("--stats"), PIPELINE("--pipeline"), WATCH("--watch"), CACHE("--cache"), SERVER("--server"), CLIENT("--client"), ERROR("!error");
 
 	private String value;
 	
@@ -3,6 +3,9 @@ package tealist;
 /**
  * Information regarding tea.
  * 
+ * The fields are read through the getters, so that a reader can return tea 
+ * that only decode a field when it is first asked for. 
+ * 
  * @author Thomas Ejnefjäll 
  */
 public class Tea {
@@ -14,10 +17,10 @@ public class Tea {
 							   PRICE = "price",
 							   DESCRIPTION = "description";	
 	
-	public String category;
-	public String name;
-	public int price;
-	public String description;
+	private String category;
+	private String name;
+	private int price;
+	private String description;
 	
 	/**
 	 * Constructs a tea object.
@@ -39,4 +42,52 @@ public class Tea {
 		this.price = price;
 		this.description = description;
 	}
+	/**
+	 * @return the tea category
+	 */
+	public String getCategory() {
+		return category;
+	}
+	/**
+	 * @param category the tea category
+	 */
+	public void setCategory(String category) {
+		this.category = category;
+	}
+	/**
+	 * @return the name of the tea
+	 */
+	public String getName() {
+		return name;
+	}
+	/**
+	 * @param name the name of the tea
+	 */
+	public void setName(String name) {
+		this.name = name;
+	}
+	/**
+	 * @return the price
+	 */
+	public int getPrice() {
+		return price;
+	}
+	/**
+	 * @param price the price
+	 */
+	public void setPrice(int price) {
+		this.price = price;
+	}
+	/**
+	 * @return a description containing flavors, how it is done etc
+	 */
+	public String getDescription() {
+		return description;
+	}
+	/**
+	 * @param description a description containing flavors, how it is done etc
+	 */
+	public void setDescription(String description) {
+		this.description = description;
+	}
 }
\ No newline at end of file
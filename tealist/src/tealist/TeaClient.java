@@ -0,0 +1,103 @@
+package tealist;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * A TeaClient sends a request to a running TeaServer and prints the 
+ * response, so the output is the same as if the request was run by this 
+ * program. The token of the server is read from its token file, see 
+ * {@link TeaServer}.
+ * 
+ * @author Mats Palm
+ */
+public class TeaClient 
+{
+	private int port;
+	
+	/**
+	 * Constructs a client
+	 * 
+	 * @param port The port the server listens on
+	 */
+	public TeaClient(int port) 
+	{
+		this.port = port;
+	}
+	
+	/**
+	 * Sends a request and copies the response to standard output. Relative 
+	 * file names are resolved against the current directory of this program.
+	 * 
+	 * @param args The options of the request
+	 * @throws IOException If the server could not be reached or its token could not be read
+	 */
+	public void send(List<String> args) throws IOException 
+	{
+		File tokenFile = TeaServer.tokenFile(this.port);
+		if(!tokenFile.isFile())
+		{
+			throw new IOException("No server is running on port " + this.port + ", " + tokenFile + " does not exist");
+		}
+		String token = new String(Files.readAllBytes(tokenFile.toPath()), StandardCharsets.US_ASCII).trim();
+		
+		URL url = new URL("http", "127.0.0.1", this.port, TeaServer.PATH);
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		try
+		{
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			connection.setRequestProperty(TeaServer.DIRECTORY_HEADER, System.getProperty("user.dir"));
+			connection.setRequestProperty(TeaServer.TOKEN_HEADER, token);
+			connection.setRequestProperty("Content-Type", "text/plain; charset=UTF-8");
+			
+			StringBuilder body = new StringBuilder();
+			for(String arg : args)
+			{
+				body.append(arg).append('\n');
+			}
+			OutputStream out = connection.getOutputStream();
+			try
+			{
+				out.write(body.toString().getBytes(StandardCharsets.UTF_8));
+			}
+			finally
+			{
+				out.close();
+			}
+			
+			if(connection.getResponseCode() != HttpURLConnection.HTTP_OK)
+			{
+				throw new IOException("The server answered " + connection.getResponseCode() + " " + connection.getResponseMessage());
+			}
+			InputStream in = connection.getInputStream();
+			try
+			{
+				PrintStream console = System.out;
+				byte[] buf = new byte[64 * 1024];
+				int read;
+				while((read = in.read(buf)) > 0)
+				{
+					console.write(buf, 0, read);
+				}
+				console.flush();
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		finally
+		{
+			connection.disconnect();
+		}
+	}
+}
\ No newline at end of file
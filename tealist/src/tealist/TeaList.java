@@ -1,12 +1,29 @@
 package tealist;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import converter.BatchConverter;
+import converter.BatchWatcher;
+import converter.ConversionSettings;
+import converter.ParseCache;
+import converter.StandardStreams;
 import converter.FileFormats;
 import converter.TeaFileConverter;
+import converter.TeaMerger;
+import converter.index.DescriptionIndex;
+import converter.index.TeaIndex;
+import converter.query.SortField;
+import converter.query.SortKey;
+import converter.query.TeaQuery;
+import converter.stats.ConversionListener;
+import converter.stats.ConversionStats;
 
 /**
  * Handles parsing of options and conversion between different files 
@@ -16,6 +33,25 @@ import converter.TeaFileConverter;
  */
 public class TeaList 
 {	
+	private File directory;
+	
+	/**
+	 * Constructs a TeaList that resolves file names against the current directory
+	 */
+	public TeaList()
+	{
+		this(null);
+	}
+	/**
+	 * Constructs a TeaList that resolves relative file names against a directory,
+	 * used when the request comes from another program.
+	 * 
+	 * @param directory The directory or null for the current directory
+	 */
+	public TeaList(File directory)
+	{
+		this.directory = directory;
+	}
 	/**
 	 * Process a request containing one or more options. For information
 	 * on valid options see the readme file.
@@ -24,8 +60,13 @@ public class TeaList
 	 */
 	public void processRequest(String[] args) 
 	{
-		Map<Options, String> request = this.parseRequest(args);
-		request = this.validateRequest(request);
+		Map<Options, List<String>> values = new HashMap<Options, List<String>>();
+		Map<Options, String> request = this.parseRequest(args, values);
+		if(this.directory != null)
+		{
+			this.resolveFiles(request, values);
+		}
+		request = this.validateRequest(request, values);
 		
 		if(request.containsKey(Options.ERROR))
 		{
@@ -33,7 +74,23 @@ public class TeaList
 		}
 		else
 		{
-			if(request.containsKey(Options.LIST_FILE_FORMATS))
+			if(request.containsKey(Options.SERVER))
+			{
+				try {
+					new TeaServer(Integer.parseInt(request.get(Options.SERVER))).start();
+				} catch (Exception e) {
+					this.showError("The server could not be started: " + e.getMessage());					
+				}
+			}
+			else if(request.containsKey(Options.CLIENT))
+			{
+				try {
+					this.sendToServer(request, args);
+				} catch (Exception e) {
+					this.showError("The server could not be reached: " + e.getMessage());					
+				}
+			}
+			else if(request.containsKey(Options.LIST_FILE_FORMATS))
 			{
 				this.showFileFormats();
 			}
@@ -41,10 +98,42 @@ public class TeaList
 			{
 				this.showHelp();
 			}
+			else if(request.containsKey(Options.SEARCH))
+			{
+				try {
+					this.searchFiles(request, values);
+				} catch (Exception e) {
+					this.showError(e.getMessage());					
+				}
+			}
+			else if(request.containsKey(Options.BATCH_INPUT))
+			{
+				try {
+					this.convertBatch(request, values);
+				} catch (Exception e) {
+					this.showError(e.getMessage());					
+				}
+			}
+			else if(request.containsKey(Options.BUILD_INDEX) || request.containsKey(Options.FIND))
+			{
+				try {
+					this.indexFile(request);
+				} catch (Exception e) {
+					this.showError(e.getMessage());					
+				}
+			}
+			else if(request.containsKey(Options.MERGE))
+			{
+				try {
+					this.mergeFiles(request);
+				} catch (Exception e) {
+					this.showError(e.getMessage());					
+				}
+			}
 			else if(request.containsKey(Options.FROM_FILE_FORMAT))
 			{
 				try {
-					this.convertFile(request);
+					this.convertFile(request, values);
 				} catch (Exception e) {
 					this.showError(e.getMessage());					
 				}
@@ -52,12 +141,15 @@ public class TeaList
 		}
 	}
 	/**
-	 * Parse the request. 
+	 * Parse the request. The options that can have many values, -t -o and
+	 * -b, get all their values in a list as well, and their first value in
+	 * the map that is returned. 
 	 * 
 	 * @param args The options given to the program
+	 * @param values A map to add the values of the options with many values to
 	 * @return a map with the options and there values when needed
 	 */
-	private Map<Options, String> parseRequest(String[] args) 
+	private Map<Options, String> parseRequest(String[] args, Map<Options, List<String>> values) 
 	{
 		Map<Options, String> request = new HashMap<Options, String>();
 		
@@ -94,7 +186,14 @@ public class TeaList
 				}
 				else if(args.length > i + 1)
 				{
-					request.put(Options.TO_FILE_FORMAT, args[++i]);
+					List<String> formats = new ArrayList<String>();
+					formats.add(args[++i]);
+					while(args.length > i + 1 && !args[i + 1].startsWith("-"))
+					{
+						formats.add(args[++i]);
+					}
+					request.put(Options.TO_FILE_FORMAT, formats.get(0));
+					values.put(Options.TO_FILE_FORMAT, formats);
 				}
 				else
 				{
@@ -122,118 +221,1154 @@ public class TeaList
 				{
 					request.put(Options.ERROR, "-o can only be used once");
 				}
+				else if(args.length > i + 1 && StandardStreams.NAME.equals(args[i + 1]))
+				{
+					// - is standard output, just as no value
+					i++;
+					request.put(Options.OUTPUT_FILE, null);
+					values.put(Options.OUTPUT_FILE, new ArrayList<String>());
+				}
 				else if(args.length > i + 1 && !args[i + 1].startsWith("-"))
 				{
-					request.put(Options.OUTPUT_FILE, args[++i]);
+					List<String> outputs = new ArrayList<String>();
+					outputs.add(args[++i]);
+					while(args.length > i + 1 && !args[i + 1].startsWith("-"))
+					{
+						outputs.add(args[++i]);
+					}
+					request.put(Options.OUTPUT_FILE, outputs.get(0));
+					values.put(Options.OUTPUT_FILE, outputs);
 				}
 				else
 				{
 					request.put(Options.OUTPUT_FILE, null);
+					values.put(Options.OUTPUT_FILE, new ArrayList<String>());
 				}
 			}
-			else
+			else if(Options.PARALLELISM.equals(args[i])) 
 			{
-				request.put(Options.ERROR, "Invalid option: " + args[i]);
+				if(request.containsKey(Options.PARALLELISM))
+				{
+					request.put(Options.ERROR, "-p can only be used once");
+				}
+				else if(args.length > i + 1)
+				{
+					request.put(Options.PARALLELISM, args[++i]);
+				}
+				else
+				{
+					request.put(Options.ERROR, "-p must be followed by the number of threads");
+				}
 			}
-		}
-		return request;
-	}
-	/**
-	 * Checks if a request is valid. If there is an error an error value is 
-	 * added to the map with information about the error.
-	 * 
-	 * @param request The parsed options given to the program
-	 * @return a map of the options
-	 */
-	private Map<Options, String> validateRequest(Map<Options, String> request) 
-	{
-		if(!request.containsKey(Options.ERROR))
-		{
-			Set<Options> params = request.keySet();
-			
-			boolean fileConversionExists = false;
-			Options[] fileConversion = {Options.FROM_FILE_FORMAT, Options.TO_FILE_FORMAT, Options.INPUT_FILE};
-			
-			for(Options param : params)
+			else if(Options.COMPRESSION_THREADS.equals(args[i])) 
 			{
-				for(Options fileParam : fileConversion) 
+				if(request.containsKey(Options.COMPRESSION_THREADS))
 				{
-					if(param.equals(fileParam))
+					request.put(Options.ERROR, "-z can only be used once");
+				}
+				else if(args.length > i + 1)
+				{
+					request.put(Options.COMPRESSION_THREADS, args[++i]);
+				}
+				else
+				{
+					request.put(Options.ERROR, "-z must be followed by the number of threads");
+				}
+			}
+			else if(Options.BATCH_INPUT.equals(args[i])) 
+			{
+				if(request.containsKey(Options.BATCH_INPUT))
+				{
+					request.put(Options.ERROR, "-b can only be used once");
+				}
+				else if(args.length > i + 1 && !args[i + 1].startsWith("-"))
+				{
+					List<String> inputs = new ArrayList<String>();
+					inputs.add(args[++i]);
+					while(args.length > i + 1 && !args[i + 1].startsWith("-"))
 					{
-						fileConversionExists = true;
+						inputs.add(args[++i]);
 					}
+					request.put(Options.BATCH_INPUT, inputs.get(0));
+					values.put(Options.BATCH_INPUT, inputs);
+				}
+				else
+				{
+					request.put(Options.ERROR, "-b must be followed by input files, directories or globs");
 				}
 			}
-			if(fileConversionExists) 
+			else if(Options.OUTPUT_DIRECTORY.equals(args[i])) 
 			{
-				if(!params.containsAll(Arrays.asList(fileConversion)))
+				if(request.containsKey(Options.OUTPUT_DIRECTORY))
 				{
-					request.put(Options.ERROR, "-f -t and -i must all be used when converting files");					
+					request.put(Options.ERROR, "-d can only be used once");
+				}
+				else if(args.length > i + 1)
+				{
+					request.put(Options.OUTPUT_DIRECTORY, args[++i]);
+				}
+				else
+				{
+					request.put(Options.ERROR, "-d must be followed by the output directory");
 				}
 			}
-		}		
-		return request;		
-	}
-	/**
-	 * Prints the help to standard out.
-	 */
-	private void showHelp()
-	{
-		System.out.println("Usage: java -jar TeaList.jar [OPTION][VALUE]");
-		System.out.println("Options can be given in any order");
-		System.out.println("");
-		System.out.println("Input/output format");
-		System.out.println("-f from file format (requires value after)");
-		System.out.println("-t to file format (require value after)");
-		System.out.println("");
-		System.out.println("Input/output file");
-		System.out.println("-i input file (requires value after)");
-		System.out.println("-o output file (if no value is given standard output will be used)");
-		System.out.println("");
-		System.out.println("Information");
-		System.out.println("-l list avaliable file formats");
-		System.out.println("-h print help");
-		System.out.println("");
-		System.out.println("Example of valid options and values");
-		System.out.println("java -jar TeaList.jar -h");
-		System.out.println("(prints help)");
-		System.out.println("java -jar TeaList.jar -f text -t xml -i tea.txt");
-		System.out.println("(reads a tealist in text format in tea.txt and writes it as xml to standard output)");
-		System.out.println("java -jar TeaList.jar -o tea.txt -i tea.xml -t txt -f xml");
-		System.out.println("(reads a tealist in xml format in tea.xml and writes it as text to tea.txt)");		
-	}
-	/**
-	 * Prints valid file formats to standard out.
-	 */
-	private void showFileFormats()
-	{
-		System.out.println("TeaList 0.1 supports the following file formats");
-		System.out.println(FileFormats.getSupportedformats());
-	}
-	/**
-	 * Prints any errors to standard out.
-	 * 
-	 * @param error the error that happened
-	 */
-	private void showError(String error)
-	{
-		System.out.println("Error: " + error);
-		this.showHelp();		
-	}
-	/**
-	 * Converts tea data from one file to an other. 
-	 * 
-	 * @param options any options given for the conversion
-	 */
-	private void convertFile(Map<Options, String> options) 
-	{
-				
-		String inFileName = options.get(Options.INPUT_FILE);
-		String inFileFormat = options.get(Options.FROM_FILE_FORMAT);
-		String outFileFormat = options.get(Options.TO_FILE_FORMAT);
-		String outFileName = options.get(Options.OUTPUT_FILE);
-		
-		TeaFileConverter.convert(inFileName, inFileFormat, outFileFormat, outFileName);
-
-	}	
+			else if(Options.CONCURRENCY.equals(args[i])) 
+			{
+				if(request.containsKey(Options.CONCURRENCY))
+				{
+					request.put(Options.ERROR, "-j can only be used once");
+				}
+				else if(args.length > i + 1)
+				{
+					request.put(Options.CONCURRENCY, args[++i]);
+				}
+				else
+				{
+					request.put(Options.ERROR, "-j must be followed by the number of files converted at the same time");
+				}
+			}
+			else if(Options.CATEGORY.equals(args[i])) 
+			{
+				if(request.containsKey(Options.CATEGORY))
+				{
+					request.put(Options.ERROR, "-c can only be used once");
+				}
+				else if(args.length > i + 1)
+				{
+					request.put(Options.CATEGORY, args[++i]);
+				}
+				else
+				{
+					request.put(Options.ERROR, "-c must be followed by the category");
+				}
+			}
+			else if(Options.MIN_PRICE.equals(args[i])) 
+			{
+				if(request.containsKey(Options.MIN_PRICE))
+				{
+					request.put(Options.ERROR, "-min can only be used once");
+				}
+				else if(args.length > i + 1)
+				{
+					request.put(Options.MIN_PRICE, args[++i]);
+				}
+				else
+				{
+					request.put(Options.ERROR, "-min must be followed by the lowest price");
+				}
+			}
+			else if(Options.MAX_PRICE.equals(args[i])) 
+			{
+				if(request.containsKey(Options.MAX_PRICE))
+				{
+					request.put(Options.ERROR, "-max can only be used once");
+				}
+				else if(args.length > i + 1)
+				{
+					request.put(Options.MAX_PRICE, args[++i]);
+				}
+				else
+				{
+					request.put(Options.ERROR, "-max must be followed by the highest price");
+				}
+			}
+			else if(Options.NAME_PREFIX.equals(args[i])) 
+			{
+				if(request.containsKey(Options.NAME_PREFIX))
+				{
+					request.put(Options.ERROR, "-n can only be used once");
+				}
+				else if(args.length > i + 1)
+				{
+					request.put(Options.NAME_PREFIX, args[++i]);
+				}
+				else
+				{
+					request.put(Options.ERROR, "-n must be followed by the start of the name");
+				}
+			}
+			else if(Options.SORT.equals(args[i])) 
+			{
+				if(request.containsKey(Options.SORT))
+				{
+					request.put(Options.ERROR, "-s can only be used once");
+				}
+				else if(args.length > i + 1)
+				{
+					request.put(Options.SORT, args[++i]);
+				}
+				else
+				{
+					request.put(Options.ERROR, "-s must be followed by the field to sort by");
+				}
+			}
+			else if(Options.SORT_MEMORY.equals(args[i])) 
+			{
+				if(request.containsKey(Options.SORT_MEMORY))
+				{
+					request.put(Options.ERROR, "-m can only be used once");
+				}
+				else if(args.length > i + 1)
+				{
+					request.put(Options.SORT_MEMORY, args[++i]);
+				}
+				else
+				{
+					request.put(Options.ERROR, "-m must be followed by the memory for sorting in MB");
+				}
+			}
+			else if(Options.FIELDS.equals(args[i])) 
+			{
+				if(request.containsKey(Options.FIELDS))
+				{
+					request.put(Options.ERROR, "-fields can only be used once");
+				}
+				else if(args.length > i + 1)
+				{
+					request.put(Options.FIELDS, args[++i]);
+				}
+				else
+				{
+					request.put(Options.ERROR, "-fields must be followed by the fields to write");
+				}
+			}
+			else if(Options.TOP.equals(args[i])) 
+			{
+				if(request.containsKey(Options.TOP))
+				{
+					request.put(Options.ERROR, "-top can only be used once");
+				}
+				else if(args.length > i + 1)
+				{
+					request.put(Options.TOP, args[++i]);
+				}
+				else
+				{
+					request.put(Options.ERROR, "-top must be followed by the number of tea to write");
+				}
+			}
+			else if(Options.GROUP_BY_CATEGORY.equals(args[i])) 
+			{
+				request.put(Options.GROUP_BY_CATEGORY, null);
+			}
+			else if(Options.BUILD_INDEX.equals(args[i])) 
+			{
+				request.put(Options.BUILD_INDEX, null);
+			}
+			else if(Options.FIND.equals(args[i])) 
+			{
+				if(request.containsKey(Options.FIND))
+				{
+					request.put(Options.ERROR, "-find can only be used once");
+				}
+				else if(args.length > i + 1)
+				{
+					request.put(Options.FIND, args[++i]);
+				}
+				else
+				{
+					request.put(Options.ERROR, "-find must be followed by the name of the tea");
+				}
+			}
+			else if(Options.SEARCH.equals(args[i])) 
+			{
+				if(request.containsKey(Options.SEARCH))
+				{
+					request.put(Options.ERROR, "-search can only be used once");
+				}
+				else if(args.length > i + 1)
+				{
+					request.put(Options.SEARCH, args[++i]);
+				}
+				else
+				{
+					request.put(Options.ERROR, "-search must be followed by the words to search for");
+				}
+			}
+			else if(Options.MERGE.equals(args[i])) 
+			{
+				if(request.containsKey(Options.MERGE))
+				{
+					request.put(Options.ERROR, "-merge can only be used once");
+				}
+				else if(args.length > i + 1)
+				{
+					request.put(Options.MERGE, args[++i]);
+				}
+				else
+				{
+					request.put(Options.ERROR, "-merge must be followed by the file of updates");
+				}
+			}
+			else if(Options.MERGE_FORMAT.equals(args[i])) 
+			{
+				if(request.containsKey(Options.MERGE_FORMAT))
+				{
+					request.put(Options.ERROR, "-mf can only be used once");
+				}
+				else if(args.length > i + 1)
+				{
+					request.put(Options.MERGE_FORMAT, args[++i]);
+				}
+				else
+				{
+					request.put(Options.ERROR, "-mf must be followed by the format of the file of updates");
+				}
+			}
+			else if(Options.STATS.equals(args[i])) 
+			{
+				request.put(Options.STATS, null);
+			}
+			else if(Options.PIPELINE.equals(args[i])) 
+			{
+				request.put(Options.PIPELINE, null);
+			}
+			else if(Options.WATCH.equals(args[i])) 
+			{
+				request.put(Options.WATCH, null);
+			}
+			else if(Options.CACHE.equals(args[i])) 
+			{
+				if(request.containsKey(Options.CACHE))
+				{
+					request.put(Options.ERROR, "--cache can only be used once");
+				}
+				else if(args.length > i + 1 && !args[i + 1].startsWith("-"))
+				{
+					request.put(Options.CACHE, args[++i]);
+				}
+				else
+				{
+					request.put(Options.CACHE, null);
+				}
+			}
+			else if(Options.SERVER.equals(args[i])) 
+			{
+				if(request.containsKey(Options.SERVER))
+				{
+					request.put(Options.ERROR, "--server can only be used once");
+				}
+				else if(args.length > i + 1)
+				{
+					request.put(Options.SERVER, args[++i]);
+				}
+				else
+				{
+					request.put(Options.ERROR, "--server must be followed by the port to listen on");
+				}
+			}
+			else if(Options.CLIENT.equals(args[i])) 
+			{
+				if(request.containsKey(Options.CLIENT))
+				{
+					request.put(Options.ERROR, "--client can only be used once");
+				}
+				else if(args.length > i + 1)
+				{
+					request.put(Options.CLIENT, args[++i]);
+				}
+				else
+				{
+					request.put(Options.ERROR, "--client must be followed by the port of the server");
+				}
+			}
+			else
+			{
+				request.put(Options.ERROR, "Invalid option: " + args[i]);
+			}
+		}
+		if(this.count(values, Options.OUTPUT_FILE) > 1 
+				&& this.count(values, Options.OUTPUT_FILE) != this.count(values, Options.TO_FILE_FORMAT))
+		{
+			request.put(Options.ERROR, "-o must be followed by one output file per format after -t");
+		}
+		return request;
+	}
+	/**
+	 * Checks if a request is valid. If there is an error an error value is 
+	 * added to the map with information about the error.
+	 * 
+	 * @param request The parsed options given to the program
+	 * @param values The values of the options with many values
+	 * @return a map of the options
+	 */
+	private Map<Options, String> validateRequest(Map<Options, String> request, Map<Options, List<String>> values) 
+	{
+		if(!request.containsKey(Options.ERROR))
+		{
+			Set<Options> params = request.keySet();
+			
+			boolean fileConversionExists = false;
+			Options[] fileConversion = {Options.FROM_FILE_FORMAT, Options.TO_FILE_FORMAT, Options.INPUT_FILE};
+			if(params.contains(Options.GROUP_BY_CATEGORY))
+			{
+				// A summary is written as text, so no output format is needed
+				fileConversion = new Options[] {Options.FROM_FILE_FORMAT, Options.INPUT_FILE};
+			}
+			if(params.contains(Options.BUILD_INDEX) || params.contains(Options.FIND) || params.contains(Options.SEARCH))
+			{
+				// Found tea is written as text unless another format is given
+				fileConversion = new Options[] {Options.FROM_FILE_FORMAT, Options.INPUT_FILE};
+			}
+			
+			for(Options param : params)
+			{
+				for(Options fileParam : fileConversion) 
+				{
+					if(param.equals(fileParam))
+					{
+						fileConversionExists = true;
+					}
+				}
+			}
+			if(params.contains(Options.BATCH_INPUT) && params.contains(Options.SEARCH))
+			{
+				if(!params.contains(Options.FROM_FILE_FORMAT))
+				{
+					request.put(Options.ERROR, "-f must be used when searching a batch of files");
+				}
+				else if(params.contains(Options.INPUT_FILE))
+				{
+					request.put(Options.ERROR, "-i can not be used together with -b");
+				}
+			}
+			else if(params.contains(Options.BATCH_INPUT))
+			{
+				if(!params.containsAll(Arrays.asList(Options.FROM_FILE_FORMAT, Options.TO_FILE_FORMAT, Options.OUTPUT_DIRECTORY)))
+				{
+					request.put(Options.ERROR, "-f -t and -d must all be used when converting a batch of files");
+				}
+				else if(params.contains(Options.INPUT_FILE) || params.contains(Options.OUTPUT_FILE))
+				{
+					request.put(Options.ERROR, "-i and -o can not be used together with -b");
+				}
+				else if(this.count(values, Options.TO_FILE_FORMAT) > 1)
+				{
+					request.put(Options.ERROR, "-t can only have one format when converting a batch of files");
+				}
+			}
+			else if(fileConversionExists) 
+			{
+				if(!params.containsAll(Arrays.asList(fileConversion)))
+				{
+					request.put(Options.ERROR, "-f -t and -i must all be used when converting files");					
+				}
+				else if(this.count(values, Options.TO_FILE_FORMAT) > 1)
+				{
+					if(params.contains(Options.GROUP_BY_CATEGORY))
+					{
+						request.put(Options.ERROR, "-g can not be used with more than one format after -t");
+					}
+					else if(this.count(values, Options.OUTPUT_FILE) != this.count(values, Options.TO_FILE_FORMAT))
+					{
+						request.put(Options.ERROR, "-o must be followed by one output file per format after -t");
+					}
+				}
+			}
+			if(params.contains(Options.BUILD_INDEX) || params.contains(Options.FIND))
+			{
+				Options[] queryOptions = {Options.CATEGORY, Options.MIN_PRICE, Options.MAX_PRICE, Options.NAME_PREFIX, 
+						Options.SORT, Options.TOP, Options.FIELDS, Options.GROUP_BY_CATEGORY};
+				if(params.contains(Options.BATCH_INPUT))
+				{
+					request.put(Options.ERROR, "-index and -find can not be used together with -b");
+				}
+				else if(StandardStreams.isStandardInput(request.get(Options.INPUT_FILE)))
+				{
+					request.put(Options.ERROR, "-index and -find need an input file, standard input can not be indexed");
+				}
+				else if(!params.contains(Options.FIND) && (params.contains(Options.TO_FILE_FORMAT) || params.contains(Options.OUTPUT_FILE)))
+				{
+					request.put(Options.ERROR, "-t and -o can only be used together with -find when building an index");
+				}
+				else if(this.count(values, Options.TO_FILE_FORMAT) > 1)
+				{
+					request.put(Options.ERROR, "-find can only write one format");
+				}
+				for(Options option : queryOptions)
+				{
+					if(params.contains(option))
+					{
+						request.put(Options.ERROR, "-index and -find can not be used together with " + option);
+					}
+				}
+			}
+			if(params.contains(Options.SEARCH))
+			{
+				Options[] queryOptions = {Options.CATEGORY, Options.MIN_PRICE, Options.MAX_PRICE, Options.NAME_PREFIX, 
+						Options.SORT, Options.TOP, Options.FIELDS, Options.GROUP_BY_CATEGORY};
+				if(params.contains(Options.BUILD_INDEX) || params.contains(Options.FIND))
+				{
+					request.put(Options.ERROR, "-search can not be used together with -index or -find");
+				}
+				else if(StandardStreams.isStandardInput(request.get(Options.INPUT_FILE)))
+				{
+					request.put(Options.ERROR, "-search needs input files, standard input can not be indexed");
+				}
+				else if(params.contains(Options.OUTPUT_DIRECTORY) || params.contains(Options.CONCURRENCY) || params.contains(Options.WATCH))
+				{
+					request.put(Options.ERROR, "-d -j and --watch can not be used together with -search");
+				}
+				else if(this.count(values, Options.TO_FILE_FORMAT) > 1)
+				{
+					request.put(Options.ERROR, "-search can only write one format");
+				}
+				for(Options option : queryOptions)
+				{
+					if(params.contains(option))
+					{
+						request.put(Options.ERROR, "-search can not be used together with " + option);
+					}
+				}
+			}
+			if(params.contains(Options.MERGE))
+			{
+				Options[] queryOptions = {Options.CATEGORY, Options.MIN_PRICE, Options.MAX_PRICE, Options.NAME_PREFIX, 
+						Options.SORT, Options.TOP, Options.FIELDS, Options.GROUP_BY_CATEGORY};
+				if(params.contains(Options.BATCH_INPUT))
+				{
+					request.put(Options.ERROR, "-merge can not be used together with -b");
+				}
+				else if(!params.containsAll(Arrays.asList(Options.FROM_FILE_FORMAT, Options.TO_FILE_FORMAT, Options.INPUT_FILE)))
+				{
+					request.put(Options.ERROR, "-f -t and -i must all be used when merging files");
+				}
+				else if(params.contains(Options.BUILD_INDEX) || params.contains(Options.FIND) || params.contains(Options.SEARCH))
+				{
+					request.put(Options.ERROR, "-merge can not be used together with -index -find or -search");
+				}
+				else if(this.count(values, Options.TO_FILE_FORMAT) > 1)
+				{
+					request.put(Options.ERROR, "-merge can only write one format");
+				}
+				else if(StandardStreams.isStandardInput(request.get(Options.INPUT_FILE)) && StandardStreams.isStandardInput(request.get(Options.MERGE)))
+				{
+					request.put(Options.ERROR, "-i and -merge can not both be standard input");
+				}
+				for(Options option : queryOptions)
+				{
+					if(params.contains(option))
+					{
+						request.put(Options.ERROR, "-merge can not be used together with " + option);
+					}
+				}
+			}
+			if(params.contains(Options.MERGE_FORMAT) && !params.contains(Options.MERGE))
+			{
+				request.put(Options.ERROR, "-mf can only be used together with -merge");
+			}
+			if(!params.contains(Options.BATCH_INPUT) && (params.contains(Options.OUTPUT_DIRECTORY) || params.contains(Options.CONCURRENCY)))
+			{
+				request.put(Options.ERROR, "-d and -j can only be used together with -b");
+			}
+			if(params.contains(Options.WATCH) && !params.contains(Options.BATCH_INPUT))
+			{
+				request.put(Options.ERROR, "--watch can only be used together with -b");
+			}
+			if(request.containsKey(Options.CONCURRENCY) && !this.isPositiveNumber(request.get(Options.CONCURRENCY)))
+			{
+				request.put(Options.ERROR, "-j must be followed by a number of files of at least 1");
+			}
+			if(request.containsKey(Options.PARALLELISM) && !this.isPositiveNumber(request.get(Options.PARALLELISM)))
+			{
+				request.put(Options.ERROR, "-p must be followed by a number of threads of at least 1");
+			}
+			if(request.containsKey(Options.COMPRESSION_THREADS) && !this.isPositiveNumber(request.get(Options.COMPRESSION_THREADS)))
+			{
+				request.put(Options.ERROR, "-z must be followed by a number of threads of at least 1");
+			}
+			if(request.containsKey(Options.MIN_PRICE) && !this.isNumber(request.get(Options.MIN_PRICE)))
+			{
+				request.put(Options.ERROR, "-min must be followed by a price");
+			}
+			if(request.containsKey(Options.MAX_PRICE) && !this.isNumber(request.get(Options.MAX_PRICE)))
+			{
+				request.put(Options.ERROR, "-max must be followed by a price");
+			}
+			if(request.containsKey(Options.TOP) && !this.isPositiveNumber(request.get(Options.TOP)))
+			{
+				request.put(Options.ERROR, "-top must be followed by a number of tea of at least 1");
+			}
+			if(request.containsKey(Options.SORT_MEMORY) && !this.isPositiveNumber(request.get(Options.SORT_MEMORY)))
+			{
+				request.put(Options.ERROR, "-m must be followed by a number of MB of at least 1");
+			}
+			if(request.containsKey(Options.FIELDS) && this.parseFields(request.get(Options.FIELDS)) == null)
+			{
+				request.put(Options.ERROR, "-fields must be followed by category, name, price or description separated by commas");
+			}
+			if(request.containsKey(Options.SORT) && this.parseSort(request.get(Options.SORT)) == null)
+			{
+				request.put(Options.ERROR, "-s must be followed by category, name, price or description separated by commas, each optionally ending with :desc");
+			}
+			if(request.containsKey(Options.SERVER) && request.size() > 1)
+			{
+				request.put(Options.ERROR, "--server can not be used with other options");
+			}
+			if(request.containsKey(Options.SERVER) && !this.isPort(request.get(Options.SERVER)))
+			{
+				request.put(Options.ERROR, "--server must be followed by a port between 1 and 65535");
+			}
+			if(request.containsKey(Options.CLIENT) && !this.isPort(request.get(Options.CLIENT)))
+			{
+				request.put(Options.ERROR, "--client must be followed by a port between 1 and 65535");
+			}
+			if(request.containsKey(Options.CLIENT) && StandardStreams.isStandardInput(request.get(Options.MERGE)))
+			{
+				request.put(Options.ERROR, "-merge - can not be used with --client, the server can not read standard input");
+			}
+			if(request.containsKey(Options.CLIENT) && StandardStreams.isStandardInput(request.get(Options.INPUT_FILE)))
+			{
+				request.put(Options.ERROR, "-i - can not be used with --client, the server can not read standard input");
+			}
+			if(this.directory != null && (request.containsKey(Options.SERVER) || request.containsKey(Options.CLIENT)))
+			{
+				request.put(Options.ERROR, "--server and --client can not be sent to a server");
+			}
+			if(this.directory != null && request.containsKey(Options.WATCH))
+			{
+				request.put(Options.ERROR, "--watch can not be sent to a server");
+			}
+		}		
+		return request;		
+	}
+	/**
+	 * Counts the values of an option that can have many values.
+	 * 
+	 * @param values The values of the options with many values
+	 * @param option The option
+	 * @return The number of values, 0 if the option is not used
+	 */
+	private int count(Map<Options, List<String>> values, Options option)
+	{
+		return values.containsKey(option) ? values.get(option).size() : 0;
+	}
+	/**
+	 * Checks if a value is a whole number of at least 1.
+	 * 
+	 * @param value The value to check
+	 * @return true if the value is a positive number
+	 */
+	private boolean isPositiveNumber(String value)
+	{
+		return this.isNumber(value) && Integer.parseInt(value) >= 1;
+	}
+	/**
+	 * Checks if a value is a port number.
+	 * 
+	 * @param value The value to check
+	 * @return true if the value is a number between 1 and 65535
+	 */
+	private boolean isPort(String value)
+	{
+		return this.isPositiveNumber(value) && Integer.parseInt(value) <= 65535;
+	}
+	/**
+	 * Checks if a value is a whole number.
+	 * 
+	 * @param value The value to check
+	 * @return true if the value is a number
+	 */
+	private boolean isNumber(String value)
+	{
+		try
+		{
+			Integer.parseInt(value);
+			return true;
+		}
+		catch(NumberFormatException e)
+		{
+			return false;
+		}
+	}
+	/**
+	 * Parses a sort value, which is fields separated by commas, each 
+	 * optionally followed by :asc or :desc, such as category,price:desc.
+	 * 
+	 * @param value The value to parse
+	 * @return The keys to sort by or null if the value is not valid
+	 */
+	private List<SortKey> parseSort(String value)
+	{
+		List<SortKey> keys = new ArrayList<SortKey>();
+		for(String key : value.split(",", -1))
+		{
+			String[] parts = key.trim().split(":");
+			if(parts.length > 2 || parts.length == 2 && !parts[1].equalsIgnoreCase("asc") && !parts[1].equalsIgnoreCase("desc"))
+			{
+				return null;
+			}
+			SortField sortField = SortField.fromString(parts[0]);
+			if(sortField == null)
+			{
+				return null;
+			}
+			keys.add(new SortKey(sortField, parts.length == 2 && parts[1].equalsIgnoreCase("desc")));
+		}
+		return keys;
+	}
+	/**
+	 * Parses the fields to write. 
+	 * 
+	 * @param value The fields separated by commas, such as name,price
+	 * @return the names of the fields or null if a field is not known
+	 */
+	private List<String> parseFields(String value)
+	{
+		List<String> fields = new ArrayList<String>();
+		for(String field : value.split(","))
+		{
+			SortField sortField = SortField.fromString(field.trim());
+			if(sortField == null)
+			{
+				return null;
+			}
+			fields.add(sortField.toString());
+		}
+		return fields;
+	}
+	/**
+	 * Prints the help to standard out.
+	 */
+	private void showHelp()
+	{
+		System.out.println("Usage: java -jar TeaList.jar [OPTION][VALUE]");
+		System.out.println("Options can be given in any order");
+		System.out.println("");
+		System.out.println("Input/output format");
+		System.out.println("-f from file format (requires value after)");
+		System.out.println("-t to file format (require value after, several formats are written at the same time with one -o file each)");
+		System.out.println("");
+		System.out.println("Input/output file");
+		System.out.println("-i input file (requires value after), - reads standard input");
+		System.out.println("-o output file (if no value or - is given standard output will be used), one file per format after -t");
+		System.out.println("Files ending with .gz (gzip) or .zz (deflate) are compressed, compressed input files are found by their first bytes");
+		System.out.println("");
+		System.out.println("Performance");
+		System.out.println("-p number of threads parsing a text input file (requires value after)");
+		System.out.println("--pipeline read the input on a thread of its own while the output is written");
+		System.out.println("-z number of threads compressing a .gz output file in independent blocks (requires value after)");
+		System.out.println("--stats print records per second, bytes and the time and allocations of each stage to standard error");
+		System.out.println("--cache keep parsed input files in a cache so they are not parsed again (the cache directory may be given after)");
+		System.out.println("");
+		System.out.println("Query");
+		System.out.println("-c only tea in a category (requires value after)");
+		System.out.println("-min only tea with at least this price (requires value after)");
+		System.out.println("-max only tea with at most this price (requires value after)");
+		System.out.println("-n only tea with a name starting with this text (requires value after)");
+		System.out.println("-s sort by category, name, price or description, add :desc for descending order, more fields separated by commas order tea that are equal, such as category,price:desc (requires value after)");
+		System.out.println("-top only the first tea after sorting (requires value after)");
+		System.out.println("-m MB of memory for sorting, more tea is sorted in runs spilled to temporary files (default is a quarter of the heap)");
+		System.out.println("-fields only read the listed fields, such as category,name,price, a name or description that is not listed is skipped and written empty (requires value after)");
+		System.out.println("-g write count, min, max and average price per category as text instead of the tea");
+		System.out.println("");
+		System.out.println("Index");
+		System.out.println("-index build an index of the names in a text or bin input file, kept next to it as a file ending with .idx");
+		System.out.println("-find write the tea with this name, found through the index of the input file (requires value after)");
+		System.out.println("-search write the tea whose descriptions have all these words, OR between words gives alternatives, the input files are indexed first if they have changed (requires value after)");
+		System.out.println("");
+		System.out.println("Merge");
+		System.out.println("-merge apply this file of updates to the input file, tea with the same category and name are replaced and other tea are added (requires value after)");
+		System.out.println("-mf format of the file of updates (default is the input format)");
+		System.out.println("");
+		System.out.println("Batch conversion");
+		System.out.println("-b input files, directories or globs such as tea/*.txt (requires one or more values after)");
+		System.out.println("-d output directory for a batch (requires value after)");
+		System.out.println("-j number of files converted at the same time (default is the number of processors)");
+		System.out.println("--watch keep running and convert the input files again when their content changes");
+		System.out.println("");
+		System.out.println("Server");
+		System.out.println("--server keep running and convert requests sent to this port on the local machine by this user (requires value after)");
+		System.out.println("--client send the other options to a server listening on this port (requires value after)");
+		System.out.println("");
+		System.out.println("Information");
+		System.out.println("-l list avaliable file formats");
+		System.out.println("-h print help");
+		System.out.println("");
+		System.out.println("Example of valid options and values");
+		System.out.println("java -jar TeaList.jar -h");
+		System.out.println("(prints help)");
+		System.out.println("java -jar TeaList.jar -f text -t xml -i tea.txt");
+		System.out.println("(reads a tealist in text format in tea.txt and writes it as xml to standard output)");
+		System.out.println("java -jar TeaList.jar -o tea.txt -i tea.xml -t txt -f xml");
+		System.out.println("(reads a tealist in xml format in tea.xml and writes it as text to tea.txt)");		
+		System.out.println("java -jar TeaList.jar -f text -t xml -i tea.txt -max 30 -s price:desc -top 10");
+		System.out.println("(writes the 10 most expensive tea that cost at most 30 as xml to standard output)");
+		System.out.println("java -jar TeaList.jar -f text -t bin -i tea.txt.gz -o tea.bin.gz -z 4");
+		System.out.println("(reads a gzip compressed text file and writes it as bin to a gzip file compressed by 4 threads)");
+		System.out.println("java -jar TeaList.jar -f xml -t text bin -i tea.xml -o tea.txt tea.bin");
+		System.out.println("(reads tea.xml once and writes it as text to tea.txt and as bin to tea.bin at the same time)");
+		System.out.println("gunzip -c tea.txt.gz | java -jar TeaList.jar -f text -t xml -i - | gzip > tea.xml.gz");
+		System.out.println("(converts standard input to standard output as the tea arrives, without temporary files)");
+		System.out.println("java -jar TeaList.jar -f text -i tea.txt -index");
+		System.out.println("java -jar TeaList.jar -f text -i tea.txt -find \"Earl Grey\"");
+		System.out.println("(builds an index of tea.txt and then writes the tea named Earl Grey without reading the rest of the file)");
+		System.out.println("java -jar TeaList.jar -f text -b shops -search \"rökt OR citrus grönt\"");
+		System.out.println("(writes the tea in shops with rökt, or with both citrus and grönt, in their descriptions)");
+		System.out.println("java -jar TeaList.jar -f text -t text -i master.txt -merge prices.xml -mf xml -o updated.txt");
+		System.out.println("(writes master.txt with the prices in prices.xml to updated.txt and prints how many tea were inserted, updated and unchanged)");
+		System.out.println("java -jar TeaList.jar -f text -t xml -b shops/*.txt -d export -j 8");
+		System.out.println("(reads all .txt files in shops and writes them as xml to the export directory, 8 at a time)");
+		System.out.println("java -jar TeaList.jar -f text -t xml -b shops -d export --watch");
+		System.out.println("(converts all files in shops and then each file that is added or changed, until stopped)");
+	}
+	/**
+	 * Prints valid file formats to standard out.
+	 */
+	private void showFileFormats()
+	{
+		System.out.println("TeaList 0.1 supports the following file formats");
+		System.out.println(FileFormats.getSupportedformats());
+	}
+	/**
+	 * Prints any errors to standard out.
+	 * 
+	 * @param error the error that happened
+	 */
+	private void showError(String error)
+	{
+		System.out.println("Error: " + error);
+		this.showHelp();		
+	}
+	/**
+	 * Resolves the relative file names of a request against the directory 
+	 * of the request.
+	 * 
+	 * @param request The parsed options given to the program
+	 * @param values The values of the options with many values
+	 */
+	private void resolveFiles(Map<Options, String> request, Map<Options, List<String>> values)
+	{
+		Options[] fileOptions = {Options.INPUT_FILE, Options.OUTPUT_DIRECTORY, Options.CACHE, Options.MERGE};
+		for(Options option : fileOptions)
+		{
+			if(request.get(option) != null)
+			{
+				request.put(option, this.resolveFile(request.get(option)));
+			}
+		}
+		Options[] fileListOptions = {Options.OUTPUT_FILE, Options.BATCH_INPUT};
+		for(Options option : fileListOptions)
+		{
+			if(values.containsKey(option))
+			{
+				List<String> resolved = new ArrayList<String>();
+				for(String fileName : values.get(option))
+				{
+					resolved.add(this.resolveFile(fileName));
+				}
+				values.put(option, resolved);
+				request.put(option, resolved.isEmpty() ? null : resolved.get(0));
+			}
+		}
+	}
+	/**
+	 * Resolves a file name against the directory of the request, unless it 
+	 * is absolute.
+	 * 
+	 * @param fileName The file name
+	 * @return The resolved file name
+	 */
+	private String resolveFile(String fileName)
+	{
+		File file = new File(fileName);
+		if(!file.isAbsolute())
+		{
+			file = new File(this.directory, fileName);
+		}
+		return file.getPath();
+	}
+	/**
+	 * Sends a request to a running server and prints its output. 
+	 * 
+	 * @param options any options given for the request
+	 * @param args The options as given to the program
+	 * @throws Exception if the server could not be reached
+	 */
+	private void sendToServer(Map<Options, String> options, String[] args) throws Exception
+	{
+		List<String> forwarded = new ArrayList<String>();
+		for(int i = 0; i < args.length; i++)
+		{
+			if(Options.CLIENT.equals(args[i]))
+			{
+				// Skip the port as well
+				i++;
+			}
+			else
+			{
+				forwarded.add(args[i]);
+			}
+		}
+		new TeaClient(Integer.parseInt(options.get(Options.CLIENT))).send(forwarded);
+	}
+	/**
+	 * Converts tea data from one file to an other. When more than one 
+	 * format is given, the file is read once and written to one output 
+	 * file per format. 
+	 * 
+	 * @param options any options given for the conversion
+	 * @param values The values of the options with many values
+	 * @throws IOException if the parse cache could not be opened
+	 */
+	private void convertFile(Map<Options, String> options, Map<Options, List<String>> values) throws IOException
+	{
+				
+		String inFileName = options.get(Options.INPUT_FILE);
+		String inFileFormat = options.get(Options.FROM_FILE_FORMAT);
+		String outFileFormat = options.get(Options.TO_FILE_FORMAT);
+		String outFileName = options.get(Options.OUTPUT_FILE);
+		
+		if(this.count(values, Options.TO_FILE_FORMAT) > 1)
+		{
+			TeaFileConverter.convert(inFileName, inFileFormat, values.get(Options.TO_FILE_FORMAT), 
+					values.get(Options.OUTPUT_FILE), this.createSettings(options));
+			return;
+		}
+		TeaFileConverter.convert(inFileName, inFileFormat, outFileFormat, outFileName, this.createSettings(options));
+
+	}	
+	/**
+	 * Builds the index of a file and looks up tea by name in it. The tea
+	 * that is found is written as text, or in the format after -t. 
+	 * 
+	 * @param options any options given for the index
+	 * @throws IOException if the index could not be built or read
+	 */
+	private void indexFile(Map<Options, String> options) throws IOException
+	{
+		String inFileName = options.get(Options.INPUT_FILE);
+		String inFileFormat = options.get(Options.FROM_FILE_FORMAT);
+		
+		if(options.containsKey(Options.BUILD_INDEX))
+		{
+			long start = System.nanoTime();
+			int count = TeaIndex.build(inFileName, inFileFormat);
+			System.out.println("Indexed " + count + " tea in " + TeaIndex.indexName(inFileName) 
+					+ " (" + (System.nanoTime() - start) / 1000000 + " ms)");
+		}
+		if(options.containsKey(Options.FIND))
+		{
+			String outFileFormat = options.containsKey(Options.TO_FILE_FORMAT) 
+					? options.get(Options.TO_FILE_FORMAT) : FileFormats.TEXT.toString();
+			TeaIndex index = TeaIndex.open(inFileName, inFileFormat);
+			try
+			{
+				List<Tea> found = index.find(options.get(Options.FIND));
+				TeaFileConverter.write(found, outFileFormat, options.get(Options.OUTPUT_FILE));
+			}
+			finally
+			{
+				index.close();
+			}
+		}
+	}
+	/**
+	 * Searches the descriptions of the input file, or the files of a batch, 
+	 * through the search index. The files that are not indexed or have 
+	 * changed are indexed first. The tea that is found is written as text, 
+	 * or in the format after -t. 
+	 * 
+	 * @param options any options given for the search
+	 * @param values The values of the options with many values
+	 * @throws IOException if the index could not be updated or read
+	 */
+	private void searchFiles(Map<Options, String> options, Map<Options, List<String>> values) throws IOException
+	{
+		String inFileFormat = options.get(Options.FROM_FILE_FORMAT);
+		String outFileFormat = options.containsKey(Options.TO_FILE_FORMAT) 
+				? options.get(Options.TO_FILE_FORMAT) : FileFormats.TEXT.toString();
+		List<File> files;
+		if(options.containsKey(Options.BATCH_INPUT))
+		{
+			files = BatchConverter.expandInputs(values.get(Options.BATCH_INPUT));
+		}
+		else
+		{
+			files = Arrays.asList(new File(options.get(Options.INPUT_FILE)));
+		}
+		
+		DescriptionIndex index = new DescriptionIndex(DescriptionIndex.defaultDirectory());
+		index.update(files, inFileFormat);
+		List<Tea> found = index.search(files, inFileFormat, options.get(Options.SEARCH));
+		TeaFileConverter.write(found, outFileFormat, options.get(Options.OUTPUT_FILE));
+	}
+	/**
+	 * Merges a file of updates into the input file and prints the number 
+	 * of inserted, updated and unchanged tea. The numbers are printed to 
+	 * standard error, since standard output may hold the merged tea. 
+	 * 
+	 * @param options any options given for the merge
+	 * @throws IOException if the merge failed
+	 */
+	private void mergeFiles(Map<Options, String> options) throws IOException
+	{
+		String inFileFormat = options.get(Options.FROM_FILE_FORMAT);
+		String updateFileFormat = options.containsKey(Options.MERGE_FORMAT) 
+				? options.get(Options.MERGE_FORMAT) : inFileFormat;
+		
+		TeaMerger.Result result = TeaFileConverter.merge(options.get(Options.INPUT_FILE), inFileFormat, 
+				options.get(Options.MERGE), updateFileFormat, options.get(Options.TO_FILE_FORMAT), 
+				options.get(Options.OUTPUT_FILE), this.createSettings(options));
+		System.err.println("Merged: " + result.getInserted() + " inserted, " + result.getUpdated() + " updated, " 
+				+ result.getUnchanged() + " unchanged (" + result.getMillis() + " ms)");
+	}
+	/**
+	 * Converts a batch of files and prints the outcome for each file. When
+	 * watching, the files that change are converted until the program is 
+	 * stopped. 
+	 * 
+	 * @param options any options given for the conversion
+	 * @param values The values of the options with many values
+	 * @throws Exception if the batch could not be started
+	 */
+	private void convertBatch(Map<Options, String> options, Map<Options, List<String>> values) throws Exception
+	{
+		List<String> inputs = values.get(Options.BATCH_INPUT);
+		String inFileFormat = options.get(Options.FROM_FILE_FORMAT);
+		String outFileFormat = options.get(Options.TO_FILE_FORMAT);
+		File outDirectory = new File(options.get(Options.OUTPUT_DIRECTORY));
+		
+		int concurrency = Runtime.getRuntime().availableProcessors();
+		if(options.containsKey(Options.CONCURRENCY))
+		{
+			concurrency = Integer.parseInt(options.get(Options.CONCURRENCY));
+		}
+		
+		if(options.containsKey(Options.WATCH))
+		{
+			System.out.println("Watching " + String.join(" ", inputs) + ", stop with Ctrl+C");
+			new BatchWatcher(new BatchConverter(concurrency), inputs, inFileFormat, outFileFormat, outDirectory, 
+					this.createSettings(options)).watch(new BatchWatcher.Listener() {
+				@Override
+				public void converted(List<BatchConverter.Result> results)
+				{
+					TeaList.this.showResults(results);
+				}
+			});
+			return;
+		}
+		
+		List<File> files = BatchConverter.expandInputs(inputs);
+		List<BatchConverter.Result> results = new BatchConverter(concurrency).convert(files, inFileFormat, 
+				outFileFormat, outDirectory, this.createSettings(options));
+		this.showResults(results);
+	}
+	/**
+	 * Prints the outcome for each file of a batch. 
+	 * 
+	 * @param results The results of the conversions
+	 */
+	private void showResults(List<BatchConverter.Result> results)
+	{
+		int converted = 0;
+		for(BatchConverter.Result result : results)
+		{
+			if(result.isSuccess())
+			{
+				converted++;
+				System.out.println("OK     " + result.getInput() + " -> " + result.getOutput() + " (" + result.getMillis() + " ms)");
+			}
+			else
+			{
+				System.out.println("FAILED " + result.getInput() + ": " + result.getFault());
+			}
+		}
+		System.out.println("Converted " + converted + " of " + results.size() + " files");
+	}
+	/**
+	 * Creates the query for a conversion. 
+	 * 
+	 * @param options any options given for the conversion
+	 * @return the query
+	 */
+	private TeaQuery createQuery(Map<Options, String> options)
+	{
+		TeaQuery query = new TeaQuery();
+		query.getFilter().setCategory(options.get(Options.CATEGORY));
+		query.getFilter().setNamePrefix(options.get(Options.NAME_PREFIX));
+		if(options.containsKey(Options.MIN_PRICE))
+		{
+			query.getFilter().setMinPrice(Integer.parseInt(options.get(Options.MIN_PRICE)));
+		}
+		if(options.containsKey(Options.MAX_PRICE))
+		{
+			query.getFilter().setMaxPrice(Integer.parseInt(options.get(Options.MAX_PRICE)));
+		}
+		if(options.containsKey(Options.SORT))
+		{
+			query.setSort(this.parseSort(options.get(Options.SORT)));
+		}
+		if(options.containsKey(Options.FIELDS))
+		{
+			query.setFields(this.parseFields(options.get(Options.FIELDS)));
+		}
+		if(options.containsKey(Options.SORT_MEMORY))
+		{
+			query.setSortMemory(Long.parseLong(options.get(Options.SORT_MEMORY)) * 1024 * 1024);
+		}
+		if(options.containsKey(Options.TOP))
+		{
+			query.setLimit(Integer.parseInt(options.get(Options.TOP)));
+		}
+		query.setGroupByCategory(options.containsKey(Options.GROUP_BY_CATEGORY));
+		return query;
+	}
+	/**
+	 * Creates the settings for a conversion. 
+	 * 
+	 * @param options any options given for the conversion
+	 * @return the settings
+	 * @throws IOException if the parse cache could not be opened
+	 */
+	private ConversionSettings createSettings(Map<Options, String> options) throws IOException
+	{
+		ConversionSettings settings = new ConversionSettings();
+		if(options.containsKey(Options.PARALLELISM))
+		{
+			settings.setParallelism(Integer.parseInt(options.get(Options.PARALLELISM)));
+		}
+		if(options.containsKey(Options.COMPRESSION_THREADS))
+		{
+			settings.setCompressionThreads(Integer.parseInt(options.get(Options.COMPRESSION_THREADS)));
+		}
+		settings.setPipelined(options.containsKey(Options.PIPELINE));
+		if(options.containsKey(Options.CACHE))
+		{
+			String directory = options.get(Options.CACHE);
+			settings.setParseCache(ParseCache.shared(directory == null ? ParseCache.defaultDirectory() : new File(directory)));
+		}
+		
+		Options[] queryOptions = {Options.CATEGORY, Options.MIN_PRICE, Options.MAX_PRICE, Options.NAME_PREFIX, 
+				Options.SORT, Options.TOP, Options.FIELDS, Options.GROUP_BY_CATEGORY};
+		boolean hasQuery = false;
+		for(Options option : queryOptions)
+		{
+			if(options.containsKey(option))
+			{
+				hasQuery = true;
+			}
+		}
+		if(hasQuery)
+		{
+			settings.setQuery(this.createQuery(options));
+		}
+		if(options.containsKey(Options.STATS))
+		{
+			final ParseCache cache = settings.getParseCache();
+			settings.addListener(new ConversionListener() {
+				@Override
+				public void conversionFinished(ConversionStats stats) 
+				{
+					// Standard output may hold the converted tea
+					System.err.print(stats);
+					if(cache != null)
+					{
+						System.err.println("  parse cache      " + cache.getHits() + " hits, " + cache.getMisses() + " misses");
+					}
+				}
+			});
+		}
+		return settings;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,373 @@
+package tealist;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import converter.ConversionSettings;
+import converter.FileFormats;
+import converter.TeaFileConverter;
+import converter.writers.TeaSink;
+
+/**
+ * A TeaServer stays resident and runs requests sent to it over HTTP on the 
+ * loopback interface, so a conversion does not pay for starting a JVM and 
+ * loading the parsers.
+ * 
+ * A request is a POST to /convert where the body holds the same options as 
+ * the command line, one option or value per line. Relative file names are 
+ * resolved against the directory in the X-TeaList-Directory header. The 
+ * response body holds what the request writes to standard output and 
+ * standard error, such as tea written to standard output and errors.
+ * 
+ * Only the user running the server may send requests. When the server 
+ * starts it writes a random token to a file in the home directory that 
+ * only the user can read, and a request must have the token in the 
+ * X-TeaList-Token header. Since a web page can not send that header 
+ * without the browser asking the server first, which it does not allow, 
+ * a page can not make the server convert files. A request from a browser, 
+ * which has an Origin header, is refused as well.
+ * 
+ * Each request runs on its own thread, and all readers and writers are 
+ * warmed up before the server accepts requests.
+ * 
+ * @author Mats Palm
+ */
+public class TeaServer 
+{
+	public static final String PATH = "/convert";
+	public static final String DIRECTORY_HEADER = "X-TeaList-Directory";
+	public static final String TOKEN_HEADER = "X-TeaList-Token";
+	
+	private static final int WARM_UP_TEA = 2000;
+	private static final int WARM_UP_ROUNDS = 5;
+	
+	private int port;
+	private byte[] token;
+	
+	/**
+	 * Constructs a server
+	 * 
+	 * @param port The port to listen on
+	 */
+	public TeaServer(int port) 
+	{
+		this.port = port;
+	}
+	
+	/**
+	 * Gets the file with the token of the server listening on a port.
+	 * 
+	 * @param port The port
+	 * @return server-port.token in .tealist in the home directory
+	 */
+	public static File tokenFile(int port) 
+	{
+		return new File(new File(System.getProperty("user.home"), ".tealist"), "server-" + port + ".token");
+	}
+	
+	/**
+	 * Warms up the converter and starts listening. The server keeps running 
+	 * until the JVM is stopped.
+	 * 
+	 * @throws IOException If the port could not be opened or the token could not be written
+	 */
+	public void start() throws IOException 
+	{
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), this.port), 0);
+		this.writeToken(server.getAddress().getPort());
+		
+		long start = System.nanoTime();
+		this.warmUp();
+		System.out.println("Warmed up in " + (System.nanoTime() - start) / 1000000 + " ms");
+		
+		RoutedOutput.install();
+		ExecutorService executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.createContext(PATH, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException 
+			{
+				TeaServer.this.handle(exchange);
+			}
+		});
+		server.start();
+		System.out.println("TeaList server listening on http://" + server.getAddress().getHostString() + ":" 
+				+ server.getAddress().getPort() + PATH);
+	}
+	
+	/**
+	 * Runs one request and sends its output as the response.
+	 * 
+	 * @param exchange The request and response
+	 * @throws IOException If the response could not be sent
+	 */
+	private void handle(HttpExchange exchange) throws IOException 
+	{
+		try
+		{
+			if(!"POST".equals(exchange.getRequestMethod()))
+			{
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			if(exchange.getRequestHeaders().containsKey("Origin") || !this.hasToken(exchange))
+			{
+				exchange.sendResponseHeaders(403, -1);
+				return;
+			}
+			List<String> args = new ArrayList<String>();
+			BufferedReader body = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+			String line;
+			while((line = body.readLine()) != null)
+			{
+				if(!line.isEmpty())
+				{
+					args.add(line);
+				}
+			}
+			String directory = exchange.getRequestHeaders().getFirst(DIRECTORY_HEADER);
+			
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+			exchange.sendResponseHeaders(200, 0);
+			OutputStream response = new BufferedOutputStream(exchange.getResponseBody(), 64 * 1024);
+			RoutedOutput.route(response);
+			try
+			{
+				new TeaList(new File(directory == null ? "." : directory)).processRequest(args.toArray(new String[args.size()]));
+			}
+			catch(RuntimeException e)
+			{
+				System.out.println("Error: " + e);
+			}
+			finally
+			{
+				System.out.flush();
+				System.err.flush();
+				RoutedOutput.route(null);
+				response.close();
+			}
+		}
+		finally
+		{
+			exchange.close();
+		}
+	}
+	
+	/**
+	 * Creates a random token and writes it to the token file, which only 
+	 * the user may read. The file is removed when the server stops.
+	 * 
+	 * @param port The port the server listens on
+	 * @throws IOException If the file could not be written
+	 */
+	private void writeToken(int port) throws IOException 
+	{
+		byte[] random = new byte[32];
+		new SecureRandom().nextBytes(random);
+		String encoded = Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+		this.token = encoded.getBytes(StandardCharsets.US_ASCII);
+		
+		Path file = tokenFile(port).toPath();
+		boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+		if(posix)
+		{
+			Files.createDirectories(file.getParent(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+			Files.deleteIfExists(file);
+			Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		}
+		else
+		{
+			Files.createDirectories(file.getParent());
+			Files.deleteIfExists(file);
+			Files.createFile(file);
+		}
+		file.toFile().deleteOnExit();
+		Files.write(file, this.token);
+	}
+	
+	/**
+	 * Checks the token of a request, in constant time so the token can not 
+	 * be guessed one character at a time.
+	 * 
+	 * @param exchange The request
+	 * @return true if the request has the token of the server
+	 */
+	private boolean hasToken(HttpExchange exchange) 
+	{
+		String sent = exchange.getRequestHeaders().getFirst(TOKEN_HEADER);
+		return sent != null && MessageDigest.isEqual(this.token, sent.getBytes(StandardCharsets.US_ASCII));
+	}
+	
+	/**
+	 * Converts generated tea between all formats a few times, so the classes 
+	 * are loaded, the parser factories created and the code compiled before 
+	 * the first request.
+	 * 
+	 * @throws IOException If the files could not be written
+	 */
+	private void warmUp() throws IOException 
+	{
+		File directory = File.createTempFile("tealist", "");
+		directory.delete();
+		directory.mkdir();
+		try
+		{
+			File text = new File(directory, "warmup.txt");
+			TeaSink sink = FileFormats.getWriter(FileFormats.TEXT.toString()).openSink(text.getPath());
+			try
+			{
+				for(int i = 0; i < WARM_UP_TEA; i++)
+				{
+					sink.write(new Tea("Kategori " + i % 8, "Te " + i, 20 + i % 30, "Beskrivning av te " + i + " med smak."));
+				}
+			}
+			finally
+			{
+				sink.close();
+			}
+			ConversionSettings settings = new ConversionSettings();
+			for(int round = 0; round < WARM_UP_ROUNDS; round++)
+			{
+				for(FileFormats format : FileFormats.values())
+				{
+					File converted = new File(directory, "warmup." + format);
+					TeaFileConverter.convertOrThrow(text.getPath(), FileFormats.TEXT.toString(), format.toString(), converted.getPath(), settings);
+					TeaFileConverter.convertOrThrow(converted.getPath(), format.toString(), FileFormats.TEXT.toString(), 
+							new File(directory, "back.txt").getPath(), settings);
+				}
+			}
+		}
+		finally
+		{
+			for(File file : directory.listFiles())
+			{
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+	
+	/**
+	 * Standard output and standard error of the server. What a request 
+	 * thread writes goes to the response of its request, everything else 
+	 * goes to the console as before.
+	 */
+	private static class RoutedOutput extends OutputStream 
+	{
+		private static final ThreadLocal<OutputStream> TARGET = new ThreadLocal<OutputStream>();
+		
+		private PrintStream console;
+		
+		/**
+		 * Constructs a routed output
+		 * 
+		 * @param console Where output from other threads goes
+		 */
+		private RoutedOutput(PrintStream console) 
+		{
+			this.console = console;
+		}
+		
+		/**
+		 * Replaces standard output and standard error.
+		 */
+		private static void install() 
+		{
+			System.setOut(new PrintStream(new RoutedOutput(System.out)));
+			System.setErr(new PrintStream(new RoutedOutput(System.err)));
+		}
+		
+		/**
+		 * Sends the output of the current thread to a stream.
+		 * 
+		 * @param target The stream or null to send it to the console
+		 */
+		private static void route(OutputStream target) 
+		{
+			if(target == null)
+			{
+				TARGET.remove();
+			}
+			else
+			{
+				TARGET.set(target);
+			}
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(int b) throws IOException 
+		{
+			OutputStream target = TARGET.get();
+			if(target != null)
+			{
+				target.write(b);
+			}
+			else
+			{
+				this.console.write(b);
+				this.console.flush();
+			}
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException 
+		{
+			OutputStream target = TARGET.get();
+			if(target != null)
+			{
+				target.write(b, off, len);
+			}
+			else
+			{
+				this.console.write(b, off, len);
+				this.console.flush();
+			}
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void flush() throws IOException 
+		{
+			OutputStream target = TARGET.get();
+			if(target != null)
+			{
+				target.flush();
+			}
+			else
+			{
+				this.console.flush();
+			}
+		}
+	}
+}
\ No newline at end of file
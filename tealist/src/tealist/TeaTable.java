@@ -0,0 +1,297 @@
+package tealist;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact table of tea. 
+ * 
+ * The fields are stored column by column instead of as one object per tea: 
+ * prices in an int array, categories as int codes into a dictionary where 
+ * each category is stored once, and names and descriptions as UTF-8 bytes 
+ * in one shared pool. A {@link Tea} is only created when a row is asked for.
+ * 
+ * @author Mats Palm
+ */
+public class TeaTable {
+	private static final int MAX_POOL_SIZE = Integer.MAX_VALUE - 8;
+	
+	private int size;
+	private int[] prices;
+	private int[] categoryCodes;
+	private int[] textOffsets;
+	private byte[] textPool;
+	private int textSize;
+	
+	private List<String> categories = new ArrayList<String>();
+	private Map<String, Integer> categoryIndex = new HashMap<String, Integer>();
+	private byte[] lastCategory;
+	private int lastCategoryCode;
+	
+	/**
+	 * Constructs an empty table.
+	 */
+	public TeaTable() {
+		this(1024);
+	}
+	/**
+	 * Constructs an empty table.
+	 * 
+	 * @param capacity the number of tea the table has room for before it grows
+	 */
+	public TeaTable(int capacity) {
+		capacity = Math.max(capacity, 16);
+		prices = new int[capacity];
+		categoryCodes = new int[capacity];
+		textOffsets = new int[capacity * 2 + 1];
+		textPool = new byte[capacity * 64];
+	}
+	/**
+	 * Adds a tea to the end of the table.
+	 * 
+	 * @param tea the tea to add
+	 */
+	public void add(Tea tea) {
+		this.add(tea.getCategory(), tea.getName(), tea.getPrice(), tea.getDescription());
+	}
+	/**
+	 * Adds a tea to the end of the table.
+	 * 
+	 * @param category the tea category
+	 * @param name the name of the tea
+	 * @param price the price
+	 * @param description a description of the tea
+	 */
+	public void add(String category, String name, int price, String description) {
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		byte[] descriptionBytes = description.getBytes(StandardCharsets.UTF_8);
+		
+		this.ensureCapacity(nameBytes.length + descriptionBytes.length);
+		categoryCodes[size] = this.categoryCode(category);
+		prices[size] = price;
+		this.appendText(size * 2, nameBytes, 0, nameBytes.length);
+		this.appendText(size * 2 + 1, descriptionBytes, 0, descriptionBytes.length);
+		size++;
+	}
+	/**
+	 * Adds a tea to the end of the table straight from UTF-8 encoded bytes,
+	 * so that readers do not have to create any strings. The category is
+	 * only decoded the first time it is seen.
+	 * 
+	 * @param bytes the bytes holding the fields
+	 * @param categoryStart index of the first byte of the category
+	 * @param categoryEnd index after the last byte of the category
+	 * @param nameStart index of the first byte of the name
+	 * @param nameEnd index after the last byte of the name
+	 * @param price the price
+	 * @param descriptionStart index of the first byte of the description
+	 * @param descriptionEnd index after the last byte of the description
+	 */
+	public void add(byte[] bytes, int categoryStart, int categoryEnd, int nameStart, int nameEnd, int price, 
+			int descriptionStart, int descriptionEnd) {
+		this.ensureCapacity(nameEnd - nameStart + descriptionEnd - descriptionStart);
+		
+		int categoryLength = categoryEnd - categoryStart;
+		boolean same = lastCategory != null && lastCategory.length == categoryLength;
+		for(int i = 0; same && i < categoryLength; i++) {
+			same = lastCategory[i] == bytes[categoryStart + i];
+		}
+		if(!same) {
+			lastCategory = Arrays.copyOfRange(bytes, categoryStart, categoryEnd);
+			lastCategoryCode = this.categoryCode(new String(lastCategory, StandardCharsets.UTF_8));
+		}
+		categoryCodes[size] = lastCategoryCode;
+		prices[size] = price;
+		this.appendText(size * 2, bytes, nameStart, nameEnd - nameStart);
+		this.appendText(size * 2 + 1, bytes, descriptionStart, descriptionEnd - descriptionStart);
+		size++;
+	}
+	/**
+	 * Gets the number of tea in the table.
+	 * 
+	 * @return the number of tea
+	 */
+	public int size() {
+		return size;
+	}
+	/**
+	 * Gets the category of a tea. 
+	 * 
+	 * @param index the row of the tea
+	 * @return the category, the same string is returned for all tea in a category
+	 */
+	public String getCategory(int index) {
+		this.checkIndex(index);
+		return categories.get(categoryCodes[index]);
+	}
+	/**
+	 * Gets the dictionary code of the category of a tea. Codes are given in 
+	 * the order the categories were added, starting at 0.
+	 * 
+	 * @param index the row of the tea
+	 * @return the category code
+	 */
+	public int getCategoryCode(int index) {
+		this.checkIndex(index);
+		return categoryCodes[index];
+	}
+	/**
+	 * Gets the categories in the table in code order.
+	 * 
+	 * @return the categories
+	 */
+	public List<String> getCategories() {
+		return Collections.unmodifiableList(categories);
+	}
+	/**
+	 * Gets the name of a tea.
+	 * 
+	 * @param index the row of the tea
+	 * @return the name
+	 */
+	public String getName(int index) {
+		this.checkIndex(index);
+		return this.text(index * 2);
+	}
+	/**
+	 * Gets the price of a tea.
+	 * 
+	 * @param index the row of the tea
+	 * @return the price
+	 */
+	public int getPrice(int index) {
+		this.checkIndex(index);
+		return prices[index];
+	}
+	/**
+	 * Gets the description of a tea.
+	 * 
+	 * @param index the row of the tea
+	 * @return the description
+	 */
+	public String getDescription(int index) {
+		this.checkIndex(index);
+		return this.text(index * 2 + 1);
+	}
+	/**
+	 * Gets a row as a tea object. A new object is created on every call.
+	 * 
+	 * @param index the row of the tea
+	 * @return the tea
+	 */
+	public Tea get(int index) {
+		this.checkIndex(index);
+		return new Tea(categories.get(categoryCodes[index]), this.text(index * 2), prices[index], this.text(index * 2 + 1));
+	}
+	/**
+	 * Gets a read only list view of the table, where each tea is created when 
+	 * it is asked for. The view can be given to anything that takes a list 
+	 * of tea, such as a TeaFileWriter.
+	 * 
+	 * @return the list view
+	 */
+	public List<Tea> asList() {
+		return new AbstractList<Tea>() {
+			@Override
+			public Tea get(int index) {
+				return TeaTable.this.get(index);
+			}
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+	/**
+	 * Shrinks the storage of the table to what the tea in it needs. Should
+	 * be called when no more tea will be added.
+	 */
+	public void trimToSize() {
+		prices = Arrays.copyOf(prices, size);
+		categoryCodes = Arrays.copyOf(categoryCodes, size);
+		textOffsets = Arrays.copyOf(textOffsets, size * 2 + 1);
+		textPool = Arrays.copyOf(textPool, textSize);
+	}
+	/**
+	 * Gets an estimate of the heap used by the table in bytes.
+	 * 
+	 * @return the estimated number of bytes
+	 */
+	public long estimatedBytes() {
+		return 4L * (prices.length + categoryCodes.length + textOffsets.length) + textPool.length;
+	}
+	/**
+	 * Decodes a name or description.
+	 * 
+	 * @param slot the text slot, two per row
+	 * @return the text
+	 */
+	private String text(int slot) {
+		return new String(textPool, textOffsets[slot], textOffsets[slot + 1] - textOffsets[slot], StandardCharsets.UTF_8);
+	}
+	/**
+	 * Gets the code of a category and adds the category to the dictionary
+	 * if it is new.
+	 * 
+	 * @param category the category
+	 * @return the code
+	 */
+	private int categoryCode(String category) {
+		Integer code = categoryIndex.get(category);
+		if(code == null) {
+			code = categories.size();
+			categories.add(category);
+			categoryIndex.put(category, code);
+		}
+		return code;
+	}
+	/**
+	 * Appends bytes to the text pool and records where they end.
+	 * 
+	 * @param slot the text slot, two per row
+	 * @param bytes the bytes
+	 * @param start index of the first byte
+	 * @param length number of bytes
+	 */
+	private void appendText(int slot, byte[] bytes, int start, int length) {
+		System.arraycopy(bytes, start, textPool, textSize, length);
+		textSize += length;
+		textOffsets[slot + 1] = textSize;
+	}
+	/**
+	 * Makes sure there is room for one more tea.
+	 * 
+	 * @param textLength the number of text bytes of the tea
+	 */
+	private void ensureCapacity(int textLength) {
+		if(size == prices.length) {
+			int capacity = Math.max(16, prices.length * 2);
+			prices = Arrays.copyOf(prices, capacity);
+			categoryCodes = Arrays.copyOf(categoryCodes, capacity);
+			textOffsets = Arrays.copyOf(textOffsets, capacity * 2 + 1);
+		}
+		long needed = (long) textSize + textLength;
+		if(needed > textPool.length) {
+			if(needed > MAX_POOL_SIZE) {
+				throw new IllegalStateException("The table can not hold more than " + MAX_POOL_SIZE + " bytes of text");
+			}
+			textPool = Arrays.copyOf(textPool, (int) Math.min(MAX_POOL_SIZE, Math.max(needed, textPool.length * 2L)));
+		}
+	}
+	/**
+	 * Checks that a row exists.
+	 * 
+	 * @param index the row
+	 */
+	private void checkIndex(int index) {
+		if(index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Row " + index + " of " + size);
+		}
+	}
+}
\ No newline at end of file